@@ -0,0 +1,232 @@
+package com.baaki.ecsapp.loadtest;
+
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import com.baaki.ecsapp.support.BenchmarkImages;
+import com.baaki.ecsapp.support.InMemoryS3Client;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that pool usage does not scale with S3 latency, i.e. that uploads do not hold a pooled JDBC
+ * connection while their S3 PUT is in flight. The application runs in-process against H2 and
+ * {@link InMemoryS3Client} with a small pool, once per --s3-latency. --concurrency clients upload through
+ * POST /api/upload while one more reads /api/photos. From Hikari's usage timer it reports the connection
+ * time per upload, which includes the reader's share, next to the pool's peak and average activity.
+ * Exits with status 1 if any request fails, or if the connection time per upload grows by more than half
+ * the latency added between the first and last run: held across the PUT, it grows by all of it.
+ *
+ * Run with:
+ * mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.baaki.ecsapp.loadtest.ConnectionPoolCheck
+ *     -Dexec.args="--uploads=400 --concurrency=50 --pool-size=10 --s3-latency=PT0.05S,PT0.5S"
+ */
+public final class ConnectionPoolCheck {
+
+    private static final String BOUNDARY = "----ecs-app-pool-check";
+
+    private static final int WARMUP_UPLOADS = 100;
+
+    private final int uploads;
+    private final int concurrency;
+    private final int poolSize;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ConnectionPoolCheck(Map<String, String> options) {
+        this.uploads = Integer.parseInt(options.getOrDefault("uploads", "400"));
+        this.concurrency = Integer.parseInt(options.getOrDefault("concurrency", "50"));
+        this.poolSize = Integer.parseInt(options.getOrDefault("pool-size", "10"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+
+        ConnectionPoolCheck check = new ConnectionPoolCheck(options);
+        List<Duration> latencies = new ArrayList<>();
+        List<Double> connectionMillis = new ArrayList<>();
+        boolean passed = true;
+        for (String latency : options.getOrDefault("s3-latency", "PT0.05S,PT0.5S").split(",")) {
+            Duration s3Latency = Duration.parse(latency.trim());
+            Result result = check.run(s3Latency);
+            latencies.add(s3Latency);
+            connectionMillis.add(result.connectionMillisPerUpload);
+            passed &= result.errors == 0;
+        }
+
+        int last = latencies.size() - 1;
+        double addedLatency = latencies.get(last).minus(latencies.get(0)).toMillis();
+        double addedConnectionTime = connectionMillis.get(last) - connectionMillis.get(0);
+        boolean independent = addedConnectionTime < addedLatency / 2;
+        System.out.printf("%n+%.0f ms of S3 latency added %+.2f ms of connection time per upload: %s%n",
+                addedLatency, addedConnectionTime, independent ? "PASS" : "FAIL, connections are held across S3 calls");
+        System.exit(passed && independent ? 0 : 1);
+    }
+
+    private Result run(Duration s3Latency) throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.datasource.hikari.maximum-pool-size", String.valueOf(poolSize));
+        // Waiting longer than a few PUTs for a connection counts as starvation
+        properties.put("spring.datasource.hikari.connection-timeout", "5000");
+        properties.put("spring.servlet.multipart.max-file-size", "10MB");
+        properties.put("spring.servlet.multipart.max-request-size", "10MB");
+        // Every read reaches the pool
+        properties.put("app.gallery.cache.enabled", "false");
+
+        try (ConfigurableApplicationContext context = BenchmarkApplication.start(WebApplicationType.SERVLET, properties);
+             HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+            context.getBean(InMemoryS3Client.class).setPutLatency(s3Latency);
+            HikariPoolMXBean pool = context.getBean(HikariDataSource.class).getHikariPoolMXBean();
+            Timer usage = context.getBean(MeterRegistry.class).get("hikaricp.connections.usage").timer();
+            URI base = URI.create("http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort());
+
+            AtomicInteger errors = new AtomicInteger();
+            // Warm up JIT, Hibernate and the pool so first-request costs are not counted
+            upload(httpClient, base, WARMUP_UPLOADS, errors);
+            double warmupMillis = usage.totalTime(TimeUnit.MILLISECONDS);
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            PoolSampler sampler = new PoolSampler(pool, running);
+            Thread samplerThread = Thread.ofPlatform().daemon().start(sampler);
+            List<Long> readLatencies = Collections.synchronizedList(new ArrayList<>());
+            Thread reader = Thread.ofVirtual().start(() -> {
+                while (running.get()) {
+                    long readStart = System.nanoTime();
+                    if (!send(httpClient, HttpRequest.newBuilder(base.resolve("/api/photos")).build())) {
+                        errors.incrementAndGet();
+                    }
+                    readLatencies.add(System.nanoTime() - readStart);
+                }
+            });
+
+            long start = System.nanoTime();
+            upload(httpClient, base, uploads, errors);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            running.set(false);
+            reader.join();
+            samplerThread.join();
+
+            Collections.sort(readLatencies);
+            double connectionMillisPerUpload = (usage.totalTime(TimeUnit.MILLISECONDS) - warmupMillis) / uploads;
+            System.out.printf("%ns3Latency=%s uploads=%d concurrency=%d poolSize=%d%n",
+                    s3Latency, uploads, concurrency, poolSize);
+            System.out.printf("  throughput                %8.1f uploads/s%n", uploads / seconds);
+            System.out.printf("  active connections peak   %8d%n", sampler.peak);
+            System.out.printf("  active connections avg    %8.2f%n", sampler.average());
+            System.out.printf("  connection time / upload  %8.2f ms%n", connectionMillisPerUpload);
+            System.out.printf("  concurrent read p99       %8.1f ms%n",
+                    readLatencies.isEmpty() ? 0 : readLatencies.get((int) (readLatencies.size() * 0.99)) / 1e6);
+            System.out.printf("  errors                    %8d%n", errors.get());
+            return new Result(connectionMillisPerUpload, errors.get());
+        }
+    }
+
+    private void upload(HttpClient httpClient, URI base, int count, AtomicInteger errors) {
+        AtomicInteger remaining = new AtomicInteger(count);
+        try (ExecutorService uploaders = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                uploaders.execute(() -> {
+                    while (remaining.getAndDecrement() > 0) {
+                        if (!send(httpClient, HttpRequest.newBuilder(base.resolve("/api/upload"))
+                                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                                .POST(HttpRequest.BodyPublishers.ofByteArray(multipartBody()))
+                                .build())) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    private static boolean send(HttpClient httpClient, HttpRequest request) {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private byte[] multipartBody() {
+        // Unique content per request, otherwise deduplication skips the S3 PUT
+        byte[] content = BenchmarkImages.jpeg(64, 48, 16 * 1024);
+        ByteBuffer.wrap(content).putLong(content.length - Long.BYTES, sequence.incrementAndGet());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 512);
+        body.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"pool-check.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(content);
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    private record Result(double connectionMillisPerUpload, int errors) {
+    }
+
+    /**
+     * Polls the pool's active connection count; averaged over samples taken at a fixed interval
+     */
+    private static final class PoolSampler implements Runnable {
+
+        private final HikariPoolMXBean pool;
+        private final AtomicBoolean running;
+        private int peak;
+        private long total;
+        private long samples;
+
+        PoolSampler(HikariPoolMXBean pool, AtomicBoolean running) {
+            this.pool = pool;
+            this.running = running;
+        }
+
+        @Override
+        public void run() {
+            while (running.get()) {
+                int active = pool.getActiveConnections();
+                peak = Math.max(peak, active);
+                total += active;
+                samples++;
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        double average() {
+            return samples == 0 ? 0 : (double) total / samples;
+        }
+    }
+}
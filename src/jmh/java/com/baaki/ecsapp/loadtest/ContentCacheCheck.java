@@ -0,0 +1,216 @@
+package com.baaki.ecsapp.loadtest;
+
+import com.baaki.ecsapp.dto.PhotoUploadResult;
+import com.baaki.ecsapp.service.PhotoService;
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import com.baaki.ecsapp.support.BenchmarkImages;
+import com.baaki.ecsapp.support.InMemoryS3Client;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Checks GET /photos/{id}/content end to end against H2 and {@link InMemoryS3Client}, whose GETs return
+ * every byte as its offset modulo 256 after --s3-latency. --concurrency clients first ask for one photo at
+ * once, which must cost a single S3 GET. Then ranges, conditional requests and a missing photo are
+ * checked; revalidating an uncached photo must not reach S3. Finally more photos than fit in
+ * --cache-size are read, after which the files on disk must be within the limit. Exits with status 1 if any response is wrong.
+ *
+ * Run with:
+ * mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.baaki.ecsapp.loadtest.ContentCacheCheck
+ *     -Dexec.args="--photos=20 --file-size=1048576 --cache-size=8MB --concurrency=32 --s3-latency=PT0.2S"
+ */
+public final class ContentCacheCheck {
+
+    private ContentCacheCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        int photos = Integer.parseInt(options.getOrDefault("photos", "20"));
+        int fileSize = Integer.parseInt(options.getOrDefault("file-size", "1048576"));
+        String cacheSize = options.getOrDefault("cache-size", "8MB");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        Duration latency = Duration.parse(options.getOrDefault("s3-latency", "PT0.2S"));
+
+        Path directory = Files.createTempDirectory("ecs-app-content-cache-check");
+        boolean passed;
+        try {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("server.port", "0");
+            properties.put("app.content.cache.directory", directory.toString());
+            properties.put("app.content.cache.max-size", cacheSize);
+
+            try (ConfigurableApplicationContext context = BenchmarkApplication.start(WebApplicationType.SERVLET, properties)) {
+                InMemoryS3Client s3 = context.getBean(InMemoryS3Client.class);
+                List<Long> ids = upload(context.getBean(PhotoService.class), photos, fileSize);
+                s3.setGetLatency(latency);
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                passed = check(URI.create("http://localhost:" + port), s3, ids, fileSize, concurrency, directory,
+                        DataSize.parse(cacheSize).toBytes());
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static List<Long> upload(PhotoService photoService, int photos, int fileSize) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < photos; i++) {
+            byte[] content = BenchmarkImages.jpeg(64, 48, fileSize);
+            // Distinct content per photo, otherwise they all share one object
+            ByteBuffer.wrap(content).putLong(content.length - Long.BYTES, i);
+            PhotoUploadResult result = photoService.uploadPhoto(
+                    new MockMultipartFile("file", "content-" + i + ".jpg", "image/jpeg", content), null);
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("Upload failed: " + result.getMessage());
+            }
+            ids.add(result.getPhotoId());
+        }
+        return ids;
+    }
+
+    private static boolean check(URI base, InMemoryS3Client s3, List<Long> ids, int size, int concurrency,
+                                 Path directory, long cacheBytes) throws Exception {
+        boolean passed = true;
+        try (HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            URI first = base.resolve("/photos/" + ids.get(0) + "/content");
+
+            // Concurrent misses for one object
+            long start = System.nanoTime();
+            List<Future<HttpResponse<byte[]>>> responses = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                responses.add(clients.submit(() -> get(httpClient, first)));
+            }
+            boolean allComplete = true;
+            for (Future<HttpResponse<byte[]>> response : responses) {
+                allComplete &= response.get().statusCode() == 200 && isContent(response.get().body(), 0, size);
+            }
+            long missMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+            passed &= report("concurrent misses", allComplete && s3.getGetCount() == 1,
+                    concurrency + " requests, " + s3.getGetCount() + " S3 GET, " + missMillis + " ms");
+
+            start = System.nanoTime();
+            int hits = 200;
+            for (int i = 0; i < hits; i++) {
+                get(httpClient, first);
+            }
+            passed &= report("cache hits", s3.getGetCount() == 1,
+                    String.format("%.2f ms per full read", (System.nanoTime() - start) / 1e6 / hits));
+
+            HttpResponse<byte[]> range = get(httpClient, first, "Range", "bytes=1000-1999");
+            passed &= report("range", range.statusCode() == 206 && isContent(range.body(), 1000, 1000)
+                            && range.headers().firstValue("Content-Range").orElse("").equals("bytes 1000-1999/" + size),
+                    range.statusCode() + " " + range.headers().firstValue("Content-Range").orElse("-"));
+
+            HttpResponse<byte[]> suffix = get(httpClient, first, "Range", "bytes=-100");
+            passed &= report("suffix range", suffix.statusCode() == 206 && isContent(suffix.body(), size - 100, 100),
+                    suffix.statusCode() + " " + suffix.headers().firstValue("Content-Range").orElse("-"));
+
+            HttpResponse<byte[]> unsatisfiable = get(httpClient, first, "Range", "bytes=" + size + "-");
+            passed &= report("unsatisfiable range", unsatisfiable.statusCode() == 416,
+                    unsatisfiable.statusCode() + " " + unsatisfiable.headers().firstValue("Content-Range").orElse("-"));
+
+            HttpResponse<byte[]> multiple = get(httpClient, first, "Range", "bytes=0-9,20-29");
+            passed &= report("several ranges", multiple.statusCode() == 200 && multiple.body().length == size,
+                    multiple.statusCode() + ", " + multiple.body().length + " bytes");
+
+            String etag = range.headers().firstValue("ETag").orElse("");
+            HttpResponse<byte[]> notModified = get(httpClient, first, "If-None-Match", etag);
+            passed &= report("if-none-match", !etag.isEmpty() && notModified.statusCode() == 304,
+                    notModified.statusCode() + " for " + etag);
+
+            // Revalidating a photo that is not cached must not download it
+            long getsBefore = s3.getGetCount();
+            HttpResponse<byte[]> uncached = get(httpClient, base.resolve("/photos/" + ids.get(1) + "/content"),
+                    "If-Modified-Since", "Fri, 01 Jan 2100 00:00:00 GMT");
+            passed &= report("uncached revalidation", uncached.statusCode() == 304 && s3.getGetCount() == getsBefore,
+                    uncached.statusCode() + ", " + (s3.getGetCount() - getsBefore) + " S3 GET");
+
+            HttpResponse<byte[]> staleRange = get(httpClient, first, "Range", "bytes=0-9", "If-Range", "\"other\"");
+            passed &= report("stale if-range", staleRange.statusCode() == 200 && staleRange.body().length == size,
+                    staleRange.statusCode() + ", " + staleRange.body().length + " bytes");
+
+            HttpResponse<byte[]> missing = get(httpClient, base.resolve("/photos/" + Long.MAX_VALUE + "/content"));
+            passed &= report("missing photo", missing.statusCode() == 404, String.valueOf(missing.statusCode()));
+
+            // Read every photo so the cache has to evict
+            boolean allRead = true;
+            for (Long id : ids) {
+                HttpResponse<byte[]> response = get(httpClient, base.resolve("/photos/" + id + "/content"));
+                allRead &= response.statusCode() == 200 && response.body().length == size;
+            }
+            long onDisk = awaitEviction(directory, cacheBytes);
+            passed &= report("eviction", allRead && onDisk <= cacheBytes,
+                    onDisk + " bytes on disk, limit " + cacheBytes + ", " + s3.getGetCount() + " S3 GETs");
+        }
+        return passed;
+    }
+
+    /**
+     * Caffeine evicts and deletes files in the background, so give it a moment to settle
+     */
+    private static long awaitEviction(Path directory, long cacheBytes) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        long onDisk;
+        do {
+            Thread.sleep(100);
+            try (Stream<Path> files = Files.list(directory)) {
+                onDisk = files.mapToLong(file -> file.toFile().length()).sum();
+            }
+        } while (onDisk > cacheBytes && System.nanoTime() < deadline);
+        return onDisk;
+    }
+
+    private static HttpResponse<byte[]> get(HttpClient httpClient, URI uri, String... headers) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri);
+        if (headers.length > 0) {
+            request.headers(headers);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static boolean isContent(byte[] body, long offset, int length) {
+        if (body.length != length) {
+            return false;
+        }
+        byte[] expected = new byte[length];
+        for (int i = 0; i < length; i++) {
+            expected[i] = (byte) (offset + i);
+        }
+        return Arrays.equals(body, expected);
+    }
+
+    private static boolean report(String name, boolean passed, String detail) {
+        System.out.printf("%-22s %-4s %s%n", name, passed ? "ok" : "FAIL", detail);
+        return passed;
+    }
+}
@@ -0,0 +1,159 @@
+package com.baaki.ecsapp.loadtest;
+
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import com.baaki.ecsapp.support.BenchmarkImages;
+import com.baaki.ecsapp.support.BenchmarkPostgres;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * End-to-end check of read replica routing and read-your-writes. A primary and a streaming hot standby run
+ * as embedded PostgreSQL in temporary directories, the standby replaying every commit --lag late. The check
+ * uploads through POST /upload, follows the redirect to /gallery with the cookie it was given, then polls
+ * /gallery without the cookie until the replica shows the photo too. It exits with status 1 if the
+ * uploader's own redirect misses the photo or cookieless reads never reach the replica.
+ *
+ * Run with:
+ * mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.baaki.ecsapp.loadtest.ReadReplicaCheck
+ *     -Dexec.args="--lag=PT2S"
+ */
+public final class ReadReplicaCheck {
+
+    private static final String BOUNDARY = "----ecs-app-replica-check";
+
+    private ReadReplicaCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        Duration lag = Duration.parse(options.getOrDefault("lag", "PT2S"));
+
+        Path directory = Files.createTempDirectory("ecs-app-replica-check");
+        boolean passed;
+        try (BenchmarkPostgres primary = new BenchmarkPostgres(directory.resolve("primary"));
+             BenchmarkPostgres replica = primary.startReplica(directory.resolve("replica"), lag)) {
+
+            Map<String, Object> properties = new HashMap<>(primary.properties());
+            properties.put("server.port", "0");
+            properties.put("app.datasource.replica.enabled", "true");
+            properties.put("app.datasource.replica.urls", replica.getJdbcUrl());
+            properties.put("app.datasource.replica.username", "postgres");
+            properties.put("app.datasource.replica.password", "");
+            // Every gallery read reaches a database, so the replica's state is what gets observed
+            properties.put("app.gallery.cache.enabled", "false");
+
+            try (ConfigurableApplicationContext context = BenchmarkApplication.start(WebApplicationType.SERVLET, properties)) {
+                // The schema created at startup reaches the replica only after the apply delay
+                awaitReplay(primary, replica);
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                passed = check(URI.create("http://localhost:" + port), lag);
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean check(URI base, Duration lag) throws Exception {
+        String filename = "replica-check-" + UUID.randomUUID() + ".jpg";
+        try (HttpClient httpClient = HttpClient.newHttpClient()) {
+            HttpResponse<Void> upload = httpClient.send(HttpRequest.newBuilder(base.resolve("/upload"))
+                            .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(multipartBody(filename)))
+                            .build(),
+                    HttpResponse.BodyHandlers.discarding());
+            String location = upload.headers().firstValue("Location").orElse("");
+            String cookie = upload.headers().firstValue("Set-Cookie").orElse("").split(";", 2)[0];
+            System.out.printf("upload                 status=%d location=%s cookie=%s%n", upload.statusCode(), location, cookie);
+
+            long uploaded = System.nanoTime();
+            boolean ownRead = gallery(httpClient, base, cookie).contains(filename);
+            System.out.printf("redirect with cookie   photo visible=%s%n", ownRead);
+            boolean staleRead = !gallery(httpClient, base, null).contains(filename);
+            System.out.printf("read without cookie    photo visible=%s (replica lag %s)%n", !staleRead, lag);
+
+            long deadline = uploaded + lag.multipliedBy(5).toNanos();
+            boolean caughtUp = false;
+            while (!caughtUp && System.nanoTime() < deadline) {
+                Thread.sleep(100);
+                caughtUp = gallery(httpClient, base, null).contains(filename);
+            }
+            System.out.printf("replica caught up      after %d ms%n",
+                    caughtUp ? Duration.ofNanos(System.nanoTime() - uploaded).toMillis() : -1);
+
+            if (!staleRead) {
+                System.out.println("note: the replica already had the photo; reads may not be reaching it");
+            }
+            return location.contains("/gallery") && ownRead && staleRead && caughtUp;
+        }
+    }
+
+    private static String gallery(HttpClient httpClient, URI base, String cookie) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(base.resolve("/gallery"));
+        if (cookie != null) {
+            request.header("Cookie", cookie);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static void awaitReplay(BenchmarkPostgres primary, BenchmarkPostgres replica) throws Exception {
+        try (Connection primaryConnection = DriverManager.getConnection(primary.getJdbcUrl());
+             Connection replicaConnection = DriverManager.getConnection(replica.getJdbcUrl());
+             Statement primaryStatement = primaryConnection.createStatement();
+             Statement replicaStatement = replicaConnection.createStatement()) {
+            String target;
+            try (ResultSet lsn = primaryStatement.executeQuery("SELECT pg_current_wal_lsn()::text")) {
+                lsn.next();
+                target = lsn.getString(1);
+            }
+            while (true) {
+                try (ResultSet replayed = replicaStatement.executeQuery(
+                        "SELECT pg_last_wal_replay_lsn() >= '" + target + "'::pg_lsn")) {
+                    replayed.next();
+                    if (replayed.getBoolean(1)) {
+                        return;
+                    }
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static byte[] multipartBody(String filename) {
+        // Unique content per photo, behind a JPEG header so the upload passes the header probe
+        byte[] content = BenchmarkImages.jpeg(64, 48, 16 * 1024);
+        ByteBuffer.wrap(content).putLong(content.length - Long.BYTES, UUID.randomUUID().getMostSignificantBits());
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 512);
+        body.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(content);
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+}
@@ -0,0 +1,208 @@
+package com.baaki.ecsapp.loadtest;
+
+import com.baaki.ecsapp.model.ReconciliationCheckpoint;
+import com.baaki.ecsapp.service.ImageRendition;
+import com.baaki.ecsapp.service.S3DeletionOutbox;
+import com.baaki.ecsapp.service.S3ReconciliationService;
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import com.baaki.ecsapp.support.BenchmarkPostgres;
+import com.baaki.ecsapp.support.InMemoryS3Client;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Checks S3 reconciliation end to end against embedded PostgreSQL and {@link InMemoryS3Client}. It seeds
+ * --objects photos with their objects, some sharing content and some with renditions, then plants old
+ * orphaned objects and photos whose object is missing, plus young ones of each that the grace period must
+ * leave alone. Listing fails halfway through the first run, so the second run has to resume from the
+ * checkpoint. Exits with status 1 unless the counts match exactly, the old orphans are deleted through the
+ * outbox, and every referenced or young object is still there.
+ *
+ * Run with:
+ * mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.baaki.ecsapp.loadtest.ReconciliationCheck
+ *     -Dexec.args="--objects=200000 --orphans=1000 --dangling=300"
+ */
+public final class ReconciliationCheck {
+
+    private static final int YOUNG = 100;
+
+    private ReconciliationCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        int objects = Integer.parseInt(options.getOrDefault("objects", "200000"));
+        int orphans = Integer.parseInt(options.getOrDefault("orphans", "1000"));
+        int dangling = Integer.parseInt(options.getOrDefault("dangling", "300"));
+
+        Path directory = Files.createTempDirectory("ecs-app-reconciliation-check");
+        boolean passed;
+        try (BenchmarkPostgres postgres = new BenchmarkPostgres(directory.resolve("primary"))) {
+            Map<String, Object> properties = new HashMap<>(postgres.properties());
+            properties.put("app.reconciliation.delete-orphans", "true");
+            // The outbox is drained explicitly once reconciliation is done
+            properties.put("app.s3.deletion.poll-interval", "PT1H");
+
+            try (ConfigurableApplicationContext context = BenchmarkApplication.start(properties)) {
+                InMemoryS3Client s3 = context.getBean(InMemoryS3Client.class);
+                Seed seed = seed(postgres, s3, objects, orphans, dangling);
+                passed = check(context, s3, seed, orphans, dangling);
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean check(ConfigurableApplicationContext context, InMemoryS3Client s3, Seed seed,
+                                 int orphans, int dangling) {
+        S3ReconciliationService reconciliation = context.getBean(S3ReconciliationService.class);
+        int totalObjects = s3.objectCount();
+        long pages = (totalObjects + 999) / 1000;
+
+        long start = System.nanoTime();
+        s3.failListingAfter(pages / 2);
+        boolean interrupted = false;
+        try {
+            reconciliation.reconcile(BenchmarkApplication.BUCKET);
+        } catch (RuntimeException e) {
+            interrupted = true;
+            System.out.printf("first run               interrupted: %s%n", e.getMessage());
+        }
+        s3.failListingAfter(-1);
+        ReconciliationCheckpoint checkpoint = reconciliation.reconcile(BenchmarkApplication.BUCKET);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        context.getBean(S3DeletionOutbox.class).drain();
+        boolean orphansDeleted = seed.oldOrphans.stream().noneMatch(s3::containsObject);
+        boolean othersKept = seed.kept.stream().allMatch(s3::containsObject);
+
+        System.out.printf("objects scanned         %8d of %d%n", checkpoint.getObjectsScanned(), totalObjects);
+        System.out.printf("orphaned objects        %8d expected %d%n", checkpoint.getOrphanedObjects(), orphans);
+        System.out.printf("dangling references     %8d expected %d%n", checkpoint.getDanglingReferences(), dangling);
+        System.out.printf("throughput              %8.0f objects/s%n", totalObjects / seconds);
+        System.out.printf("old orphans deleted     %8s%n", orphansDeleted);
+        System.out.printf("other objects kept      %8s%n", othersKept);
+
+        return interrupted
+                && checkpoint.getObjectsScanned() == totalObjects
+                && checkpoint.getOrphanedObjects() == orphans
+                && checkpoint.getDanglingReferences() == dangling
+                && orphansDeleted && othersKept;
+    }
+
+    /**
+     * Write the rows with plain JDBC batches and the objects straight into the in-memory store;
+     * going through the upload path would make a large seed take minutes
+     */
+    private static Seed seed(BenchmarkPostgres postgres, InMemoryS3Client s3, int objects, int orphans,
+                             int dangling) throws Exception {
+        Instant old = Instant.now().minus(Duration.ofDays(2));
+        Seed seed = new Seed();
+        try (Connection connection = DriverManager.getConnection(postgres.getJdbcUrl());
+             PreparedStatement photo = connection.prepareStatement(
+                     "INSERT INTO photos (id, filename, bucket, s3key, content_type, file_size, uploaded_at, " +
+                     "thumbnails3key, previews3key, content_hash) " +
+                     "VALUES (nextval('photos_seq'), 'seed.jpg', ?, ?, 'image/jpeg', 1, ?, ?, ?, ?)");
+             PreparedStatement storedObject = connection.prepareStatement(
+                     "INSERT INTO stored_objects (content_hash, bucket, s3key, file_size, reference_count, created_at) " +
+                     "VALUES (?, ?, ?, 1, 2, ?)")) {
+            connection.setAutoCommit(false);
+
+            for (int i = 0; i < objects; i++) {
+                String key = newKey(i);
+                String contentHash = null;
+                if (i % 10 == 0) {
+                    // Shared content: two photos and a stored object all point at one key
+                    contentHash = UUID.randomUUID().toString().replace("-", "");
+                    storedObject.setString(1, contentHash);
+                    storedObject.setString(2, BenchmarkApplication.BUCKET);
+                    storedObject.setString(3, key);
+                    storedObject.setTimestamp(4, Timestamp.from(old));
+                    storedObject.addBatch();
+                    addPhoto(photo, key, null, old, contentHash);
+                }
+                String rendition = i % 5 == 0 ? ImageRendition.THUMBNAIL.keyFor(key) : null;
+                addPhoto(photo, key, rendition, old, contentHash);
+                s3.putObject(key, 1, old);
+                seed.kept.add(key);
+                if (rendition != null) {
+                    s3.putObject(rendition, 1, old);
+                    seed.kept.add(rendition);
+                }
+                if (i % 1000 == 999) {
+                    photo.executeBatch();
+                    storedObject.executeBatch();
+                }
+            }
+            for (int i = 0; i < orphans; i++) {
+                String key = newKey(i);
+                s3.putObject(key, 1, old);
+                seed.oldOrphans.add(key);
+            }
+            for (int i = 0; i < YOUNG; i++) {
+                String key = newKey(i);
+                s3.putObject(key, 1, Instant.now());
+                seed.kept.add(key);
+            }
+            for (int i = 0; i < dangling; i++) {
+                addPhoto(photo, newKey(i), null, old, null);
+            }
+            for (int i = 0; i < YOUNG; i++) {
+                addPhoto(photo, newKey(i), null, Instant.now(), null);
+            }
+            photo.executeBatch();
+            storedObject.executeBatch();
+            connection.commit();
+        }
+        return seed;
+    }
+
+    private static void addPhoto(PreparedStatement photo, String key, String rendition, Instant uploadedAt,
+                                 String contentHash) throws Exception {
+        // Half the rows predate recorded buckets and rely on app.s3.bucket-name
+        photo.setString(1, ThreadLocalRandom.current().nextBoolean() ? BenchmarkApplication.BUCKET : null);
+        photo.setString(2, key);
+        photo.setTimestamp(3, Timestamp.from(uploadedAt));
+        photo.setString(4, rendition);
+        photo.setString(5, rendition);
+        photo.setString(6, contentHash);
+        photo.addBatch();
+    }
+
+    private static String newKey(int i) {
+        String id = UUID.randomUUID().toString();
+        return switch (i % 4) {
+            // Legacy flat keys
+            case 0 -> "photos/" + id + ".jpg";
+            // Non-ASCII names sort after 'z' byte-wise, but next to 'e' under most locale collations
+            case 1 -> id.substring(0, 2) + "/photos/" + id + "-é.jpg";
+            default -> id.substring(0, 2) + "/photos/" + id + ".jpg";
+        };
+    }
+
+    private static final class Seed {
+        private final List<String> oldOrphans = new ArrayList<>();
+        private final List<String> kept = new ArrayList<>();
+    }
+}
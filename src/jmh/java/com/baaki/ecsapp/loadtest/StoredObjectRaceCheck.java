@@ -0,0 +1,201 @@
+package com.baaki.ecsapp.loadtest;
+
+import com.baaki.ecsapp.service.ObjectLocation;
+import com.baaki.ecsapp.service.StoredObjectService;
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import com.baaki.ecsapp.support.BenchmarkPostgres;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks StoredObjectService's reference counting under contention against embedded PostgreSQL, whose
+ * INSERT ... ON CONFLICT and row locking are what the single-statement design relies on.
+ *
+ * Each round, --threads threads register their own copy of the same content at once, then release their
+ * references at once: exactly one copy must win the insert, every other copy must be handed to the outbox,
+ * the count must reach --threads, and exactly one release must report the last reference. A churn phase
+ * then has every thread register and release in a loop, so rows are deleted between other threads' insert
+ * and increment; every row inserted must be released as the last reference exactly once.
+ * Exits with status 1 on any violation.
+ *
+ * Run with:
+ * mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.baaki.ecsapp.loadtest.StoredObjectRaceCheck
+ *     -Dexec.args="--threads=16 --rounds=200 --churn=2000"
+ */
+public final class StoredObjectRaceCheck {
+
+    private StoredObjectRaceCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        int rounds = Integer.parseInt(options.getOrDefault("rounds", "200"));
+        int churn = Integer.parseInt(options.getOrDefault("churn", "2000"));
+
+        Path directory = Files.createTempDirectory("ecs-app-stored-object-check");
+        boolean passed;
+        try (BenchmarkPostgres postgres = new BenchmarkPostgres(directory.resolve("primary"))) {
+            Map<String, Object> properties = new HashMap<>(postgres.properties());
+            // Queued copies are counted, not deleted
+            properties.put("app.s3.deletion.enabled", "false");
+            properties.put("spring.datasource.hikari.maximum-pool-size", String.valueOf(threads));
+
+            try (ConfigurableApplicationContext context = BenchmarkApplication.start(properties);
+                 Connection connection = DriverManager.getConnection(postgres.getJdbcUrl(), "postgres", "")) {
+                StoredObjectService storedObjects = context.getBean(StoredObjectService.class);
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                try {
+                    passed = rounds(storedObjects, connection, executor, threads, rounds)
+                            & churn(storedObjects, connection, executor, threads, churn);
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean rounds(StoredObjectService storedObjects, Connection connection, ExecutorService executor,
+                                  int threads, int rounds) throws Exception {
+        int violations = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            String hash = String.format("%064x", round);
+            CyclicBarrier barrier = new CyclicBarrier(threads);
+            List<Future<ObjectLocation>> registrations = new ArrayList<>();
+            List<ObjectLocation> copies = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                ObjectLocation copy = new ObjectLocation(BenchmarkApplication.BUCKET, "round-" + round + "/copy-" + i);
+                copies.add(copy);
+                registrations.add(executor.submit(() -> {
+                    barrier.await();
+                    return storedObjects.registerUploaded(hash, copy, 1);
+                }));
+            }
+            List<ObjectLocation> stored = new ArrayList<>();
+            for (Future<ObjectLocation> registration : registrations) {
+                stored.add(registration.get());
+            }
+
+            long winners = stored.stream().distinct().count();
+            int references = referenceCount(connection, hash);
+            int queued = queuedCopies(connection, "round-" + round + "/%");
+            boolean winnerQueued = queuedCopies(connection, stored.get(0).getKey()) > 0;
+
+            List<Future<Boolean>> releases = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                releases.add(executor.submit(() -> {
+                    barrier.await();
+                    return storedObjects.release(hash, 1);
+                }));
+            }
+            int last = 0;
+            for (Future<Boolean> release : releases) {
+                last += release.get() ? 1 : 0;
+            }
+            boolean rowGone = referenceCount(connection, hash) < 0;
+
+            if (winners != 1 || !copies.contains(stored.get(0)) || references != threads
+                    || queued != threads - 1 || winnerQueued || last != 1 || !rowGone) {
+                violations++;
+                System.out.printf("round %d: winners=%d references=%d queued=%d winnerQueued=%s lastReleases=%d rowGone=%s%n",
+                        round, winners, references, queued, winnerQueued, last, rowGone);
+            }
+        }
+        System.out.printf("rounds                  %8d in %d ms, %d violations%n",
+                rounds, (System.nanoTime() - start) / 1_000_000, violations);
+        return violations == 0;
+    }
+
+    private static boolean churn(StoredObjectService storedObjects, Connection connection, ExecutorService executor,
+                                 int threads, int iterations) throws Exception {
+        String hash = "c".repeat(64);
+        AtomicInteger inserted = new AtomicInteger();
+        AtomicInteger lastReleases = new AtomicInteger();
+        AtomicInteger gaveUp = new AtomicInteger();
+        AtomicInteger sequence = new AtomicInteger();
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+
+        long start = System.nanoTime();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(() -> {
+                barrier.await();
+                for (int n = 0; n < iterations; n++) {
+                    ObjectLocation copy = new ObjectLocation(BenchmarkApplication.BUCKET,
+                            "churn/copy-" + sequence.incrementAndGet());
+                    try {
+                        if (storedObjects.registerUploaded(hash, copy, 1).equals(copy)) {
+                            inserted.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        // Lost the row to a delete on every attempt; the caller's upload fails and holds nothing
+                        gaveUp.incrementAndGet();
+                        continue;
+                    }
+                    if (storedObjects.release(hash, 1)) {
+                        lastReleases.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        boolean rowGone = referenceCount(connection, hash) < 0;
+
+        System.out.printf("churn                   %8d registrations in %d ms%n",
+                threads * iterations, (System.nanoTime() - start) / 1_000_000);
+        System.out.printf("rows inserted           %8d, released as last %d, gave up %d, row gone %s%n",
+                inserted.get(), lastReleases.get(), gaveUp.get(), rowGone);
+        return inserted.get() == lastReleases.get() && rowGone;
+    }
+
+    // -1 once the row is gone
+    private static int referenceCount(Connection connection, String hash) throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT reference_count FROM stored_objects WHERE content_hash = ?")) {
+            statement.setString(1, hash);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getInt(1) : -1;
+            }
+        }
+    }
+
+    private static int queuedCopies(Connection connection, String keyPattern) throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT COUNT(*) FROM s3_deletion_outbox WHERE s3key LIKE ?")) {
+            statement.setString(1, keyPattern);
+            try (ResultSet result = statement.executeQuery()) {
+                result.next();
+                return result.getInt(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.baaki.ecsapp.loadtest;
+
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import com.baaki.ecsapp.support.BenchmarkImages;
+import com.baaki.ecsapp.support.InMemoryS3Client;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load test of POST /api/upload with platform and virtual request threads.
+ * The application runs in-process on a random port against H2 and {@link InMemoryS3Client},
+ * whose PUT latency stands in for the S3 round trip. Reports p50/p99 latency, throughput and
+ * the peak number of S3 PUTs in flight, which is how many uploads the server really overlapped.
+ *
+ * Run with:
+ * mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.baaki.ecsapp.loadtest.UploadLoadTest
+ *     -Dexec.args="--requests=4000 --concurrency=800 --s3-latency=PT0.2S"
+ *
+ * Add -Djdk.tracePinnedThreads=short to MAVEN_OPTS to log any carrier pinning in virtual mode.
+ * Uploads borrow a pooled JDBC connection only for their short metadata writes, so --pool-size
+ * defaults to the application's 10; see {@link ConnectionPoolCheck} for the pool itself.
+ */
+public final class UploadLoadTest {
+
+    private static final String BOUNDARY = "----ecs-app-load-test";
+
+    private final int requests;
+    private final int concurrency;
+    private final Duration s3Latency;
+    private final int fileSize;
+    private final int poolSize;
+
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private UploadLoadTest(Map<String, String> options) {
+        this.requests = Integer.parseInt(options.getOrDefault("requests", "2000"));
+        this.concurrency = Integer.parseInt(options.getOrDefault("concurrency", "400"));
+        this.s3Latency = Duration.parse(options.getOrDefault("s3-latency", "PT0.1S"));
+        this.fileSize = Integer.parseInt(options.getOrDefault("file-size", "65536"));
+        this.poolSize = Integer.parseInt(options.getOrDefault("pool-size", "10"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+
+        UploadLoadTest loadTest = new UploadLoadTest(options);
+        String mode = options.getOrDefault("mode", "both");
+        if (!"virtual".equals(mode)) {
+            loadTest.run(false);
+        }
+        if (!"platform".equals(mode)) {
+            loadTest.run(true);
+        }
+        System.exit(0);
+    }
+
+    private void run(boolean virtualThreads) throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.threads.virtual.enabled", String.valueOf(virtualThreads));
+        properties.put("spring.datasource.hikari.maximum-pool-size", String.valueOf(poolSize));
+        properties.put("spring.servlet.multipart.max-file-size", "10MB");
+        properties.put("spring.servlet.multipart.max-request-size", "10MB");
+
+        try (ConfigurableApplicationContext context = BenchmarkApplication.start(WebApplicationType.SERVLET, properties)) {
+            InMemoryS3Client s3Client = context.getBean(InMemoryS3Client.class);
+            s3Client.setPutLatency(s3Latency);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            URI uploadUri = URI.create("http://localhost:" + port + "/api/upload");
+
+            // Warm up connections, JIT and the pools before measuring
+            execute(uploadUri, Math.min(requests, concurrency * 2), concurrency);
+            s3Client.clear();
+
+            long start = System.nanoTime();
+            long[] latencies = execute(uploadUri, requests, concurrency);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            System.out.printf("%n%-8s requests=%d concurrency=%d s3Latency=%s%n",
+                    virtualThreads ? "virtual" : "platform", requests, concurrency, s3Latency);
+            System.out.printf("  throughput      %8.1f uploads/s%n", requests / seconds);
+            System.out.printf("  latency p50     %8.1f ms%n", percentile(latencies, 0.50));
+            System.out.printf("  latency p99     %8.1f ms%n", percentile(latencies, 0.99));
+            System.out.printf("  latency max     %8.1f ms%n", latencies[latencies.length - 1] / 1e6);
+            System.out.printf("  max concurrent S3 PUTs %d%n", s3Client.getMaxPutsInFlight());
+            System.out.printf("  errors          %d%n", errors.getAndSet(0));
+        }
+    }
+
+    private long[] execute(URI uploadUri, int count, int parallelism) throws InterruptedException {
+        long[] latencies = new long[count];
+        Semaphore permits = new Semaphore(parallelism);
+        // Uploads are probed for a real image header, so the content is a JPEG padded to size
+        byte[] template = BenchmarkImages.jpeg(64, 48, fileSize);
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient httpClient = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .executor(clients)
+                     .build()) {
+
+            for (int i = 0; i < count; i++) {
+                permits.acquire();
+                int index = i;
+                clients.execute(() -> {
+                    try {
+                        HttpRequest request = HttpRequest.newBuilder(uploadUri)
+                                .timeout(Duration.ofMinutes(2))
+                                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                                .POST(HttpRequest.BodyPublishers.ofByteArray(multipartBody(template)))
+                                .build();
+                        long start = System.nanoTime();
+                        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                        latencies[index] = System.nanoTime() - start;
+                        if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            permits.acquire(parallelism);
+            clients.shutdown();
+            clients.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        return latencies;
+    }
+
+    private byte[] multipartBody(byte[] template) {
+        // Unique content per request, otherwise deduplication skips the S3 PUT
+        byte[] content = template.clone();
+        ByteBuffer.wrap(content).putLong(content.length - Long.BYTES, sequence.incrementAndGet());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 512);
+        body.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"load-test.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(content);
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+}
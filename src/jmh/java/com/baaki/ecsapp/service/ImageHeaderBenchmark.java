@@ -0,0 +1,44 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.support.BenchmarkImages;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of PhotoService.validateFile, header probe included, and of the probe alone, for files from
+ * 16 KB to 10 MB that share one JPEG header. The probe reads only the first few KB, so the score
+ * should be the same for every fileSize.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageHeaderBenchmark {
+
+    @Param({"16384", "1048576", "10000000"})
+    private int fileSize;
+
+    private PhotoService photoService;
+    private MockMultipartFile file;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // validateFile only reads constants and the file, so the service needs no wiring
+        photoService = new PhotoService();
+        file = new MockMultipartFile("file", "holiday.jpg", "image/jpeg", BenchmarkImages.jpeg(64, 48, fileSize));
+    }
+
+    @Benchmark
+    public ImageHeader validateFile() {
+        return photoService.validateFile(file);
+    }
+
+    @Benchmark
+    public ImageHeader probe() throws Exception {
+        return ImageHeader.read(file.getInputStream());
+    }
+}
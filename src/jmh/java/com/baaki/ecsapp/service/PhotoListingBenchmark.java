@@ -0,0 +1,111 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.PhotoField;
+import com.baaki.ecsapp.dto.PhotoPage;
+import com.baaki.ecsapp.dto.PhotoSummary;
+import com.baaki.ecsapp.model.Photo;
+import com.baaki.ecsapp.repository.PhotoRepository;
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The photo listing end to end against H2, at the gallery's default page size and walked page by page at
+ * the largest one: the keyset query, PhotoSummary to PhotoWithPresignedUrl mapping with a warm presigned
+ * URL cache, and the Jackson serialization the JSON API would add on top. firstPageQuery is the bare query
+ * the first page is cached from. The streamed variants write the whole listing through PhotoListingWriter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhotoListingBenchmark {
+
+    private static final int GALLERY_PAGE_SIZE = 24;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    @Param({"100", "1000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private PhotoService photoService;
+    private PhotoRepository photoRepository;
+    private ObjectMapper objectMapper;
+    private PhotoListingWriter photoListingWriter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(Map.of());
+        photoService = context.getBean(PhotoService.class);
+        photoRepository = context.getBean(PhotoRepository.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        photoListingWriter = context.getBean(PhotoListingWriter.class);
+
+        List<Photo> photos = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            photos.add(new Photo("photo-" + i + ".jpg", "photos/" + UUID.randomUUID() + ".jpg",
+                    "Benchmark photo " + i, "image/jpeg", 2_000_000L));
+        }
+        photoRepository.saveAll(photos);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public PhotoPage firstPage() {
+        return photoService.getPhotoPage(null, GALLERY_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<PhotoSummary> firstPageQuery() {
+        // One extra row, as getPhotoPage reads to learn whether another page exists
+        return photoRepository.findFirstPage(Limit.of(GALLERY_PAGE_SIZE + 1));
+    }
+
+    @Benchmark
+    public void pageWalk(Blackhole blackhole) {
+        String cursor = null;
+        do {
+            PhotoPage page = photoService.getPhotoPage(cursor, MAX_PAGE_SIZE);
+            blackhole.consume(page);
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+    }
+
+    @Benchmark
+    public void pageWalkAndJson(Blackhole blackhole) throws JsonProcessingException {
+        String cursor = null;
+        do {
+            PhotoPage page = photoService.getPhotoPage(cursor, MAX_PAGE_SIZE);
+            blackhole.consume(objectMapper.writeValueAsBytes(page));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+    }
+
+    @Benchmark
+    public void streamedJson() throws IOException {
+        photoListingWriter.writeAll(OutputStream.nullOutputStream(), PhotoField.parse(null));
+    }
+
+    @Benchmark
+    public void streamedJsonIdAndUrl() throws IOException {
+        photoListingWriter.writeAll(OutputStream.nullOutputStream(), PhotoField.parse("id,url"));
+    }
+}
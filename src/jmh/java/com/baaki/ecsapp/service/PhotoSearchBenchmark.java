@@ -0,0 +1,114 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.PhotoPage;
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import com.baaki.ecsapp.support.BenchmarkPostgres;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PhotoService.searchPhotos against embedded PostgreSQL seeded with one million photos, next to a
+ * LIKE '%...%' scan of the kind the search replaces. Descriptions are six words drawn with a skew
+ * towards common ones; "aurora" appears in one row in ten thousand. The seeded database is kept in
+ * target/benchmark-postgres and reused across forks and runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhotoSearchBenchmark {
+
+    private static final int ROWS = 1_000_000;
+
+    private static final String WORDS = "'{sunset,beach,family,mountain,city,night,portrait,dog,cat,forest," +
+            "river,snow,summer,winter,party,wedding,birthday,food,street,car,bridge,lake,flower,garden,sky," +
+            "cloud,rain,holiday,friends,concert,museum,park,train,harbour,island,desert,canyon,waterfall," +
+            "skyline,market,festival,sunrise,autumn,spring,castle,church,village,road,bike,boat}'";
+
+    private BenchmarkPostgres postgres;
+    private ConfigurableApplicationContext context;
+    private PhotoService photoService;
+    private JdbcTemplate jdbcTemplate;
+    private String commonWordSecondPageCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        postgres = new BenchmarkPostgres(Path.of("target", "benchmark-postgres"));
+        context = BenchmarkApplication.start(postgres.properties());
+        photoService = context.getBean(PhotoService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        Long existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM photos", Long.class);
+        if (existing == null || existing < ROWS) {
+            seed();
+        }
+
+        commonWordSecondPageCursor = photoService.searchPhotos("sunset", null, null, null, null, null).getNextCursor();
+    }
+
+    private void seed() {
+        long start = System.nanoTime();
+        jdbcTemplate.execute("TRUNCATE photos");
+        jdbcTemplate.update(
+                "INSERT INTO photos (id, filename, s3key, description, content_type, file_size, uploaded_at) " +
+                "SELECT n, 'IMG_' || n || '.jpg', 'photos/' || md5(n::text) || '.jpg', " +
+                // Correlated on n so the words are drawn again for every row
+                "  (SELECT string_agg(w[1 + floor(power(random(), 2) * array_length(w, 1))::int], ' ') " +
+                "   FROM generate_series(1, 6) i, (SELECT " + WORDS + "::text[] AS w) words WHERE n > 0) " +
+                "  || CASE WHEN n % 10000 = 0 THEN ' aurora' ELSE '' END, " +
+                "  CASE WHEN n % 10 < 7 THEN 'image/jpeg' WHEN n % 10 < 9 THEN 'image/png' " +
+                "       WHEN n % 20 = 9 THEN 'image/gif' ELSE 'image/webp' END, " +
+                "  500000 + n % 4000000, timestamp '2023-01-01' + n * interval '90 seconds' " +
+                "FROM generate_series(1, ?) n", ROWS);
+        jdbcTemplate.execute("SELECT setval('photos_seq', " + (ROWS + 50) + ")");
+        jdbcTemplate.execute("VACUUM ANALYZE photos");
+        System.out.printf("Seeded %d photos in %d s%n", ROWS, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+        postgres.close();
+    }
+
+    @Benchmark
+    public PhotoPage rareWord() {
+        return photoService.searchPhotos("aurora", null, null, null, null, null);
+    }
+
+    @Benchmark
+    public PhotoPage commonWord() {
+        return photoService.searchPhotos("sunset", null, null, null, null, null);
+    }
+
+    @Benchmark
+    public PhotoPage commonWordSecondPage() {
+        return photoService.searchPhotos("sunset", null, null, null, commonWordSecondPageCursor, null);
+    }
+
+    @Benchmark
+    public PhotoPage wordAndContentType() {
+        return photoService.searchPhotos("beach", "image/gif", null, null, null, null);
+    }
+
+    @Benchmark
+    public PhotoPage contentTypeAndDateRange() {
+        return photoService.searchPhotos(null, "image/png",
+                LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 3, 1, 0, 0), null, null);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> likeScanRareWord() {
+        return jdbcTemplate.queryForList("SELECT id, filename, s3key, description, content_type, file_size, " +
+                "uploaded_at FROM photos WHERE description LIKE '%aurora%' ORDER BY uploaded_at DESC, id DESC LIMIT 25");
+    }
+}
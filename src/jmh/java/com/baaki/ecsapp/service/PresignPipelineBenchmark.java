@@ -0,0 +1,86 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.PhotoSummary;
+import com.baaki.ecsapp.dto.PhotoWithPresignedUrl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares sequential and fork-join presigning of a photo listing.
+ * Signing runs fully offline against static credentials, so only the SigV4 cost is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PresignPipelineBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int rows;
+
+    // "1" forces the sequential path; "0" uses one worker per processor
+    @Param({"1", "0"})
+    private int parallelism;
+
+    private S3Presigner presigner;
+    private PresignPipeline pipeline;
+    private List<PhotoSummary> photos;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        presigner = S3Presigner.builder()
+                .region(Region.EU_CENTRAL_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY")))
+                .build();
+
+        pipeline = new PresignPipeline();
+        ReflectionTestUtils.setField(pipeline, "parallelism", parallelism);
+        ReflectionTestUtils.setField(pipeline, "parallelThreshold", 64);
+        pipeline.init();
+
+        LocalDateTime now = LocalDateTime.now();
+        photos = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            photos.add(new PhotoSummary((long) i, "photo-" + i + ".jpg", null, "photos/" + UUID.randomUUID() + ".jpg",
+                    "Benchmark photo " + i, "image/jpeg", 2_000_000L, now.minusSeconds(i), null, null, 4032, 3024, 1));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pipeline.cleanup();
+        presigner.close();
+    }
+
+    @Benchmark
+    public List<PhotoWithPresignedUrl> presignAll() {
+        return pipeline.presignAll(photos, this::presign);
+    }
+
+    private PhotoWithPresignedUrl presign(PhotoSummary photo) {
+        GetObjectPresignRequest request = GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofDays(2))
+                .getObjectRequest(GetObjectRequest.builder()
+                        .bucket("benchmark-bucket")
+                        .key(photo.getS3Key())
+                        .build())
+                .build();
+        return new PhotoWithPresignedUrl(photo, presigner.presignGetObject(request).url().toString());
+    }
+}
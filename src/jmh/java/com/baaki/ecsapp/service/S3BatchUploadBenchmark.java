@@ -0,0 +1,84 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.PhotoUploadResult;
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import com.baaki.ecsapp.support.BenchmarkImages;
+import com.baaki.ecsapp.support.LocalS3Server;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PhotoService.uploadPhotos with 16 files per batch, against {@link LocalS3Server} and H2.
+ * With the sync client each PUT blocks a batch executor thread; with app.s3.client=async the
+ * executor only hashes and registers, and every PUT in the batch is in flight at once.
+ * Scores are per uploaded file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class S3BatchUploadBenchmark {
+
+    private static final int BATCH_SIZE = 16;
+
+    @Param({"sync", "async"})
+    private String client;
+
+    @Param({"1048576"})
+    private int fileSize;
+
+    private LocalS3Server s3Server;
+    private ConfigurableApplicationContext context;
+    private PhotoService photoService;
+    private byte[] content;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        s3Server = new LocalS3Server();
+        context = BenchmarkApplication.startWithSdkClients(Map.of(
+                "app.s3.client", client,
+                "app.s3.endpoint", s3Server.endpoint()));
+        photoService = context.getBean(PhotoService.class);
+
+        // Uploads are probed for a real image header, so the content is a JPEG padded to size
+        content = BenchmarkImages.jpeg(64, 48, fileSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        s3Server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<PhotoUploadResult> uploadBatch() {
+        List<MultipartFile> files = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            // Distinct content per file, otherwise deduplication skips the PUT
+            byte[] unique = content.clone();
+            ByteBuffer.wrap(unique).putLong(unique.length - Long.BYTES, ++sequence);
+            files.add(new MockMultipartFile("files", "batch-" + i + ".jpg", "image/jpeg", unique));
+        }
+
+        List<PhotoUploadResult> results = photoService.uploadPhotos(files, "Benchmark batch");
+        for (PhotoUploadResult result : results) {
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("Upload failed: " + result.getMessage());
+            }
+        }
+        return results;
+    }
+}
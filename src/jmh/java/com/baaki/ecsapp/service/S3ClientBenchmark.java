@@ -0,0 +1,65 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import com.baaki.ecsapp.support.LocalS3Server;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synchronous Apache-based S3Client against the CRT S3AsyncClient (app.s3.client=async), both talking
+ * HTTP to {@link LocalS3Server} on loopback. Files above the part size go through multipart upload:
+ * the pooled-buffer uploader for the sync client, the CRT's own parallel parts for the async one.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class S3ClientBenchmark {
+
+    @Param({"sync", "async"})
+    private String client;
+
+    @Param({"262144", "33554432"})
+    private int fileSize;
+
+    private LocalS3Server s3Server;
+    private ConfigurableApplicationContext context;
+    private S3Service s3Service;
+    private S3AsyncService s3AsyncService;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        s3Server = new LocalS3Server();
+        context = BenchmarkApplication.startWithSdkClients(Map.of(
+                "app.s3.client", client,
+                "app.s3.endpoint", s3Server.endpoint()));
+        s3Service = context.getBean(S3Service.class);
+        s3AsyncService = "async".equals(client) ? context.getBean(S3AsyncService.class) : null;
+
+        content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        s3Server.close();
+    }
+
+    @Benchmark
+    public ObjectLocation uploadFile() throws IOException {
+        MockMultipartFile file = new MockMultipartFile("file", "benchmark.jpg", "image/jpeg", content);
+        return s3AsyncService != null
+                ? s3AsyncService.uploadFile(file, "Benchmark upload").join()
+                : s3Service.uploadFile(file, "Benchmark upload");
+    }
+}
@@ -0,0 +1,65 @@
+package com.baaki.ecsapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of S3Metrics.record around a trivial call, against the same call made directly.
+ * "noop" denies every meter, so only the wrapper remains; "prometheus" records into the
+ * percentile histogram exactly as production does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class S3MetricsBenchmark {
+
+    @Param({"noop", "prometheus"})
+    private String registry;
+
+    private S3Metrics s3Metrics;
+    private long value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        s3Metrics = newS3Metrics(registry);
+    }
+
+    static S3Metrics newS3Metrics(String registry) {
+        MeterRegistry meterRegistry;
+        if ("prometheus".equals(registry)) {
+            meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        } else {
+            meterRegistry = new SimpleMeterRegistry();
+            meterRegistry.config().meterFilter(MeterFilter.deny());
+        }
+
+        S3Metrics s3Metrics = new S3Metrics();
+        ReflectionTestUtils.setField(s3Metrics, "meterRegistry", meterRegistry);
+        s3Metrics.init();
+        return s3Metrics;
+    }
+
+    @Benchmark
+    public Long direct() {
+        return call();
+    }
+
+    @Benchmark
+    public Long recorded() {
+        return s3Metrics.record(S3Metrics.Operation.HEAD, this::call);
+    }
+
+    private Long call() {
+        return ++value;
+    }
+}
@@ -0,0 +1,76 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of S3Service.generatePresignedUrl with the presigned URL cache warm ("hit")
+ * and disabled ("miss"), where every call pays for a SigV4 signature. The metrics parameter
+ * compares signing with meters denied against recording into the Prometheus histogram.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class S3ServiceBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({"hit", "miss"})
+    private String cache;
+
+    @Param({"noop", "prometheus"})
+    private String metrics;
+
+    private S3Presigner presigner;
+    private S3Service s3Service;
+    private ObjectLocation[] locations;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        presigner = BenchmarkApplication.offlinePresigner();
+
+        PresignedUrlCache presignedUrlCache = new PresignedUrlCache();
+        Duration signatureDuration = Duration.ofDays(2);
+        ReflectionTestUtils.setField(presignedUrlCache, "signatureDuration", signatureDuration);
+        // A safety margin as long as the signature disables the cache
+        ReflectionTestUtils.setField(presignedUrlCache, "safetyMargin",
+                "hit".equals(cache) ? Duration.ofHours(6) : signatureDuration);
+        ReflectionTestUtils.setField(presignedUrlCache, "maxSize", 100_000L);
+        ReflectionTestUtils.setField(presignedUrlCache, "meterRegistry", new SimpleMeterRegistry());
+        presignedUrlCache.init();
+
+        s3Service = new S3Service();
+        ReflectionTestUtils.setField(s3Service, "bucketName", BenchmarkApplication.BUCKET);
+        ReflectionTestUtils.setField(s3Service, "s3Presigner", presigner);
+        ReflectionTestUtils.setField(s3Service, "presignedUrlCache", presignedUrlCache);
+        ReflectionTestUtils.setField(s3Service, "s3Metrics", S3MetricsBenchmark.newS3Metrics(metrics));
+
+        locations = new ObjectLocation[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            locations[i] = new ObjectLocation(BenchmarkApplication.BUCKET, "photos/" + UUID.randomUUID() + ".jpg");
+            s3Service.generatePresignedUrl(locations[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        presigner.close();
+    }
+
+    @Benchmark
+    public String generatePresignedUrl() {
+        next = (next + 1) & (KEYS - 1);
+        return s3Service.generatePresignedUrl(locations[next]);
+    }
+}
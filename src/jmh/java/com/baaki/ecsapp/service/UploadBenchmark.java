@@ -0,0 +1,80 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.PhotoUploadResult;
+import com.baaki.ecsapp.repository.PhotoRepository;
+import com.baaki.ecsapp.repository.StoredObjectRepository;
+import com.baaki.ecsapp.support.BenchmarkApplication;
+import com.baaki.ecsapp.support.BenchmarkImages;
+import com.baaki.ecsapp.support.InMemoryS3Client;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PhotoService.uploadPhoto through the real context: validation, content hashing, the S3 PUT
+ * into {@link InMemoryS3Client} and the metadata insert into H2. With duplicate=false every
+ * upload carries new content; with duplicate=true the deduplication path skips the PUT.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UploadBenchmark {
+
+    @Param({"262144", "4194304"})
+    private int fileSize;
+
+    @Param({"false", "true"})
+    private boolean duplicate;
+
+    private ConfigurableApplicationContext context;
+    private PhotoService photoService;
+    private InMemoryS3Client s3Client;
+    private byte[] content;
+    private ByteBuffer tail;
+    private MockMultipartFile file;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(Map.of());
+        photoService = context.getBean(PhotoService.class);
+        s3Client = context.getBean(InMemoryS3Client.class);
+
+        // Uploads are probed for a real image header, so the content is a JPEG padded to size
+        content = BenchmarkImages.jpeg(64, 48, fileSize);
+        tail = ByteBuffer.wrap(content);
+        // MockMultipartFile keeps a reference to the array, so rewriting the padding changes the upload
+        file = new MockMultipartFile("file", "benchmark.jpg", "image/jpeg", content);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() {
+        context.getBean(PhotoRepository.class).deleteAllInBatch();
+        context.getBean(StoredObjectRepository.class).deleteAllInBatch();
+        s3Client.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public PhotoUploadResult uploadPhoto() {
+        if (!duplicate) {
+            tail.putLong(content.length - Long.BYTES, ++sequence);
+        }
+        PhotoUploadResult result = photoService.uploadPhoto(file, "Benchmark upload");
+        if (!result.isSuccess()) {
+            throw new IllegalStateException("Upload failed: " + result.getMessage());
+        }
+        return result;
+    }
+}
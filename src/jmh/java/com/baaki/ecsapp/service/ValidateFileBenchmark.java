@@ -0,0 +1,51 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.support.BenchmarkImages;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of PhotoService.validateFile for an accepted upload and for a rejected one,
+ * where the exception thrown back to the controller dominates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidateFileBenchmark {
+
+    private PhotoService photoService;
+    private MockMultipartFile acceptedFile;
+    private MockMultipartFile rejectedFile;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // validateFile only reads constants and the file, so the service needs no wiring
+        photoService = new PhotoService();
+
+        // The header probe needs a real image at the start of the file
+        byte[] content = BenchmarkImages.jpeg(64, 48, 2 * 1024 * 1024);
+        acceptedFile = new MockMultipartFile("file", "holiday.JPG", "image/JPEG", content);
+        rejectedFile = new MockMultipartFile("file", "notes.pdf", "application/pdf", content);
+    }
+
+    @Benchmark
+    public MockMultipartFile accepted() {
+        photoService.validateFile(acceptedFile);
+        return acceptedFile;
+    }
+
+    @Benchmark
+    public IllegalArgumentException rejected() {
+        try {
+            photoService.validateFile(rejectedFile);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.baaki.ecsapp.support;
+
+import com.baaki.ecsapp.EcsAppApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Starts the real application context for benchmarks, backed by an in-memory H2 database
+ * and, by default, {@link InMemoryS3Client}. Presigning uses static credentials, so nothing leaves the JVM.
+ */
+public final class BenchmarkApplication {
+
+    public static final String BUCKET = "benchmark-bucket";
+
+    private BenchmarkApplication() {
+    }
+
+    public static ConfigurableApplicationContext start(Map<String, Object> overrides) {
+        return start(WebApplicationType.NONE, overrides);
+    }
+
+    public static ConfigurableApplicationContext start(WebApplicationType webApplicationType,
+                                                       Map<String, Object> overrides) {
+        return start(webApplicationType, true, overrides);
+    }
+
+    /**
+     * Start with the real SDK clients instead of the in-memory S3, for benchmarks that talk to
+     * an S3-compatible endpoint such as {@link LocalS3Server} through app.s3.endpoint
+     */
+    public static ConfigurableApplicationContext startWithSdkClients(Map<String, Object> overrides) {
+        System.setProperty("aws.accessKeyId", "AKIDEXAMPLE");
+        System.setProperty("aws.secretAccessKey", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY");
+        return start(WebApplicationType.NONE, false, overrides);
+    }
+
+    private static ConfigurableApplicationContext start(WebApplicationType webApplicationType, boolean inMemoryS3,
+                                                        Map<String, Object> overrides) {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.datasource.url", "jdbc:h2:mem:benchmark;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE");
+        properties.put("spring.datasource.driver-class-name", "org.h2.Driver");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.jpa.hibernate.ddl-auto", "create-drop");
+        properties.put("spring.jpa.properties.hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.put("spring.jpa.properties.hibernate.jdbc.batch_size", "50");
+        properties.put("spring.jpa.properties.hibernate.order_inserts", "true");
+        properties.put("spring.jpa.open-in-view", "false");
+        // schema.sql is PostgreSQL-only
+        properties.put("spring.sql.init.mode", "never");
+        properties.put("app.aws.region", "eu-central-1");
+        properties.put("app.s3.bucket-name", BUCKET);
+        properties.put("app.renditions.enabled", "false");
+        properties.put("logging.level.com.baaki.ecsapp", "WARN");
+        properties.putAll(overrides);
+
+        Class<?>[] sources = inMemoryS3
+                ? new Class<?>[] {EcsAppApplication.class, InMemoryAwsConfig.class}
+                : new Class<?>[] {EcsAppApplication.class};
+        return new SpringApplicationBuilder(sources)
+                .web(webApplicationType)
+                .properties(properties)
+                .logStartupInfo(false)
+                .run();
+    }
+
+    /**
+     * Registered only as a source of start(); deliberately not a @Configuration, or component scanning
+     * of the application package would pick it up for the SDK-client contexts as well
+     */
+    static class InMemoryAwsConfig {
+
+        @Bean
+        @Primary
+        public InMemoryS3Client inMemoryS3Client() {
+            return new InMemoryS3Client();
+        }
+
+        @Bean
+        @Primary
+        public S3Presigner offlineS3Presigner() {
+            return offlinePresigner();
+        }
+    }
+
+    /**
+     * A presigner that signs with fixed example credentials, for benchmarks that build services by hand
+     */
+    public static S3Presigner offlinePresigner() {
+        return S3Presigner.builder()
+                .region(Region.EU_CENTRAL_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY")))
+                .build();
+    }
+}
@@ -0,0 +1,32 @@
+package com.baaki.ecsapp.support;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Real encoded images for benchmarks that read file headers
+ */
+public final class BenchmarkImages {
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * A JPEG of the given dimensions, padded with zeros after its end marker up to size bytes, so
+     * files of any size share one header and only the length differs
+     */
+    public static byte[] jpeg(int width, int height, int size) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpg", out);
+            byte[] encoded = out.toByteArray();
+            return encoded.length >= size ? encoded : Arrays.copyOf(encoded, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
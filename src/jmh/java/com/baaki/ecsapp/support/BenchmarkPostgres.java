@@ -0,0 +1,139 @@
+package com.baaki.ecsapp.support;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Embedded PostgreSQL for benchmarks of PostgreSQL-only SQL such as full-text search.
+ * The data directory survives between runs, so a large seeded dataset is built once and reused
+ * by every JMH fork; delete it to start from scratch.
+ */
+public class BenchmarkPostgres implements AutoCloseable {
+
+    // Server state a base backup leaves out; the replica recreates or streams it
+    private static final Set<String> EXCLUDED_FROM_BACKUP = Set.of(
+            "postmaster.pid", "postmaster.opts", "epg-lock", "pg_wal", "pg_replslot", "pg_stat_tmp");
+
+    private final EmbeddedPostgres postgres;
+
+    private final Path dataDirectory;
+
+    public BenchmarkPostgres(Path dataDirectory) throws IOException {
+        this.dataDirectory = dataDirectory;
+        this.postgres = EmbeddedPostgres.builder()
+                .setDataDirectory(dataDirectory)
+                .setCleanDataDirectory(false)
+                .setServerConfig("shared_buffers", "256MB")
+                .setServerConfig("maintenance_work_mem", "256MB")
+                .start();
+    }
+
+    private BenchmarkPostgres(EmbeddedPostgres postgres, Path dataDirectory) {
+        this.postgres = postgres;
+        this.dataDirectory = dataDirectory;
+    }
+
+    /**
+     * Start a hot standby of this server in an empty directory, from an online base backup and then
+     * streaming replication through a replication slot. Replay of every commit is held back by
+     * applyDelay, which stands in for replica lag.
+     */
+    public BenchmarkPostgres startReplica(Path replicaDirectory, Duration applyDelay) throws IOException, SQLException {
+        String slot = "replica_" + postgres.getPort();
+        try (Connection connection = postgres.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("SELECT pg_create_physical_replication_slot('" + slot + "', true)");
+            // Non-exclusive backup mode lasts as long as this session
+            statement.execute("SELECT pg_start_backup('replica', true, false)");
+            copyDataDirectory(replicaDirectory);
+            try (ResultSet backup = statement.executeQuery("SELECT labelfile FROM pg_stop_backup(false, true)")) {
+                backup.next();
+                Files.writeString(replicaDirectory.resolve("backup_label"), backup.getString(1));
+            }
+        }
+
+        // PostgreSQL refuses to start on a data directory other users can read
+        Files.setPosixFilePermissions(replicaDirectory, PosixFilePermissions.fromString("rwx------"));
+        Files.createFile(replicaDirectory.resolve("standby.signal"));
+        Files.writeString(replicaDirectory.resolve("postgresql.auto.conf"),
+                "primary_conninfo = 'host=localhost port=" + postgres.getPort() + " user=postgres'\n"
+                        + "primary_slot_name = '" + slot + "'\n"
+                        + "recovery_min_apply_delay = '" + applyDelay.toMillis() + "ms'\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        EmbeddedPostgres replica = EmbeddedPostgres.builder()
+                .setDataDirectory(replicaDirectory)
+                .setCleanDataDirectory(false)
+                .start();
+        return new BenchmarkPostgres(replica, replicaDirectory);
+    }
+
+    private void copyDataDirectory(Path target) throws IOException {
+        try (Stream<Path> files = Files.walk(dataDirectory)) {
+            files.forEach(source -> {
+                Path relative = dataDirectory.relativize(source);
+                if (relative.getNameCount() > 1 && EXCLUDED_FROM_BACKUP.contains(relative.getName(0).toString())) {
+                    return;
+                }
+                if (EXCLUDED_FROM_BACKUP.contains(relative.toString()) && !Files.isDirectory(source)) {
+                    return;
+                }
+                try {
+                    if (Files.isDirectory(source)) {
+                        Files.createDirectories(target.resolve(relative));
+                    } else {
+                        Files.copy(source, target.resolve(relative));
+                    }
+                } catch (NoSuchFileException e) {
+                    // Dropped by the running server while copying; WAL replay recreates whatever is needed
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    public String getJdbcUrl() {
+        return postgres.getJdbcUrl("postgres", "postgres");
+    }
+
+    /**
+     * Overrides for {@link BenchmarkApplication#start} that point the application at this server
+     * and run db/postgresql/schema.sql after Hibernate's schema update, as in production
+     */
+    public Map<String, Object> properties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.datasource.url", getJdbcUrl());
+        properties.put("spring.datasource.driver-class-name", "org.postgresql.Driver");
+        properties.put("spring.datasource.username", "postgres");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.jpa.hibernate.ddl-auto", "update");
+        properties.put("spring.jpa.properties.hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        properties.put("spring.jpa.defer-datasource-initialization", "true");
+        properties.put("spring.sql.init.mode", "always");
+        properties.put("spring.sql.init.schema-locations", "classpath:db/postgresql/schema.sql");
+        return properties;
+    }
+
+    @Override
+    public void close() throws IOException {
+        postgres.close();
+    }
+}
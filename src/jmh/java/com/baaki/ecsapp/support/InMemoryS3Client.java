@@ -0,0 +1,307 @@
+package com.baaki.ecsapp.support;
+
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.ContentStreamProvider;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.DeletedObject;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * S3 stand-in for benchmarks. Request bodies are read to the end, as the real client would,
+ * but only object sizes are kept so long runs do not grow the heap with photo bytes; GETs return
+ * generated content in which every byte is its offset modulo 256.
+ * Operations the upload and delete paths do not use fall through to the interface defaults,
+ * which throw UnsupportedOperationException. An optional latency is added to every PUT, and the
+ * peak number of PUTs in flight is tracked so load tests can see how many uploads really overlap.
+ * GETs can be delayed too, and are counted.
+ * Keys are kept sorted, so ListObjectsV2 pages through them in order like S3 does for ASCII keys.
+ */
+public class InMemoryS3Client implements S3Client {
+
+    private final ConcurrentNavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, AtomicLong> pendingUploads = new ConcurrentHashMap<>();
+    private final AtomicLong putsInFlight = new AtomicLong();
+    private final AtomicLong maxPutsInFlight = new AtomicLong();
+
+    private final AtomicLong getCount = new AtomicLong();
+
+    private volatile Duration putLatency = Duration.ZERO;
+    private volatile Duration getLatency = Duration.ZERO;
+
+    // Number of ListObjectsV2 calls that succeed before every further one fails; negative never fails
+    private final AtomicLong listCallsBeforeFailure = new AtomicLong(-1);
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+        maxPutsInFlight.accumulateAndGet(putsInFlight.incrementAndGet(), Math::max);
+        try {
+            simulateLatency(putLatency);
+            objects.put(request.key(), new StoredObject(drain(requestBody), Instant.now(), request.contentType()));
+            return PutObjectResponse.builder().eTag(UUID.randomUUID().toString()).build();
+        } finally {
+            putsInFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest request) {
+        StoredObject object = objects.get(request.key());
+        if (object == null) {
+            throw NoSuchKeyException.builder().message("No such key: " + request.key()).build();
+        }
+        return HeadObjectResponse.builder().contentLength(object.size()).lastModified(object.lastModified()).build();
+    }
+
+    /**
+     * Supports a single "bytes=first-last" range, which is all the service asks for
+     */
+    @Override
+    public <T> T getObject(GetObjectRequest request, ResponseTransformer<GetObjectResponse, T> responseTransformer) {
+        getCount.incrementAndGet();
+        simulateLatency(getLatency);
+        StoredObject object = objects.get(request.key());
+        if (object == null) {
+            throw NoSuchKeyException.builder().message("No such key: " + request.key()).build();
+        }
+        long first = 0;
+        long last = object.size() - 1;
+        if (request.range() != null) {
+            String[] bounds = request.range().substring("bytes=".length()).split("-");
+            first = Long.parseLong(bounds[0]);
+            last = Math.min(Long.parseLong(bounds[1]), last);
+        }
+        long length = Math.max(last - first + 1, 0);
+        GetObjectResponse response = GetObjectResponse.builder()
+                .contentLength(length)
+                .contentType(object.contentType())
+                .eTag("\"" + Integer.toHexString(request.key().hashCode()) + "\"")
+                .lastModified(object.lastModified())
+                .build();
+        try {
+            return responseTransformer.transform(response, AbortableInputStream.create(new GeneratedContent(first, length)));
+        } catch (Exception e) {
+            throw SdkClientException.create("Failed to transform the response", e);
+        }
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+        objects.remove(request.key());
+        return DeleteObjectResponse.builder().build();
+    }
+
+    @Override
+    public DeleteObjectsResponse deleteObjects(DeleteObjectsRequest request) {
+        request.delete().objects().forEach(object -> objects.remove(object.key()));
+        List<DeletedObject> deleted = request.delete().quiet() != null && request.delete().quiet()
+                ? List.of()
+                : request.delete().objects().stream()
+                        .map(object -> DeletedObject.builder().key(object.key()).build())
+                        .toList();
+        return DeleteObjectsResponse.builder().deleted(deleted).build();
+    }
+
+    @Override
+    public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+        String uploadId = UUID.randomUUID().toString();
+        pendingUploads.put(uploadId, new AtomicLong());
+        return CreateMultipartUploadResponse.builder().uploadId(uploadId).build();
+    }
+
+    @Override
+    public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody requestBody) {
+        simulateLatency(putLatency);
+        pendingUploads.get(request.uploadId()).addAndGet(drain(requestBody));
+        return UploadPartResponse.builder().eTag(UUID.randomUUID().toString()).build();
+    }
+
+    @Override
+    public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        objects.put(request.key(), new StoredObject(pendingUploads.remove(request.uploadId()).get(), Instant.now(), null));
+        return CompleteMultipartUploadResponse.builder().key(request.key()).build();
+    }
+
+    @Override
+    public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+        pendingUploads.remove(request.uploadId());
+        return AbortMultipartUploadResponse.builder().build();
+    }
+
+    /**
+     * Continuation tokens are simply the last key of the previous page
+     */
+    @Override
+    public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request) {
+        if (listCallsBeforeFailure.getAndUpdate(remaining -> remaining > 0 ? remaining - 1 : remaining) == 0) {
+            throw SdkClientException.create("Simulated ListObjectsV2 failure");
+        }
+        String after = request.continuationToken() != null ? request.continuationToken() : request.startAfter();
+        int maxKeys = request.maxKeys() != null ? request.maxKeys() : 1000;
+        Map<String, StoredObject> remaining = after != null ? objects.tailMap(after, false) : objects;
+
+        List<S3Object> contents = new ArrayList<>(Math.min(maxKeys, 1000));
+        boolean truncated = false;
+        for (Map.Entry<String, StoredObject> entry : remaining.entrySet()) {
+            if (contents.size() == maxKeys) {
+                truncated = true;
+                break;
+            }
+            contents.add(S3Object.builder()
+                    .key(entry.getKey())
+                    .size(entry.getValue().size())
+                    .lastModified(entry.getValue().lastModified())
+                    .build());
+        }
+        return ListObjectsV2Response.builder()
+                .contents(contents)
+                .keyCount(contents.size())
+                .isTruncated(truncated)
+                .nextContinuationToken(truncated ? contents.get(contents.size() - 1).key() : null)
+                .build();
+    }
+
+    public int objectCount() {
+        return objects.size();
+    }
+
+    /**
+     * Store an object without a request, e.g. one written long ago by a failed upload
+     */
+    public void putObject(String key, long size, Instant lastModified) {
+        objects.put(key, new StoredObject(size, lastModified, null));
+    }
+
+    public boolean containsObject(String key) {
+        return objects.containsKey(key);
+    }
+
+    /**
+     * Let the given number of ListObjectsV2 calls succeed and fail every later one, or never fail when negative
+     */
+    public void failListingAfter(long calls) {
+        listCallsBeforeFailure.set(calls);
+    }
+
+    public void setGetLatency(Duration getLatency) {
+        this.getLatency = getLatency;
+    }
+
+    public long getGetCount() {
+        return getCount.get();
+    }
+
+    public void setPutLatency(Duration putLatency) {
+        this.putLatency = putLatency;
+    }
+
+    public long getMaxPutsInFlight() {
+        return maxPutsInFlight.get();
+    }
+
+    public void clear() {
+        objects.clear();
+        listCallsBeforeFailure.set(-1);
+        pendingUploads.clear();
+        maxPutsInFlight.set(0);
+        getCount.set(0);
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static void simulateLatency(Duration latency) {
+        if (!latency.isZero()) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while simulating S3 latency", e);
+            }
+        }
+    }
+
+    private record StoredObject(long size, Instant lastModified, String contentType) {
+    }
+
+    private static final class GeneratedContent extends InputStream {
+
+        private long position;
+        private final long end;
+
+        GeneratedContent(long first, long length) {
+            this.position = first;
+            this.end = first + length;
+        }
+
+        @Override
+        public int read() {
+            return position < end ? (int) (position++ & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= end) {
+                return -1;
+            }
+            int count = (int) Math.min(length, end - position);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) position++;
+            }
+            return count;
+        }
+    }
+
+    private static long drain(RequestBody requestBody) {
+        ContentStreamProvider provider = requestBody.contentStreamProvider();
+        try (InputStream body = provider.newStream()) {
+            return body.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
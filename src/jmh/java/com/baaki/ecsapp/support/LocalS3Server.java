@@ -0,0 +1,115 @@
+package com.baaki.ecsapp.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal S3-compatible HTTP endpoint for benchmarking real SDK clients over the loopback interface.
+ * It speaks just enough of the path-style REST API for uploads, HEAD and deletes: PUT object,
+ * multipart create/part/complete, HEAD, DELETE and multi-object delete. Bodies are drained and
+ * discarded, and signatures are not checked; HEAD echoes the size, Content-Type and SHA-256 checksum of the PUT.
+ */
+public class LocalS3Server implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+
+    private record StoredObject(long size, String contentType, String checksumSha256) {
+    }
+
+    public LocalS3Server() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getQuery() == null ? "" : exchange.getRequestURI().getQuery();
+            long size = drain(exchange.getRequestBody());
+
+            switch (exchange.getRequestMethod()) {
+                case "PUT" -> {
+                    if (!query.contains("partNumber=")) {
+                        objects.put(path, new StoredObject(size,
+                                exchange.getRequestHeaders().getFirst("Content-Type"),
+                                exchange.getRequestHeaders().getFirst("x-amz-checksum-sha256")));
+                    }
+                    exchange.getResponseHeaders().add("ETag", "\"" + UUID.randomUUID() + "\"");
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                case "POST" -> {
+                    if (query.startsWith("uploads")) {
+                        xml(exchange, "<InitiateMultipartUploadResult><UploadId>" + UUID.randomUUID()
+                                + "</UploadId></InitiateMultipartUploadResult>");
+                    } else if (query.startsWith("uploadId=")) {
+                        objects.put(path, new StoredObject(0L, null, null));
+                        xml(exchange, "<CompleteMultipartUploadResult><ETag>\"" + UUID.randomUUID()
+                                + "-1\"</ETag></CompleteMultipartUploadResult>");
+                    } else if (query.startsWith("delete")) {
+                        xml(exchange, "<DeleteResult></DeleteResult>");
+                    } else {
+                        exchange.sendResponseHeaders(400, -1);
+                    }
+                }
+                case "HEAD" -> {
+                    StoredObject object = objects.get(path);
+                    if (object == null) {
+                        exchange.sendResponseHeaders(404, -1);
+                    } else {
+                        exchange.getResponseHeaders().add("Content-Length", String.valueOf(object.size()));
+                        if (object.contentType() != null) {
+                            exchange.getResponseHeaders().add("Content-Type", object.contentType());
+                        }
+                        if (object.checksumSha256() != null) {
+                            exchange.getResponseHeaders().add("x-amz-checksum-sha256", object.checksumSha256());
+                        }
+                        exchange.sendResponseHeaders(200, -1);
+                    }
+                }
+                case "DELETE" -> {
+                    objects.remove(path);
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
+    private static void xml(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+
+    private static long drain(InputStream body) throws IOException {
+        return body.transferTo(OutputStream.nullOutputStream());
+    }
+}
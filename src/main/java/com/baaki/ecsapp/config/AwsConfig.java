@@ -0,0 +1,168 @@
+package com.baaki.ecsapp.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.S3CrtAsyncClientBuilder;
+import software.amazon.awssdk.services.s3.crt.S3CrtConnectionHealthConfiguration;
+import software.amazon.awssdk.services.s3.crt.S3CrtHttpConfiguration;
+import software.amazon.awssdk.services.s3.crt.S3CrtRetryConfiguration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Shared AWS SDK clients. All are thread-safe and closed by the container on shutdown.
+ * The synchronous client is always present; app.s3.client=async adds the CRT-based async client
+ * and transfer manager used by S3AsyncService.
+ */
+@Configuration
+public class AwsConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(AwsConfig.class);
+
+    @Value("${app.aws.region}")
+    private String awsRegion;
+
+    // Optional S3-compatible endpoint (MinIO, LocalStack); addressed path-style
+    @Value("${app.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${app.s3.http.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${app.s3.http.connection-timeout:PT2S}")
+    private Duration connectionTimeout;
+
+    @Value("${app.s3.http.socket-timeout:PT30S}")
+    private Duration socketTimeout;
+
+    @Value("${app.s3.http.connection-acquisition-timeout:PT10S}")
+    private Duration connectionAcquisitionTimeout;
+
+    @Value("${app.s3.http.connection-max-idle-time:PT60S}")
+    private Duration connectionMaxIdleTime;
+
+    @Value("${app.s3.async.target-throughput-gbps:10.0}")
+    private double targetThroughputGbps;
+
+    @Value("${app.s3.multipart.part-size:8MB}")
+    private DataSize partSize;
+
+    // Attempts per request, including the first, for throttled (503 Slow Down) and transient failures
+    @Value("${app.s3.retry.max-attempts:5}")
+    private int maxAttempts;
+
+    @Bean
+    public S3Client s3Client() {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(awsRegion))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                // Adaptive retry also rate-limits the client once S3 starts throttling a prefix,
+                // instead of every thread retrying into the same 503s
+                .overrideConfiguration(o -> o.retryStrategy(AwsRetryStrategy.adaptiveRetryStrategy().toBuilder()
+                        .maxAttempts(maxAttempts)
+                        .build()));
+
+        if (virtualThreads) {
+            // The Apache client opens connections inside synchronized blocks, which pins the carrier
+            // thread for the TCP and TLS handshake. HttpURLConnection uses j.u.c locks on Java 21.
+            // Its idle keep-alive pool per host is the JVM-wide http.maxConnections, set at launch
+            // (see the Dockerfile), never from here.
+            builder.httpClientBuilder(UrlConnectionHttpClient.builder()
+                    .connectionTimeout(connectionTimeout)
+                    .socketTimeout(socketTimeout));
+            logger.info("S3 client using the URL connection transport for virtual threads, http.maxConnections: {}",
+                    System.getProperty("http.maxConnections", "5 (JDK default)"));
+        } else {
+            // The SDK default pool is 50 connections with no idle limit, fewer than Tomcat's 200 threads
+            builder.httpClientBuilder(ApacheHttpClient.builder()
+                    .maxConnections(maxConnections)
+                    .connectionTimeout(connectionTimeout)
+                    .socketTimeout(socketTimeout)
+                    .connectionAcquisitionTimeout(connectionAcquisitionTimeout)
+                    .connectionMaxIdleTime(connectionMaxIdleTime)
+                    .tcpKeepAlive(true));
+            logger.info("S3 client using the Apache transport with max connections: {}", maxConnections);
+        }
+
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint))
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public S3Presigner s3Presigner() {
+        S3Presigner.Builder builder = S3Presigner.builder()
+                .region(Region.of(awsRegion))
+                .credentialsProvider(DefaultCredentialsProvider.create());
+
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint))
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+        }
+        return builder.build();
+    }
+
+    /**
+     * CRT-based async client. It splits large objects into parts and uploads them in parallel on
+     * its own native event loop, sizing its connection pool from the target throughput.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.s3.client", havingValue = "async")
+    public S3AsyncClient s3AsyncClient() {
+        S3CrtAsyncClientBuilder builder = S3AsyncClient.crtBuilder()
+                .region(Region.of(awsRegion))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .targetThroughputInGbps(targetThroughputGbps)
+                .maxConcurrency(maxConnections)
+                .minimumPartSizeInBytes(partSize.toBytes())
+                // The CRT client has its own retry and backoff; it only takes a retry count
+                .retryConfiguration(S3CrtRetryConfiguration.builder().numRetries(maxAttempts - 1).build())
+                .httpConfiguration(S3CrtHttpConfiguration.builder()
+                        .connectionTimeout(connectionTimeout)
+                        .connectionHealthConfiguration(S3CrtConnectionHealthConfiguration.builder()
+                                // Drop connections that stall below 1 byte/s for the socket timeout
+                                .minimumThroughputInBps(1L)
+                                .minimumThroughputTimeout(socketTimeout)
+                                .build())
+                        .build());
+
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint))
+                    .forcePathStyle(true);
+        }
+
+        logger.info("S3 async client using the CRT transport with target throughput: {} Gbps, max concurrency: {}",
+                targetThroughputGbps, maxConnections);
+        return builder.build();
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "app.s3.client", havingValue = "async")
+    public S3TransferManager s3TransferManager(S3AsyncClient s3AsyncClient) {
+        return S3TransferManager.builder()
+                .s3Client(s3AsyncClient)
+                .build();
+    }
+}
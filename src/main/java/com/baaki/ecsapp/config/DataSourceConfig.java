@@ -0,0 +1,96 @@
+package com.baaki.ecsapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Primary and read replica connection pools, used when app.datasource.replica.enabled is set;
+ * otherwise Spring Boot's single pool on spring.datasource is used as before.
+ * The primary pool takes spring.datasource.hikari.*, every replica pool app.datasource.replica.hikari.*.
+ *
+ * Open-in-view is off, so each transaction borrows its own connection and is routed on its own.
+ * ReadYourWritesFilter pins requests that write, and reads shortly after, to the primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replica.enabled", havingValue = "true")
+public class DataSourceConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceConfig.class);
+
+    @Value("${app.datasource.replica.urls:}")
+    private List<String> replicaUrls;
+
+    @Value("${app.datasource.replica.username:${spring.datasource.username:}}")
+    private String replicaUsername;
+
+    @Value("${app.datasource.replica.password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource routingDataSource(HikariDataSource primaryDataSource,
+                                                      DataSourceProperties properties,
+                                                      Environment environment,
+                                                      MeterRegistry meterRegistry) {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource replica = new HikariDataSource();
+            Binder.get(environment).bind("app.datasource.replica.hikari", Bindable.ofInstance(replica));
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(replicaUsername);
+            replica.setPassword(replicaPassword);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setPoolName("replica-" + replicas.size());
+            replica.setReadOnly(true);
+            // Not beans, so Spring Boot does not bind their pool metrics; hikaricp.* tagged by pool name
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.add(replica);
+        }
+
+        if (replicas.isEmpty()) {
+            logger.warn("Read replicas enabled but app.datasource.replica.urls is empty; all queries use the primary");
+        } else {
+            logger.info("Routing read-only transactions to {} read replica(s)", replicas.size());
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas);
+    }
+
+    /**
+     * The DataSource used by JPA, JdbcTemplate and schema initialization
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
@@ -0,0 +1,79 @@
+package com.baaki.ecsapp.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Read-your-writes on top of replica routing. Requests that may write read from the primary, and so
+ * does every request from the same browser for a short window afterwards, marked by a cookie. That covers
+ * the redirect to /gallery after an upload, which a lagging replica would answer without the new photo.
+ * Does nothing unless app.datasource.replica.enabled is set.
+ */
+@Component
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE_NAME = "read-primary";
+
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS", "TRACE");
+
+    private static final ThreadLocal<Boolean> primaryRequired = new ThreadLocal<>();
+
+    @Value("${app.datasource.replica.enabled:false}")
+    private boolean enabled;
+
+    // Must exceed the worst replica lag that should stay invisible to the writer
+    @Value("${app.datasource.replica.read-your-writes-window:PT5S}")
+    private Duration window;
+
+    /**
+     * Whether the current request must read from the primary
+     */
+    public static boolean isPrimaryRequired() {
+        return Boolean.TRUE.equals(primaryRequired.get());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean writing = !SAFE_METHODS.contains(request.getMethod());
+        if (writing) {
+            // Set before the handler runs; a redirect commits the response before this filter sees it again
+            response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie.from(COOKIE_NAME, "1")
+                    .path("/")
+                    .maxAge(window)
+                    .httpOnly(true)
+                    .sameSite("Lax")
+                    .build()
+                    .toString());
+        }
+
+        if (!writing && WebUtils.getCookie(request, COOKIE_NAME) == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        primaryRequired.set(Boolean.TRUE);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            primaryRequired.remove();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.baaki.ecsapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends connections for read-only transactions to the replicas in turn and all others to the primary.
+ * The transaction's read-only flag is only known once it has begun, so this must sit behind a
+ * LazyConnectionDataSourceProxy that defers the real connection to the first statement.
+ * A replica that cannot hand out a connection is skipped in favour of the primary.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final String PRIMARY = "primary";
+
+    private final DataSource primary;
+
+    private final List<HikariDataSource> replicas;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<HikariDataSource> replicas) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < this.replicas.size(); i++) {
+            targets.put(i, this.replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicas.isEmpty()
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || ReadYourWritesFilter.isPrimaryRequired()) {
+            return PRIMARY;
+        }
+        return Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DataSource target = determineTargetDataSource();
+        if (target == primary) {
+            return target.getConnection();
+        }
+        try {
+            return target.getConnection();
+        } catch (SQLException e) {
+            logger.warn("Read replica {} unavailable, reading from the primary: {}",
+                    ((HikariDataSource) target).getPoolName(), e.getMessage());
+            return primary.getConnection();
+        }
+    }
+
+    /**
+     * Close the replica pools; the primary pool is a bean of its own and closed by the container
+     */
+    @Override
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+    }
+}
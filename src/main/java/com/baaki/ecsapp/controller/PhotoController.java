@@ -1,22 +1,51 @@
 package com.baaki.ecsapp.controller;
 
+import com.baaki.ecsapp.dto.BulkDeleteRequest;
+import com.baaki.ecsapp.dto.BulkDeleteResult;
+import com.baaki.ecsapp.dto.DirectUploadCompletion;
+import com.baaki.ecsapp.dto.DirectUploadRequest;
+import com.baaki.ecsapp.dto.DirectUploadTicket;
+import com.baaki.ecsapp.dto.PhotoField;
+import com.baaki.ecsapp.dto.PhotoPage;
 import com.baaki.ecsapp.dto.PhotoUploadResult;
-import com.baaki.ecsapp.dto.PhotoWithPresignedUrl;
+import com.baaki.ecsapp.dto.UploadJob;
+import com.baaki.ecsapp.service.ObjectContent;
+import com.baaki.ecsapp.service.ObjectFile;
+import com.baaki.ecsapp.service.PhotoContent;
+import com.baaki.ecsapp.service.PhotoListingWriter;
 import com.baaki.ecsapp.service.PhotoService;
+import com.baaki.ecsapp.service.UploadJobService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 @Controller
 public class PhotoController {
@@ -26,20 +55,43 @@ public class PhotoController {
     @Autowired
     private PhotoService photoService;
 
+    @Autowired
+    private UploadJobService uploadJobService;
+
+    @Autowired
+    private PhotoListingWriter photoListingWriter;
+
+    // Requires a CORS rule on the bucket allowing PUT from the site's origin
+    @Value("${app.upload.direct.enabled:true}")
+    private boolean directUploadEnabled;
+
+    @Value("${app.content.max-age:P1D}")
+    private Duration contentMaxAge;
+
     /**
-     * Display the photo gallery
+     * Display the photo gallery (first page; further pages are loaded from /api/photos).
+     * Answers 304 when the listing is unchanged, unless a flash message from a redirect has to be shown.
      */
     @GetMapping("/gallery")
-    public String gallery(Model model) {
+    public String gallery(Model model, WebRequest webRequest, HttpServletResponse response) {
         try {
-            List<PhotoWithPresignedUrl> photos = photoService.getAllPhotosWithUrls();
+            String etag = photoService.getListingETag();
+            boolean hasFlashMessage = model.containsAttribute("successMessage") || model.containsAttribute("errorMessage");
+            if (!hasFlashMessage && webRequest.checkNotModified(etag)) {
+                return null;
+            }
+
+            PhotoPage page = photoService.getPhotoPage(null, null);
             long photoCount = photoService.getPhotoCount();
 
-            model.addAttribute("photos", photos);
+            model.addAttribute("photos", page.getPhotos());
+            model.addAttribute("nextCursor", page.getNextCursor());
             model.addAttribute("photoCount", photoCount);
             model.addAttribute("pageTitle", "Photo Gallery");
 
-            logger.debug("Displaying gallery with {} photos", photos.size());
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, listingCacheControl().getHeaderValue());
+            logger.debug("Displaying gallery with {} photos", page.getPhotos().size());
             return "gallery";
 
         } catch (Exception e) {
@@ -55,6 +107,7 @@ public class PhotoController {
     @GetMapping("/upload")
     public String uploadForm(Model model) {
         model.addAttribute("pageTitle", "Upload Photo");
+        model.addAttribute("directUpload", directUploadEnabled);
         return "upload";
     }
 
@@ -89,14 +142,29 @@ public class PhotoController {
     }
 
     /**
-     * REST API endpoint to get all photos (JSON)
+     * REST API endpoint to get one page of photos (JSON), newest first.
+     * Pass the returned nextCursor back as the cursor parameter to fetch the following page.
+     * Send the returned ETag as If-None-Match to get 304 Not Modified while the listing is unchanged.
      */
     @GetMapping("/api/photos")
     @ResponseBody
-    public ResponseEntity<List<PhotoWithPresignedUrl>> getPhotos() {
+    public ResponseEntity<PhotoPage> getPhotos(@RequestParam(value = "cursor", required = false) String cursor,
+                                               @RequestParam(value = "limit", required = false) Integer limit,
+                                               WebRequest webRequest) {
         try {
-            List<PhotoWithPresignedUrl> photos = photoService.getAllPhotosWithUrls();
-            return ResponseEntity.ok(photos);
+            String etag = photoService.getListingETag();
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
+
+            PhotoPage page = photoService.getPhotoPage(cursor, limit);
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(listingCacheControl())
+                    .body(page);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected photo page request: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(null);
         } catch (Exception e) {
             logger.error("Error fetching photos via API: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
@@ -104,12 +172,87 @@ public class PhotoController {
     }
 
     /**
-     * REST API endpoint to upload photo (JSON response)
+     * REST API endpoint to search photos (JSON), newest first. q matches words in the filename and
+     * description and accepts web-search syntax ("exact phrase", or, -exclude); contentType is an exact
+     * MIME type; from (inclusive) and to (exclusive) are ISO date-times. Pages work as in /api/photos.
+     */
+    @GetMapping("/api/photos/search")
+    @ResponseBody
+    public ResponseEntity<PhotoPage> searchPhotos(@RequestParam(value = "q", required = false) String query,
+                                                  @RequestParam(value = "contentType", required = false) String contentType,
+                                                  @RequestParam(value = "from", required = false)
+                                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                  @RequestParam(value = "to", required = false)
+                                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                  @RequestParam(value = "cursor", required = false) String cursor,
+                                                  @RequestParam(value = "limit", required = false) Integer limit,
+                                                  WebRequest webRequest) {
+        try {
+            String etag = photoService.getListingETag();
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
+
+            PhotoPage page = photoService.searchPhotos(query, contentType, from, to, cursor, limit);
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(listingCacheControl())
+                    .body(page);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected photo search request: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(null);
+        } catch (Exception e) {
+            logger.error("Error searching photos via API: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
+    }
+
+    /**
+     * REST API endpoint to stream the whole listing as one JSON array, newest first.
+     * Rows are read in keyset chunks, each in its own short transaction, so memory use does not grow with
+     * the gallery and a slow client never holds a database connection.
+     * fields selects a subset of id, filename, description, contentType, fileSize, uploadedAt (epoch
+     * milliseconds), url, thumbnailUrl, previewUrl, width, height and orientation, e.g. ?fields=id,url;
+     * by default all are written.
+     */
+    @GetMapping("/api/photos/stream")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> streamPhotos(@RequestParam(value = "fields", required = false) String fields,
+                                                              WebRequest webRequest) {
+        Set<PhotoField> selected;
+        try {
+            selected = PhotoField.parse(fields);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected photo stream request: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(null);
+        }
+
+        String etag = photoService.getListingETag();
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
+        // checkNotModified has already set the ETag header; streamed responses would send it twice
+        StreamingResponseBody body = outputStream -> photoListingWriter.writeAll(outputStream, selected);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(listingCacheControl())
+                .body(body);
+    }
+
+    /**
+     * REST API endpoint to upload photo (JSON response).
+     * With async=true the upload is queued and 202 Accepted is returned with a job id to poll.
      */
     @PostMapping("/api/upload")
     @ResponseBody
     public ResponseEntity<Map<String, Object>> uploadPhotoApi(@RequestParam("file") MultipartFile file,
-                                                              @RequestParam(value = "description", required = false) String description) {
+                                                              @RequestParam(value = "description", required = false) String description,
+                                                              @RequestParam(value = "async", defaultValue = "false") boolean async) {
+
+        if (async) {
+            return uploadPhotoAsync(file, description);
+        }
 
         Map<String, Object> response = new HashMap<>();
 
@@ -122,6 +265,8 @@ public class PhotoController {
             if (result.isSuccess()) {
                 response.put("photoId", result.getPhotoId());
                 return ResponseEntity.ok(response);
+            } else if (result.isBusy()) {
+                return busy(response);
             } else {
                 return ResponseEntity.badRequest().body(response);
             }
@@ -134,6 +279,286 @@ public class PhotoController {
         }
     }
 
+    /**
+     * REST API endpoint to upload several photos in one request (JSON response with one result per file)
+     */
+    @PostMapping("/api/upload/batch")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> uploadPhotoBatch(@RequestParam("files") List<MultipartFile> files,
+                                                                @RequestParam(value = "description", required = false) String description) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            List<PhotoUploadResult> results = photoService.uploadPhotos(files, description);
+            long uploaded = results.stream().filter(PhotoUploadResult::isSuccess).count();
+
+            response.put("success", uploaded == results.size());
+            response.put("message", uploaded + " of " + results.size() + " photos uploaded");
+            response.put("results", results);
+
+            if (uploaded == 0 && results.stream().anyMatch(PhotoUploadResult::isBusy)) {
+                return busy(response);
+            }
+            return uploaded > 0 ? ResponseEntity.ok(response) : ResponseEntity.badRequest().body(response);
+
+        } catch (Exception e) {
+            logger.error("Error in batch photo upload API: {}", e.getMessage(), e);
+            response.put("success", false);
+            response.put("message", "An unexpected error occurred");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * 503 for an upload turned away because every upload buffer is in use
+     */
+    private static ResponseEntity<Map<String, Object>> busy(Map<String, Object> response) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(response);
+    }
+
+    private ResponseEntity<Map<String, Object>> uploadPhotoAsync(MultipartFile file, String description) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            UploadJob job = uploadJobService.submit(file, description);
+
+            response.put("success", true);
+            response.put("message", "Upload accepted");
+            response.put("jobId", job.getJobId());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/uploads/" + job.getJobId()))
+                    .body(response);
+
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Rejected async upload for file {}: {}", file.getOriginalFilename(), e.getMessage());
+            response.put("success", false);
+            response.put("message", "Too many uploads in progress. Please retry shortly.");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(response);
+        } catch (Exception e) {
+            logger.error("Error queueing async photo upload: {}", e.getMessage(), e);
+            response.put("success", false);
+            response.put("message", "An unexpected error occurred");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * REST API endpoint to poll the status of an async upload
+     */
+    @GetMapping("/api/uploads/{jobId}")
+    @ResponseBody
+    public ResponseEntity<UploadJob> getUploadJob(@PathVariable String jobId) {
+        UploadJob job = uploadJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * REST API endpoint to upload a large photo by streaming the raw request body to S3.
+     * The body is the image itself, sent with its image Content-Type; nothing is spooled to disk.
+     */
+    @PostMapping("/api/upload/stream")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> uploadPhotoStream(@RequestParam("filename") String filename,
+                                                                 @RequestParam(value = "description", required = false) String description,
+                                                                 @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+                                                                 HttpServletRequest request) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            logger.info("Received streamed upload request for file: {}, declared size: {} bytes",
+                    filename, request.getContentLengthLong());
+
+            // Drop media type parameters such as charset before validation
+            String mediaType = contentType != null ? contentType.split(";")[0].trim() : null;
+            PhotoUploadResult result = photoService.uploadPhotoStream(request.getInputStream(), filename, mediaType, description);
+
+            response.put("success", result.isSuccess());
+            response.put("message", result.getMessage());
+
+            if (result.isSuccess()) {
+                response.put("photoId", result.getPhotoId());
+                return ResponseEntity.ok(response);
+            } else if (result.isBusy()) {
+                return busy(response);
+            } else {
+                return ResponseEntity.badRequest().body(response);
+            }
+
+        } catch (IOException e) {
+            logger.error("Error reading streamed upload: {}", e.getMessage(), e);
+            response.put("success", false);
+            response.put("message", "An unexpected error occurred");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * REST API endpoint to start a direct upload: returns a presigned PUT for sending the file straight to S3.
+     * Body: {"filename": "a.jpg", "contentType": "image/jpeg", "size": 12345, "sha256": "optional hex digest"}
+     */
+    @PostMapping("/api/upload/direct")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> createDirectUpload(@RequestBody DirectUploadRequest request) {
+        if (!directUploadEnabled) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            DirectUploadTicket ticket = photoService.createDirectUpload(request);
+
+            response.put("success", true);
+            response.put("upload", ticket);
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected direct upload request: {}", e.getMessage());
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            logger.error("Error issuing direct upload: {}", e.getMessage(), e);
+            response.put("success", false);
+            response.put("message", "An unexpected error occurred");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * REST API endpoint to finish a direct upload after the PUT to S3 succeeded.
+     * Body: {"bucket": "...", "s3Key": "...", "filename": "a.jpg", "description": "optional"}
+     */
+    @PostMapping("/api/upload/direct/complete")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> completeDirectUpload(@RequestBody DirectUploadCompletion completion) {
+        if (!directUploadEnabled) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        PhotoUploadResult result = photoService.completeDirectUpload(completion);
+
+        response.put("success", result.isSuccess());
+        response.put("message", result.getMessage());
+
+        if (result.isSuccess()) {
+            response.put("photoId", result.getPhotoId());
+            return ResponseEntity.ok(response);
+        } else {
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * Serve a photo's original through the app, for clients that cannot reach S3 presigned URLs.
+     * Content comes from the local object cache. A single byte range is answered with 206; several
+     * ranges, or an If-Range that no longer matches, get the whole object. Conditional requests are
+     * answered from the photo's content hash and upload time before the object is opened.
+     */
+    @GetMapping("/photos/{id}/content")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> getPhotoContent(@PathVariable Long id,
+                                                                 @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                                                                 @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+                                                                 WebRequest webRequest) {
+        PhotoContent photo;
+        try {
+            photo = photoService.findPhotoContent(id);
+        } catch (Exception e) {
+            logger.error("Error finding photo {}: {}", id, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        if (photo == null) {
+            return ResponseEntity.notFound().build();
+        }
+        // Sets the ETag and Last-Modified headers, and the 304 or 412 status when it returns true.
+        // Checked before opening, so revalidating an uncached photo costs no S3 GET.
+        if (webRequest.checkNotModified(photo.getETag(), photo.getLastModified().toEpochMilli())) {
+            return null;
+        }
+
+        ObjectContent content;
+        try {
+            content = photoService.openPhotoContent(photo);
+        } catch (NoSuchKeyException e) {
+            logger.warn("Object of photo {} is missing from S3", id);
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            logger.error("Error opening content of photo {}: {}", id, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+
+        ObjectFile file = content.getFile();
+        long size = file.getSize();
+        long[] requested = range != null && (ifRange == null || ifRange.equals(photo.getETag()))
+                ? singleRange(range, size)
+                : null;
+        if (requested != null && (requested[0] >= size || requested[0] > requested[1])) {
+            closeQuietly(content);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .build();
+        }
+        boolean partial = requested != null;
+        long start = partial ? requested[0] : 0;
+        long end = partial ? requested[1] : size - 1;
+
+        long length = end - start + 1;
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .contentType(MediaType.parseMediaType(file.getContentType() != null ? file.getContentType() : "application/octet-stream"))
+                .contentLength(length)
+                // The object behind a photo id never changes
+                .cacheControl(CacheControl.maxAge(contentMaxAge).cachePublic().immutable());
+        if (partial) {
+            response.header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        }
+        return response.body(outputStream -> {
+            try (ObjectContent opened = content) {
+                opened.transferTo(start, length, outputStream);
+            }
+        });
+    }
+
+    /**
+     * First and last byte of a Range header with a single range, or null when the header should be
+     * ignored: it is malformed, or asks for several ranges, which are sent as the whole object
+     */
+    private static long[] singleRange(String range, long size) {
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            if (ranges.size() != 1) {
+                return null;
+            }
+            return new long[] {ranges.get(0).getRangeStart(size), ranges.get(0).getRangeEnd(size)};
+        } catch (IllegalArgumentException e) {
+            logger.debug("Ignoring Range header {}: {}", range, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void closeQuietly(ObjectContent content) {
+        try {
+            content.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close cached object: {}", e.getMessage());
+        }
+    }
+
     /**
      * Delete a photo
      */
@@ -182,6 +607,28 @@ public class PhotoController {
         }
     }
 
+    /**
+     * REST API endpoint to delete many photos at once.
+     * Body: {"ids": [1, 2, 3]}. Ids that could not be deleted are listed with a reason.
+     */
+    @PostMapping("/api/photos/bulk-delete")
+    @ResponseBody
+    public ResponseEntity<BulkDeleteResult> bulkDeletePhotosApi(@RequestBody BulkDeleteRequest request) {
+        if (request == null || request.getIds() == null || request.getIds().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        BulkDeleteResult result = photoService.deletePhotos(request.getIds());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Listings embed presigned URLs, so they are private to the client and only reused within their lifetime
+     */
+    private CacheControl listingCacheControl() {
+        return CacheControl.maxAge(photoService.getListingMaxAge()).cachePrivate().mustRevalidate();
+    }
+
     /**
      * Health check endpoint
      */
@@ -0,0 +1,14 @@
+package com.baaki.ecsapp.dto;
+
+import java.util.List;
+
+/**
+ * DTO for bulk delete requests
+ */
+public class BulkDeleteRequest {
+    private List<Long> ids;
+
+    // Getters and setters
+    public List<Long> getIds() { return ids; }
+    public void setIds(List<Long> ids) { this.ids = ids; }
+}
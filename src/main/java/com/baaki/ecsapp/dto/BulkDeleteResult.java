@@ -0,0 +1,33 @@
+package com.baaki.ecsapp.dto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DTO for bulk delete results: the ids that were removed and the reason each other id was not
+ */
+public class BulkDeleteResult {
+    private final List<Long> deleted = new ArrayList<>();
+    private final Map<Long, String> failed = new LinkedHashMap<>();
+
+    public static BulkDeleteResult rejected(List<Long> ids, String reason) {
+        BulkDeleteResult result = new BulkDeleteResult();
+        ids.forEach(id -> result.addFailure(id, reason));
+        return result;
+    }
+
+    public void addDeleted(Long id) {
+        deleted.add(id);
+    }
+
+    public void addFailure(Long id, String reason) {
+        failed.put(id, reason);
+    }
+
+    // Getters
+    public List<Long> getDeleted() { return deleted; }
+    public Map<Long, String> getFailed() { return failed; }
+    public boolean isSuccess() { return failed.isEmpty(); }
+}
@@ -0,0 +1,22 @@
+package com.baaki.ecsapp.dto;
+
+/**
+ * DTO for completing a direct upload once the browser's PUT to S3 has succeeded
+ */
+public class DirectUploadCompletion {
+    // Optional; absent means the default bucket, as issued before multi-bucket support
+    private String bucket;
+    private String s3Key;
+    private String filename;
+    private String description;
+
+    // Getters and setters
+    public String getBucket() { return bucket; }
+    public void setBucket(String bucket) { this.bucket = bucket; }
+    public String getS3Key() { return s3Key; }
+    public void setS3Key(String s3Key) { this.s3Key = s3Key; }
+    public String getFilename() { return filename; }
+    public void setFilename(String filename) { this.filename = filename; }
+    public String getDescription() { return description; }
+    public void setDescription(String description) { this.description = description; }
+}
@@ -0,0 +1,22 @@
+package com.baaki.ecsapp.dto;
+
+/**
+ * DTO for requesting a presigned URL to upload a photo straight to S3.
+ * sha256 is the optional hex SHA-256 of the file; when given, S3 verifies the body against it.
+ */
+public class DirectUploadRequest {
+    private String filename;
+    private String contentType;
+    private long size;
+    private String sha256;
+
+    // Getters and setters
+    public String getFilename() { return filename; }
+    public void setFilename(String filename) { this.filename = filename; }
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    public String getSha256() { return sha256; }
+    public void setSha256(String sha256) { this.sha256 = sha256; }
+}
@@ -0,0 +1,35 @@
+package com.baaki.ecsapp.dto;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * DTO for a presigned direct upload: send the file with the given method, URL and headers,
+ * then report the bucket and key to /api/upload/direct/complete
+ */
+public class DirectUploadTicket {
+    private final String bucket;
+    private final String s3Key;
+    private final String uploadUrl;
+    private final String method;
+    private final Map<String, String> headers;
+    private final Instant expiresAt;
+
+    public DirectUploadTicket(String bucket, String s3Key, String uploadUrl, String method,
+                              Map<String, String> headers, Instant expiresAt) {
+        this.bucket = bucket;
+        this.s3Key = s3Key;
+        this.uploadUrl = uploadUrl;
+        this.method = method;
+        this.headers = headers;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters
+    public String getBucket() { return bucket; }
+    public String getS3Key() { return s3Key; }
+    public String getUploadUrl() { return uploadUrl; }
+    public String getMethod() { return method; }
+    public Map<String, String> getHeaders() { return headers; }
+    public Instant getExpiresAt() { return expiresAt; }
+}
@@ -0,0 +1,21 @@
+package com.baaki.ecsapp.dto;
+
+/**
+ * Version stamp of the photo listing: the number of committed writes to it (see ListingCounter).
+ * Unlike an aggregate over the rows, it cannot repeat after a delete and an insert cancel out.
+ */
+public class ListingVersion {
+    private final long writes;
+
+    public ListingVersion(Long writes) {
+        this.writes = writes;
+    }
+
+    // Getters
+    public long getWrites() { return writes; }
+
+    @Override
+    public String toString() {
+        return String.valueOf(writes);
+    }
+}
@@ -0,0 +1,43 @@
+package com.baaki.ecsapp.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * A database row pointing at an S3 key, as read by the reconciliation job.
+ */
+public class ObjectReference {
+
+    /**
+     * The columns that hold S3 keys
+     */
+    public enum Source {
+        PHOTO, THUMBNAIL, PREVIEW, STORED_OBJECT, PENDING_DELETION
+    }
+
+    private final Source source;
+    // Null for rows written before buckets were recorded
+    private final String bucket;
+    private final String key;
+    private final String rowId;
+    private final LocalDateTime createdAt;
+
+    public ObjectReference(Source source, String bucket, String key, String rowId, LocalDateTime createdAt) {
+        this.source = source;
+        this.bucket = bucket;
+        this.key = key;
+        this.rowId = rowId;
+        this.createdAt = createdAt;
+    }
+
+    // Getters
+    public Source getSource() { return source; }
+    public String getBucket() { return bucket; }
+    public String getKey() { return key; }
+    public String getRowId() { return rowId; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+
+    @Override
+    public String toString() {
+        return source + " " + rowId + " -> " + key;
+    }
+}
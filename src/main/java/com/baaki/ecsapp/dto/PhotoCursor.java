@@ -0,0 +1,55 @@
+package com.baaki.ecsapp.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Keyset position in the gallery listing, ordered by (uploadedAt DESC, id DESC).
+ * Clients only ever see the opaque {@link #encode()} form.
+ */
+public class PhotoCursor {
+    private final LocalDateTime uploadedAt;
+    private final Long id;
+
+    public PhotoCursor(LocalDateTime uploadedAt, Long id) {
+        this.uploadedAt = uploadedAt;
+        this.id = id;
+    }
+
+    public static PhotoCursor after(PhotoSummary photo) {
+        return new PhotoCursor(photo.getUploadedAt(), photo.getId());
+    }
+
+    /**
+     * Encode as an opaque, URL-safe token
+     */
+    public String encode() {
+        String raw = uploadedAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a token produced by {@link #encode()}
+     */
+    public static PhotoCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid page cursor");
+            }
+            return new PhotoCursor(
+                    LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.valueOf(raw.substring(separator + 1))
+            );
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page cursor", e);
+        }
+    }
+
+    // Getters
+    public LocalDateTime getUploadedAt() { return uploadedAt; }
+    public Long getId() { return id; }
+}
@@ -0,0 +1,58 @@
+package com.baaki.ecsapp.dto;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Fields of the streamed photo listing that a client can select with ?fields=
+ */
+public enum PhotoField {
+    ID("id"),
+    FILENAME("filename"),
+    DESCRIPTION("description"),
+    CONTENT_TYPE("contentType"),
+    FILE_SIZE("fileSize"),
+    UPLOADED_AT("uploadedAt"),
+    URL("url"),
+    THUMBNAIL_URL("thumbnailUrl"),
+    PREVIEW_URL("previewUrl"),
+    WIDTH("width"),
+    HEIGHT("height"),
+    ORIENTATION("orientation");
+
+    private final String jsonName;
+
+    PhotoField(String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    /**
+     * Parse a comma-separated list of JSON field names; null or blank selects every field
+     *
+     * @throws IllegalArgumentException naming the first unknown field
+     */
+    public static Set<PhotoField> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return EnumSet.allOf(PhotoField.class);
+        }
+
+        Set<PhotoField> selected = EnumSet.noneOf(PhotoField.class);
+        for (String name : fields.split(",")) {
+            selected.add(fromJsonName(name.trim()));
+        }
+        return selected;
+    }
+
+    private static PhotoField fromJsonName(String name) {
+        for (PhotoField field : values()) {
+            if (field.jsonName.equals(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown field: " + name);
+    }
+}
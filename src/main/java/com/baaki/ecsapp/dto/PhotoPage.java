@@ -0,0 +1,21 @@
+package com.baaki.ecsapp.dto;
+
+import java.util.List;
+
+/**
+ * DTO for one keyset page of the photo listing
+ */
+public class PhotoPage {
+    private final List<PhotoWithPresignedUrl> photos;
+    private final String nextCursor;
+
+    public PhotoPage(List<PhotoWithPresignedUrl> photos, String nextCursor) {
+        this.photos = photos;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters
+    public List<PhotoWithPresignedUrl> getPhotos() { return photos; }
+    public String getNextCursor() { return nextCursor; }
+    public boolean isHasMore() { return nextCursor != null; }
+}
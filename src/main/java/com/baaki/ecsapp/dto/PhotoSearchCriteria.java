@@ -0,0 +1,27 @@
+package com.baaki.ecsapp.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for photo search filters; null fields do not restrict the result.
+ * from is inclusive and to is exclusive.
+ */
+public class PhotoSearchCriteria {
+    private final String text;
+    private final String contentType;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+
+    public PhotoSearchCriteria(String text, String contentType, LocalDateTime from, LocalDateTime to) {
+        this.text = text;
+        this.contentType = contentType;
+        this.from = from;
+        this.to = to;
+    }
+
+    // Getters
+    public String getText() { return text; }
+    public String getContentType() { return contentType; }
+    public LocalDateTime getFrom() { return from; }
+    public LocalDateTime getTo() { return to; }
+}
@@ -0,0 +1,58 @@
+package com.baaki.ecsapp.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a photo row used by listing queries.
+ * Populated through a JPQL constructor expression so Hibernate never hydrates
+ * or tracks a managed {@link com.baaki.ecsapp.model.Photo} entity.
+ */
+public class PhotoSummary {
+    private final Long id;
+    private final String filename;
+    private final String bucket;
+    private final String s3Key;
+    private final String description;
+    private final String contentType;
+    private final Long fileSize;
+    private final LocalDateTime uploadedAt;
+    private final String thumbnailS3Key;
+    private final String previewS3Key;
+    private final Integer width;
+    private final Integer height;
+    private final Integer orientation;
+
+    public PhotoSummary(Long id, String filename, String bucket, String s3Key, String description,
+                        String contentType, Long fileSize, LocalDateTime uploadedAt,
+                        String thumbnailS3Key, String previewS3Key,
+                        Integer width, Integer height, Integer orientation) {
+        this.id = id;
+        this.filename = filename;
+        this.bucket = bucket;
+        this.s3Key = s3Key;
+        this.description = description;
+        this.contentType = contentType;
+        this.fileSize = fileSize;
+        this.uploadedAt = uploadedAt;
+        this.thumbnailS3Key = thumbnailS3Key;
+        this.previewS3Key = previewS3Key;
+        this.width = width;
+        this.height = height;
+        this.orientation = orientation;
+    }
+
+    // Getters
+    public Long getId() { return id; }
+    public String getFilename() { return filename; }
+    public String getBucket() { return bucket; }
+    public String getS3Key() { return s3Key; }
+    public String getDescription() { return description; }
+    public String getContentType() { return contentType; }
+    public Long getFileSize() { return fileSize; }
+    public LocalDateTime getUploadedAt() { return uploadedAt; }
+    public String getThumbnailS3Key() { return thumbnailS3Key; }
+    public String getPreviewS3Key() { return previewS3Key; }
+    public Integer getWidth() { return width; }
+    public Integer getHeight() { return height; }
+    public Integer getOrientation() { return orientation; }
+}
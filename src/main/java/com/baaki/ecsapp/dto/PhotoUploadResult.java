@@ -7,6 +7,8 @@ public class PhotoUploadResult {
     private boolean success;
     private String message;
     private Long photoId;
+    private String filename;
+    private boolean busy;
 
     private PhotoUploadResult(boolean success, String message, Long photoId) {
         this.success = success;
@@ -22,8 +24,27 @@ public class PhotoUploadResult {
         return new PhotoUploadResult(false, message, null);
     }
 
+    /**
+     * The upload was turned away because the server had no capacity for it; retrying later can succeed
+     */
+    public static PhotoUploadResult busy() {
+        PhotoUploadResult result = new PhotoUploadResult(false, "The server is busy. Please try again shortly.", null);
+        result.busy = true;
+        return result;
+    }
+
+    /**
+     * Tag the result with the file it belongs to, for multi-file responses
+     */
+    public PhotoUploadResult forFile(String filename) {
+        this.filename = filename;
+        return this;
+    }
+
     // Getters
     public boolean isSuccess() { return success; }
     public String getMessage() { return message; }
     public Long getPhotoId() { return photoId; }
+    public String getFilename() { return filename; }
+    public boolean isBusy() { return busy; }
 }
@@ -14,6 +14,11 @@ public class PhotoWithPresignedUrl {
     private Long fileSize;
     private LocalDateTime uploadedAt;
     private String presignedUrl;
+    private String thumbnailUrl;
+    private String previewUrl;
+    private Integer width;
+    private Integer height;
+    private Integer orientation;
 
     public PhotoWithPresignedUrl(Photo photo, String presignedUrl) {
         this.id = photo.getId();
@@ -22,6 +27,22 @@ public class PhotoWithPresignedUrl {
         this.contentType = photo.getContentType();
         this.fileSize = photo.getFileSize();
         this.uploadedAt = photo.getUploadedAt();
+        this.width = photo.getWidth();
+        this.height = photo.getHeight();
+        this.orientation = photo.getOrientation();
+        this.presignedUrl = presignedUrl;
+    }
+
+    public PhotoWithPresignedUrl(PhotoSummary photo, String presignedUrl) {
+        this.id = photo.getId();
+        this.filename = photo.getFilename();
+        this.description = photo.getDescription();
+        this.contentType = photo.getContentType();
+        this.fileSize = photo.getFileSize();
+        this.uploadedAt = photo.getUploadedAt();
+        this.width = photo.getWidth();
+        this.height = photo.getHeight();
+        this.orientation = photo.getOrientation();
         this.presignedUrl = presignedUrl;
     }
 
@@ -47,6 +68,52 @@ public class PhotoWithPresignedUrl {
     public String getPresignedUrl() { return presignedUrl; }
     public void setPresignedUrl(String presignedUrl) { this.presignedUrl = presignedUrl; }
 
+    public String getThumbnailUrl() { return thumbnailUrl; }
+    public void setThumbnailUrl(String thumbnailUrl) { this.thumbnailUrl = thumbnailUrl; }
+
+    public String getPreviewUrl() { return previewUrl; }
+    public void setPreviewUrl(String previewUrl) { this.previewUrl = previewUrl; }
+
+    public Integer getWidth() { return width; }
+    public void setWidth(Integer width) { this.width = width; }
+
+    public Integer getHeight() { return height; }
+    public void setHeight(Integer height) { this.height = height; }
+
+    public Integer getOrientation() { return orientation; }
+    public void setOrientation(Integer orientation) { this.orientation = orientation; }
+
+    /**
+     * Width as the browser displays the image, which applies the EXIF orientation; null when unknown
+     */
+    public Integer getDisplayWidth() {
+        return isRotated() ? height : width;
+    }
+
+    public Integer getDisplayHeight() {
+        return isRotated() ? width : height;
+    }
+
+    // Orientations 5 to 8 turn the image by 90 degrees
+    private boolean isRotated() {
+        return orientation != null && orientation >= 5;
+    }
+
+    /**
+     * Best URL for a gallery tile: the preview rendition when available, otherwise the original
+     */
+    public String getTileUrl() {
+        return previewUrl != null ? previewUrl : presignedUrl;
+    }
+
+    /**
+     * srcset for the gallery tile, or null when no renditions have been generated yet
+     */
+    public String getSrcset() {
+        if (thumbnailUrl == null || previewUrl == null) return null;
+        return thumbnailUrl + " 200w, " + previewUrl + " 800w";
+    }
+
     /**
      * Format file size for display
      */
@@ -0,0 +1,60 @@
+package com.baaki.ecsapp.dto;
+
+import com.baaki.ecsapp.model.UploadJobRecord;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * DTO reporting an asynchronous upload from staging through S3 and the metadata save,
+ * as of the moment its row was read.
+ */
+public class UploadJob {
+
+    private final String jobId;
+    private final String filename;
+    private final long totalBytes;
+    private final Instant createdAt;
+    private final UploadJobRecord.State state;
+    private final String message;
+    private final Long photoId;
+    private final long bytesUploaded;
+    private final Instant updatedAt;
+
+    public UploadJob(UploadJobRecord record) {
+        this.jobId = record.getJobId();
+        this.filename = record.getFilename();
+        this.totalBytes = record.getTotalBytes();
+        this.createdAt = toInstant(record.getCreatedAt());
+        this.state = record.getState();
+        this.message = record.getMessage();
+        this.photoId = record.getPhotoId();
+        this.bytesUploaded = record.getBytesUploaded();
+        this.updatedAt = toInstant(record.getUpdatedAt());
+    }
+
+    private static Instant toInstant(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant();
+    }
+
+    // Getters
+    public String getJobId() { return jobId; }
+    public String getFilename() { return filename; }
+    public long getTotalBytes() { return totalBytes; }
+    public Instant getCreatedAt() { return createdAt; }
+    public UploadJobRecord.State getState() { return state; }
+    public String getMessage() { return message; }
+    public Long getPhotoId() { return photoId; }
+    public long getBytesUploaded() { return bytesUploaded; }
+    public Instant getUpdatedAt() { return updatedAt; }
+
+    public boolean isDone() {
+        return state == UploadJobRecord.State.COMPLETED || state == UploadJobRecord.State.FAILED;
+    }
+
+    public int getProgressPercent() {
+        if (totalBytes <= 0) return isDone() ? 100 : 0;
+        return (int) Math.min(100, bytesUploaded * 100 / totalBytes);
+    }
+}
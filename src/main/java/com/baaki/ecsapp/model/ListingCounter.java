@@ -0,0 +1,40 @@
+package com.baaki.ecsapp.model;
+
+import jakarta.persistence.*;
+
+/**
+ * Single-row write counter for the photo listing. Every transaction that inserts or deletes photos, or
+ * records their renditions, increments it before committing, so the listing's version stamp changes
+ * exactly when the listing does, on every instance and every replica.
+ */
+@Entity
+@Table(name = "photo_listing_counter")
+public class ListingCounter {
+
+    @Id
+    private Integer id;
+
+    @Column(nullable = false)
+    private Long writes;
+
+    // Constructors
+    public ListingCounter() {
+    }
+
+    // Getters and Setters
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public Long getWrites() {
+        return writes;
+    }
+
+    public void setWrites(Long writes) {
+        this.writes = writes;
+    }
+}
@@ -0,0 +1,98 @@
+package com.baaki.ecsapp.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * An S3 object waiting to be deleted. Rows are written in the same transaction that removes the
+ * last reference to the object and are removed once S3 confirms the delete.
+ */
+@Entity
+@Table(name = "s3_deletion_outbox", indexes = {
+        // Backs the worker's claim query
+        @Index(name = "idx_s3_deletion_outbox_next_attempt", columnList = "nextAttemptAt")
+})
+public class PendingS3Deletion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "s3_deletion_outbox_seq")
+    @SequenceGenerator(name = "s3_deletion_outbox_seq", sequenceName = "s3_deletion_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false, length = 63)
+    private String bucket;
+
+    @Column(nullable = false)
+    private String s3Key;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    // Not claimable before this time; pushed forward while a worker holds the row and after failures
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(nullable = false)
+    private Integer attempts;
+
+    // Constructors
+    public PendingS3Deletion() {
+    }
+
+    public PendingS3Deletion(String bucket, String s3Key) {
+        this.bucket = bucket;
+        this.s3Key = s3Key;
+        this.createdAt = LocalDateTime.now();
+        this.nextAttemptAt = this.createdAt;
+        this.attempts = 0;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(String bucket) {
+        this.bucket = bucket;
+    }
+
+    public String getS3Key() {
+        return s3Key;
+    }
+
+    public void setS3Key(String s3Key) {
+        this.s3Key = s3Key;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+}
@@ -1,19 +1,49 @@
 package com.baaki.ecsapp.model;
 
+import com.baaki.ecsapp.dto.PhotoSummary;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "photos")
+// Maps native listing queries such as the photo search onto the same projection JPQL listings use
+@SqlResultSetMapping(name = "PhotoSummary", classes = @ConstructorResult(
+        targetClass = PhotoSummary.class,
+        columns = {
+                @ColumnResult(name = "id", type = Long.class),
+                @ColumnResult(name = "filename"),
+                @ColumnResult(name = "bucket"),
+                @ColumnResult(name = "s3key"),
+                @ColumnResult(name = "description"),
+                @ColumnResult(name = "content_type"),
+                @ColumnResult(name = "file_size", type = Long.class),
+                @ColumnResult(name = "uploaded_at", type = LocalDateTime.class),
+                @ColumnResult(name = "thumbnails3key"),
+                @ColumnResult(name = "previews3key"),
+                @ColumnResult(name = "width", type = Integer.class),
+                @ColumnResult(name = "height", type = Integer.class),
+                @ColumnResult(name = "orientation", type = Integer.class)
+        }))
+@Table(name = "photos", indexes = {
+        // Backs keyset pagination on (uploadedAt DESC, id DESC)
+        @Index(name = "idx_photos_uploaded_at_id", columnList = "uploadedAt DESC, id DESC"),
+        @Index(name = "idx_photos_content_hash", columnList = "contentHash"),
+        @Index(name = "idx_photos_s3_key", columnList = "s3Key")
+})
 public class Photo {
 
+    // Pooled sequence ids let Hibernate batch inserts; IDENTITY forces one round trip per row
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "photos_seq")
+    @SequenceGenerator(name = "photos_seq", sequenceName = "photos_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
     private String filename;
 
+    // Null for photos stored before multi-bucket support, which live in app.s3.bucket-name
+    @Column(length = 63)
+    private String bucket;
+
     @Column(nullable = false)
     private String s3Key;
 
@@ -29,6 +59,27 @@ public class Photo {
     @Column(nullable = false)
     private LocalDateTime uploadedAt;
 
+    // Downscaled renditions, filled in by the background rendition stage; null until generated
+    private String thumbnailS3Key;
+
+    private String previewS3Key;
+
+    // SHA-256 of the content; photos with equal hashes share one StoredObject. Null for legacy uploads.
+    @Column(length = 64)
+    private String contentHash;
+
+    // As stored, read from the file header at upload; null for legacy uploads and unparsed headers
+    private Integer width;
+
+    private Integer height;
+
+    // EXIF orientation, 1 to 8; 5 to 8 are displayed rotated, with width and height swapped
+    private Integer orientation;
+
+    // Key a direct upload was sent to. Differs from s3Key when the content was deduplicated onto an existing
+    // object and the upload deleted, and still identifies the upload then. Unique; null for other uploads.
+    private String uploadS3Key;
+
     // Constructors
     public Photo() {
         this.uploadedAt = LocalDateTime.now();
@@ -60,6 +111,14 @@ public class Photo {
         this.filename = filename;
     }
 
+    public String getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(String bucket) {
+        this.bucket = bucket;
+    }
+
     public String getS3Key() {
         return s3Key;
     }
@@ -99,4 +158,60 @@ public class Photo {
     public void setUploadedAt(LocalDateTime uploadedAt) {
         this.uploadedAt = uploadedAt;
     }
-}
\ No newline at end of file
+
+    public String getThumbnailS3Key() {
+        return thumbnailS3Key;
+    }
+
+    public void setThumbnailS3Key(String thumbnailS3Key) {
+        this.thumbnailS3Key = thumbnailS3Key;
+    }
+
+    public String getPreviewS3Key() {
+        return previewS3Key;
+    }
+
+    public void setPreviewS3Key(String previewS3Key) {
+        this.previewS3Key = previewS3Key;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public Integer getOrientation() {
+        return orientation;
+    }
+
+    public void setOrientation(Integer orientation) {
+        this.orientation = orientation;
+    }
+
+    public String getUploadS3Key() {
+        return uploadS3Key;
+    }
+
+    public void setUploadS3Key(String uploadS3Key) {
+        this.uploadS3Key = uploadS3Key;
+    }
+}
@@ -0,0 +1,107 @@
+package com.baaki.ecsapp.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Progress of the S3 reconciliation of one bucket. Every key up to position has been compared, so an
+ * interrupted run resumes from there; a completed run leaves its totals until the next one starts.
+ */
+@Entity
+@Table(name = "s3_reconciliation_checkpoints")
+public class ReconciliationCheckpoint {
+
+    @Id
+    @Column(length = 63)
+    private String bucket;
+
+    // Start of the current or last run; the grace period is measured from here, also after a resume
+    private LocalDateTime startedAt;
+
+    private LocalDateTime completedAt;
+
+    // S3 allows keys of up to 1024 bytes
+    @Column(length = 1024)
+    private String position;
+
+    @Column(nullable = false)
+    private Long objectsScanned;
+
+    @Column(nullable = false)
+    private Long orphanedObjects;
+
+    @Column(nullable = false)
+    private Long danglingReferences;
+
+    // A run holds the bucket until this time, renewed with every page; an abandoned run can be taken over after it
+    private LocalDateTime leaseUntil;
+
+    // Constructors
+    public ReconciliationCheckpoint() {
+    }
+
+    // Getters and Setters
+    public String getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(String bucket) {
+        this.bucket = bucket;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public String getPosition() {
+        return position;
+    }
+
+    public void setPosition(String position) {
+        this.position = position;
+    }
+
+    public Long getObjectsScanned() {
+        return objectsScanned;
+    }
+
+    public void setObjectsScanned(Long objectsScanned) {
+        this.objectsScanned = objectsScanned;
+    }
+
+    public Long getOrphanedObjects() {
+        return orphanedObjects;
+    }
+
+    public void setOrphanedObjects(Long orphanedObjects) {
+        this.orphanedObjects = orphanedObjects;
+    }
+
+    public Long getDanglingReferences() {
+        return danglingReferences;
+    }
+
+    public void setDanglingReferences(Long danglingReferences) {
+        this.danglingReferences = danglingReferences;
+    }
+
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public void setLeaseUntil(LocalDateTime leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+}
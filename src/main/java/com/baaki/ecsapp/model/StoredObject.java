@@ -0,0 +1,88 @@
+package com.baaki.ecsapp.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One physical S3 object shared by every photo with the same content.
+ * The SHA-256 content hash is the primary key, so each distinct upload is stored exactly once.
+ */
+@Entity
+@Table(name = "stored_objects")
+public class StoredObject {
+
+    @Id
+    @Column(length = 64)
+    private String contentHash;
+
+    // Null for objects stored before multi-bucket support, which live in app.s3.bucket-name
+    @Column(length = 63)
+    private String bucket;
+
+    @Column(nullable = false)
+    private String s3Key;
+
+    @Column(nullable = false)
+    private Long fileSize;
+
+    // Number of photos pointing at this object; the object is deleted when it drops to zero
+    @Column(nullable = false)
+    private Integer referenceCount;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    // Constructors
+    public StoredObject() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(String bucket) {
+        this.bucket = bucket;
+    }
+
+    public String getS3Key() {
+        return s3Key;
+    }
+
+    public void setS3Key(String s3Key) {
+        this.s3Key = s3Key;
+    }
+
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public Integer getReferenceCount() {
+        return referenceCount;
+    }
+
+    public void setReferenceCount(Integer referenceCount) {
+        this.referenceCount = referenceCount;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,159 @@
+package com.baaki.ecsapp.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * An asynchronous upload. Stored in the database so a status poll can land on any task, not just the
+ * one whose staging directory holds the file.
+ */
+@Entity
+@Table(name = "upload_jobs", indexes = {
+        // Backs the sweep for expired leases and finished jobs past their retention
+        @Index(name = "idx_upload_jobs_state_updated_at", columnList = "state, updatedAt")
+})
+public class UploadJobRecord {
+
+    public enum State { QUEUED, UPLOADING, COMPLETED, FAILED }
+
+    @Id
+    @Column(length = 36)
+    private String jobId;
+
+    @Column(nullable = false)
+    private String filename;
+
+    @Column(nullable = false)
+    private Long totalBytes;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private State state;
+
+    private String message;
+
+    private Long photoId;
+
+    @Column(nullable = false)
+    private Long bytesUploaded;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    // The task holding the staged file; only it can run the job
+    @Column(nullable = false, length = 36)
+    private String owner;
+
+    // The owner renews this while the job is unfinished; once it runs out the owner is gone and the job is failed
+    @Column(nullable = false)
+    private LocalDateTime leaseUntil;
+
+    // Constructors
+    public UploadJobRecord() {
+    }
+
+    public UploadJobRecord(String jobId, String filename, long totalBytes, String owner, LocalDateTime leaseUntil) {
+        this.jobId = jobId;
+        this.filename = filename;
+        this.totalBytes = totalBytes;
+        this.state = State.QUEUED;
+        this.message = "Upload queued";
+        this.bytesUploaded = 0L;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
+        this.owner = owner;
+        this.leaseUntil = leaseUntil;
+    }
+
+    // Getters and Setters
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public Long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public void setTotalBytes(Long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Long getPhotoId() {
+        return photoId;
+    }
+
+    public void setPhotoId(Long photoId) {
+        this.photoId = photoId;
+    }
+
+    public Long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    public void setBytesUploaded(Long bytesUploaded) {
+        this.bytesUploaded = bytesUploaded;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public void setLeaseUntil(LocalDateTime leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+}
@@ -0,0 +1,30 @@
+package com.baaki.ecsapp.repository;
+
+import com.baaki.ecsapp.dto.ListingVersion;
+import com.baaki.ecsapp.model.ListingCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ListingCounterRepository extends JpaRepository<ListingCounter, Integer> {
+
+    // Concurrent first starts of several instances create the row once
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO photo_listing_counter (id, writes) VALUES (1, 0) ON CONFLICT DO NOTHING",
+            nativeQuery = true)
+    int insertIfAbsent();
+
+    // Joins the caller's write transaction. Call it last there: the row stays locked until commit.
+    @Modifying
+    @Transactional
+    @Query("UPDATE ListingCounter c SET c.writes = c.writes + 1 WHERE c.id = 1")
+    int increment();
+
+    // Version stamp for conditional GETs of the listing; a primary key lookup
+    @Query("SELECT new com.baaki.ecsapp.dto.ListingVersion(c.writes) FROM ListingCounter c WHERE c.id = 1")
+    ListingVersion findListingVersion();
+}
@@ -0,0 +1,89 @@
+package com.baaki.ecsapp.repository;
+
+import com.baaki.ecsapp.dto.ObjectReference;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.query.NativeQuery;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages through the S3 keys held by each referencing column, in the order S3 lists keys.
+ * PostgreSQL only: COLLATE "C" compares the UTF-8 bytes, as S3 does, where the database's default
+ * collation would not. Each column has a matching (key COLLATE "C", row id) index in
+ * db/postgresql/schema.sql, so every page is one short index range scan, however far into the
+ * keys it is. Rows of every bucket are returned: a bucket predicate the planner cannot estimate
+ * makes it sort the whole remaining range on every page instead of walking the index.
+ */
+@Repository
+public class ObjectReferenceRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * The next references of one column, after the given key, or after the given key and row id when
+     * afterRowId is set. Read-only, so pages come from a replica when one is configured; the reconciliation grace period
+     * is far longer than any replica lag.
+     */
+    @Transactional(readOnly = true)
+    @SuppressWarnings("unchecked")
+    public List<ObjectReference> findAfter(ObjectReference.Source source, String afterKey, String afterRowId,
+                                           int limit) {
+        Column column = Column.of(source);
+        String key = column.key + " COLLATE \"C\"";
+        String sql = "SELECT bucket, " + column.key + " AS object_key, CAST(" + column.rowId + " AS VARCHAR) AS row_id, " +
+                column.createdAt + " AS created_at FROM " + column.table +
+                " WHERE " + column.key + " IS NOT NULL AND " +
+                (afterRowId == null ? key + " > :afterKey" : "(" + key + ", " + column.rowId + ") > (:afterKey, :afterRowId)") +
+                " ORDER BY " + key + ", " + column.rowId + " LIMIT :limit";
+
+        NativeQuery<Object[]> query = entityManager.createNativeQuery(sql).unwrap(NativeQuery.class)
+                .addScalar("bucket", String.class)
+                .addScalar("object_key", String.class)
+                .addScalar("row_id", String.class)
+                .addScalar("created_at", LocalDateTime.class);
+        query.setParameter("afterKey", afterKey);
+        if (afterRowId != null) {
+            query.setParameter("afterRowId", column.numericRowId ? (Object) Long.valueOf(afterRowId) : afterRowId);
+        }
+        query.setParameter("limit", limit);
+
+        List<ObjectReference> references = new ArrayList<>();
+        for (Object[] row : query.getResultList()) {
+            references.add(new ObjectReference(source, (String) row[0], (String) row[1], (String) row[2],
+                    (LocalDateTime) row[3]));
+        }
+        return references;
+    }
+
+    private enum Column {
+        PHOTO("photos", "s3key", "id", true, "uploaded_at"),
+        THUMBNAIL("photos", "thumbnails3key", "id", true, "uploaded_at"),
+        PREVIEW("photos", "previews3key", "id", true, "uploaded_at"),
+        STORED_OBJECT("stored_objects", "s3key", "content_hash", false, "created_at"),
+        PENDING_DELETION("s3_deletion_outbox", "s3key", "id", true, "created_at");
+
+        private final String table;
+        private final String key;
+        private final String rowId;
+        private final boolean numericRowId;
+        private final String createdAt;
+
+        Column(String table, String key, String rowId, boolean numericRowId, String createdAt) {
+            this.table = table;
+            this.key = key;
+            this.rowId = rowId;
+            this.numericRowId = numericRowId;
+            this.createdAt = createdAt;
+        }
+
+        static Column of(ObjectReference.Source source) {
+            return valueOf(source.name());
+        }
+    }
+}
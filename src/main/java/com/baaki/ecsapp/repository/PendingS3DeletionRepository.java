@@ -0,0 +1,36 @@
+package com.baaki.ecsapp.repository;
+
+import com.baaki.ecsapp.model.PendingS3Deletion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Claiming uses SELECT ... FOR UPDATE SKIP LOCKED, so several instances can drain the outbox at once
+ * without handing the same row to two workers or blocking on each other.
+ */
+@Repository
+public interface PendingS3DeletionRepository extends JpaRepository<PendingS3Deletion, Long> {
+
+    // Due rows, locked for the caller's transaction; rows another worker has locked are skipped, not waited for
+    @Query(value = "SELECT * FROM s3_deletion_outbox WHERE next_attempt_at <= :now " +
+            "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<PendingS3Deletion> lockDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    // Lease claimed rows, so they stay unclaimable while their S3 delete runs outside any transaction
+    @Modifying
+    @Query("UPDATE PendingS3Deletion d SET d.nextAttemptAt = :until WHERE d.id IN :ids")
+    int postpone(@Param("ids") Collection<Long> ids, @Param("until") LocalDateTime until);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PendingS3Deletion d SET d.attempts = d.attempts + 1, d.nextAttemptAt = :retryAt WHERE d.id IN :ids")
+    int recordFailure(@Param("ids") Collection<Long> ids, @Param("retryAt") LocalDateTime retryAt);
+}
@@ -1,19 +1,70 @@
 package com.baaki.ecsapp.repository;
 
+import com.baaki.ecsapp.dto.PhotoSummary;
 import com.baaki.ecsapp.model.Photo;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface PhotoRepository extends JpaRepository<Photo, Long> {
+public interface PhotoRepository extends JpaRepository<Photo, Long>, PhotoSearchRepository {
 
-    // Find all photos ordered by upload date (newest first)
-    @Query("SELECT p FROM Photo p ORDER BY p.uploadedAt DESC")
-    List<Photo> findAllOrderByUploadedAtDesc();
+    // First keyset page of the listing, projected without entity hydration. Read-only so that, called
+    // without a surrounding transaction, it still goes to a read replica when one is configured.
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.baaki.ecsapp.dto.PhotoSummary(p.id, p.filename, p.bucket, p.s3Key, p.description, " +
+            "p.contentType, p.fileSize, p.uploadedAt, p.thumbnailS3Key, p.previewS3Key, " +
+            "p.width, p.height, p.orientation) " +
+            "FROM Photo p ORDER BY p.uploadedAt DESC, p.id DESC")
+    List<PhotoSummary> findFirstPage(Limit limit);
 
-    // Find photos by content type (e.g., for filtering by image type)
-    List<Photo> findByContentTypeContaining(String contentType);
+    // Next keyset page strictly after the (uploadedAt, id) cursor; read-only like findFirstPage
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.baaki.ecsapp.dto.PhotoSummary(p.id, p.filename, p.bucket, p.s3Key, p.description, " +
+            "p.contentType, p.fileSize, p.uploadedAt, p.thumbnailS3Key, p.previewS3Key, " +
+            "p.width, p.height, p.orientation) " +
+            "FROM Photo p " +
+            "WHERE p.uploadedAt < :uploadedAt OR (p.uploadedAt = :uploadedAt AND p.id < :id) " +
+            "ORDER BY p.uploadedAt DESC, p.id DESC")
+    List<PhotoSummary> findPageAfter(@Param("uploadedAt") LocalDateTime uploadedAt,
+                                     @Param("id") Long id,
+                                     Limit limit);
+
+    // Record generated rendition keys on every photo sharing the object; returns 0 if none is left
+    @Modifying
+    @Transactional
+    @Query("UPDATE Photo p SET p.thumbnailS3Key = :thumbnailS3Key, p.previewS3Key = :previewS3Key WHERE p.s3Key = :s3Key")
+    int updateRenditionKeys(@Param("s3Key") String s3Key,
+                            @Param("thumbnailS3Key") String thumbnailS3Key,
+                            @Param("previewS3Key") String previewS3Key);
+
+    // A photo with the same content whose renditions are already generated
+    Optional<Photo> findFirstByContentHashAndThumbnailS3KeyIsNotNull(String contentHash);
+
+    // A photo about to be deleted, row-locked so a concurrent delete of it waits and then finds it gone
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Photo p WHERE p.id = :id")
+    Optional<Photo> findByIdForUpdate(@Param("id") Long id);
+
+    // Photos about to be deleted, row-locked like findByIdForUpdate; ids deleted meanwhile are not returned
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Photo p WHERE p.id IN :ids")
+    List<Photo> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    // Whether a direct upload to this key was completed already. A deduplicated one points at the existing
+    // object, so only its uploadS3Key still names the upload; photos from before that column only have s3Key.
+    boolean existsByS3KeyOrUploadS3Key(String s3Key, String uploadS3Key);
+
+    boolean existsByUploadS3Key(String uploadS3Key);
 }
\ No newline at end of file
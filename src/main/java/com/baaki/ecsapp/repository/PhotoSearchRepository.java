@@ -0,0 +1,19 @@
+package com.baaki.ecsapp.repository;
+
+import com.baaki.ecsapp.dto.PhotoCursor;
+import com.baaki.ecsapp.dto.PhotoSearchCriteria;
+import com.baaki.ecsapp.dto.PhotoSummary;
+
+import java.util.List;
+
+/**
+ * Filtered photo search, mixed into {@link PhotoRepository}
+ */
+public interface PhotoSearchRepository {
+
+    /**
+     * One keyset page of photos matching every given criterion, newest first, starting strictly
+     * after the cursor when one is given. PostgreSQL only: text is matched with full-text search.
+     */
+    List<PhotoSummary> search(PhotoSearchCriteria criteria, PhotoCursor after, int limit);
+}
@@ -0,0 +1,65 @@
+package com.baaki.ecsapp.repository;
+
+import com.baaki.ecsapp.dto.PhotoCursor;
+import com.baaki.ecsapp.dto.PhotoSearchCriteria;
+import com.baaki.ecsapp.dto.PhotoSummary;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the search SQL from the criteria that are present. Leaving absent filters out of the
+ * statement, rather than writing (:param IS NULL OR ...), keeps every predicate index-friendly
+ * under PostgreSQL's generic plans for prepared statements.
+ */
+class PhotoSearchRepositoryImpl implements PhotoSearchRepository {
+
+    // Must match the expression of idx_photos_search in db/postgresql/schema.sql, or the index is not used
+    static final String SEARCH_DOCUMENT = "to_tsvector('english', filename || ' ' || coalesce(description, ''))";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<PhotoSummary> search(PhotoSearchCriteria criteria, PhotoCursor after, int limit) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, filename, bucket, s3key, description, content_type, file_size, uploaded_at, " +
+                "thumbnails3key, previews3key, width, height, orientation FROM photos WHERE TRUE");
+        Map<String, Object> parameters = new HashMap<>();
+
+        if (criteria.getText() != null) {
+            // websearch_to_tsquery accepts free user input: quoted phrases, OR and -exclusions
+            sql.append(" AND ").append(SEARCH_DOCUMENT).append(" @@ websearch_to_tsquery('english', :text)");
+            parameters.put("text", criteria.getText());
+        }
+        if (criteria.getContentType() != null) {
+            sql.append(" AND content_type = :contentType");
+            parameters.put("contentType", criteria.getContentType());
+        }
+        if (criteria.getFrom() != null) {
+            sql.append(" AND uploaded_at >= :from");
+            parameters.put("from", criteria.getFrom());
+        }
+        if (criteria.getTo() != null) {
+            sql.append(" AND uploaded_at < :to");
+            parameters.put("to", criteria.getTo());
+        }
+        if (after != null) {
+            // Row comparison walks the (uploaded_at DESC, id DESC) indexes directly
+            sql.append(" AND (uploaded_at, id) < (:afterUploadedAt, :afterId)");
+            parameters.put("afterUploadedAt", after.getUploadedAt());
+            parameters.put("afterId", after.getId());
+        }
+        sql.append(" ORDER BY uploaded_at DESC, id DESC LIMIT :limit");
+        parameters.put("limit", limit);
+
+        Query query = entityManager.createNativeQuery(sql.toString(), "PhotoSummary");
+        parameters.forEach(query::setParameter);
+        return query.getResultList();
+    }
+}
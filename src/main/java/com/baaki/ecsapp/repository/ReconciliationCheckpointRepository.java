@@ -0,0 +1,42 @@
+package com.baaki.ecsapp.repository;
+
+import com.baaki.ecsapp.model.ReconciliationCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface ReconciliationCheckpointRepository extends JpaRepository<ReconciliationCheckpoint, String> {
+
+    // Read right after insertIfAbsent and acquireLease, so it must not go to a replica that lacks the row
+    @Override
+    @Transactional
+    Optional<ReconciliationCheckpoint> findById(String bucket);
+
+    // Concurrent first runs on several instances create the row once
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO s3_reconciliation_checkpoints " +
+            "(bucket, objects_scanned, orphaned_objects, dangling_references) VALUES (:bucket, 0, 0, 0) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("bucket") String bucket);
+
+    // Returns 1 for the one caller that gets the bucket while no other run holds it
+    @Modifying
+    @Transactional
+    @Query("UPDATE ReconciliationCheckpoint c SET c.leaseUntil = :until " +
+            "WHERE c.bucket = :bucket AND (c.leaseUntil IS NULL OR c.leaseUntil < :now)")
+    int acquireLease(@Param("bucket") String bucket, @Param("now") LocalDateTime now,
+                     @Param("until") LocalDateTime until);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ReconciliationCheckpoint c SET c.leaseUntil = NULL WHERE c.bucket = :bucket")
+    int releaseLease(@Param("bucket") String bucket);
+}
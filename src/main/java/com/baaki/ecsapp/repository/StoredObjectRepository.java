@@ -0,0 +1,54 @@
+package com.baaki.ecsapp.repository;
+
+import com.baaki.ecsapp.model.StoredObject;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+/**
+ * Reference counts are only ever changed with single atomic statements, so concurrent uploads
+ * and deletes of the same content never need an explicit lock.
+ */
+@Repository
+public interface StoredObjectRepository extends JpaRepository<StoredObject, String> {
+
+    // Read right after taking a reference, outside any caller transaction; read-write so it is never
+    // routed to a read replica that may not have the row yet
+    @Override
+    @Transactional
+    Optional<StoredObject> findById(String contentHash);
+
+    // Take a reference on existing content; returns 0 if nothing is stored under the hash
+    @Modifying
+    @Transactional
+    @Query("UPDATE StoredObject o SET o.referenceCount = o.referenceCount + 1 WHERE o.contentHash = :contentHash")
+    int incrementReferences(@Param("contentHash") String contentHash);
+
+    // Drop references; the row stays until deleteIfUnreferenced removes it
+    @Modifying
+    @Transactional
+    @Query("UPDATE StoredObject o SET o.referenceCount = o.referenceCount - :count WHERE o.contentHash = :contentHash")
+    int decrementReferences(@Param("contentHash") String contentHash, @Param("count") int count);
+
+    // Returns 1 only to the caller that removed the last reference
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM StoredObject o WHERE o.contentHash = :contentHash AND o.referenceCount <= 0")
+    int deleteIfUnreferenced(@Param("contentHash") String contentHash);
+
+    // Register new content with one reference; returns 0 if another upload registered it first
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO stored_objects (content_hash, bucket, s3key, file_size, reference_count, created_at) " +
+            "VALUES (:contentHash, :bucket, :s3Key, :fileSize, 1, CURRENT_TIMESTAMP) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("contentHash") String contentHash,
+                       @Param("bucket") String bucket,
+                       @Param("s3Key") String s3Key,
+                       @Param("fileSize") long fileSize);
+}
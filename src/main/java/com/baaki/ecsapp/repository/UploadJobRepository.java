@@ -0,0 +1,86 @@
+package com.baaki.ecsapp.repository;
+
+import com.baaki.ecsapp.model.UploadJobRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Jobs are updated with single statements from the worker running them, and swept by every task;
+ * the sweeps only touch rows whose state or lease already settles who may change them.
+ */
+@Repository
+public interface UploadJobRepository extends JpaRepository<UploadJobRecord, String> {
+
+    // Polled right after the job is accepted, often on another task; read-write so it is never routed
+    // to a read replica that may not have the row yet
+    @Override
+    @Transactional
+    Optional<UploadJobRecord> findById(String jobId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadJobRecord j SET j.state = com.baaki.ecsapp.model.UploadJobRecord.State.UPLOADING, " +
+            "j.message = :message, j.updatedAt = :now WHERE j.jobId = :jobId")
+    int markUploading(@Param("jobId") String jobId, @Param("message") String message, @Param("now") LocalDateTime now);
+
+    // Only while uploading, so a late write cannot roll back the count of a job that has just finished
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadJobRecord j SET j.bytesUploaded = :bytesUploaded, j.updatedAt = :now WHERE j.jobId = :jobId " +
+            "AND j.state = com.baaki.ecsapp.model.UploadJobRecord.State.UPLOADING")
+    int updateProgress(@Param("jobId") String jobId, @Param("bytesUploaded") long bytesUploaded,
+                       @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadJobRecord j SET j.state = com.baaki.ecsapp.model.UploadJobRecord.State.COMPLETED, " +
+            "j.photoId = :photoId, j.bytesUploaded = j.totalBytes, j.message = :message, j.updatedAt = :now " +
+            "WHERE j.jobId = :jobId")
+    int markCompleted(@Param("jobId") String jobId, @Param("photoId") Long photoId, @Param("message") String message,
+                      @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadJobRecord j SET j.state = com.baaki.ecsapp.model.UploadJobRecord.State.FAILED, " +
+            "j.message = :message, j.updatedAt = :now WHERE j.jobId = :jobId")
+    int markFailed(@Param("jobId") String jobId, @Param("message") String message, @Param("now") LocalDateTime now);
+
+    // Fail every unfinished job a task holds, when it shuts down without running them
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadJobRecord j SET j.state = com.baaki.ecsapp.model.UploadJobRecord.State.FAILED, " +
+            "j.message = :message, j.updatedAt = :now WHERE j.owner = :owner " +
+            "AND j.state IN (com.baaki.ecsapp.model.UploadJobRecord.State.QUEUED, " +
+            "com.baaki.ecsapp.model.UploadJobRecord.State.UPLOADING)")
+    int failUnfinished(@Param("owner") String owner, @Param("message") String message, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadJobRecord j SET j.leaseUntil = :until WHERE j.owner = :owner " +
+            "AND j.state IN (com.baaki.ecsapp.model.UploadJobRecord.State.QUEUED, " +
+            "com.baaki.ecsapp.model.UploadJobRecord.State.UPLOADING)")
+    int renewLeases(@Param("owner") String owner, @Param("until") LocalDateTime until);
+
+    // Fail unfinished jobs whose owner stopped renewing them, i.e. died without shutting down
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadJobRecord j SET j.state = com.baaki.ecsapp.model.UploadJobRecord.State.FAILED, " +
+            "j.message = :message, j.updatedAt = :now WHERE j.leaseUntil < :now " +
+            "AND j.state IN (com.baaki.ecsapp.model.UploadJobRecord.State.QUEUED, " +
+            "com.baaki.ecsapp.model.UploadJobRecord.State.UPLOADING)")
+    int failExpired(@Param("message") String message, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM UploadJobRecord j WHERE j.updatedAt < :cutoff " +
+            "AND j.state IN (com.baaki.ecsapp.model.UploadJobRecord.State.COMPLETED, " +
+            "com.baaki.ecsapp.model.UploadJobRecord.State.FAILED)")
+    int deleteFinishedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
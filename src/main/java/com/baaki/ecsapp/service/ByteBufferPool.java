@@ -0,0 +1,124 @@
+package com.baaki.ecsapp.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed set of reusable direct buffers.
+ * Total off-heap use is capped at bufferCount * bufferSize. Buffers are only handed out against a
+ * {@link Reservation}, and reservations never add up to more than the pool holds, so a holder always
+ * gets a buffer at once: a caller that cannot reserve is turned away instead of stalling the others.
+ */
+public class ByteBufferPool {
+
+    private final BlockingQueue<ByteBuffer> buffers;
+    private final Semaphore permits;
+    private final int bufferSize;
+
+    public ByteBufferPool(int bufferCount, int bufferSize) {
+        this.buffers = new ArrayBlockingQueue<>(bufferCount);
+        this.permits = new Semaphore(bufferCount);
+        this.bufferSize = bufferSize;
+        for (int i = 0; i < bufferCount; i++) {
+            buffers.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    /**
+     * Reserve one buffer, waiting up to the timeout for another caller to close its reservation
+     *
+     * @throws ExhaustedException if every buffer is still reserved after the timeout
+     */
+    public Reservation reserve(long timeout, TimeUnit unit) throws IOException {
+        try {
+            if (!permits.tryAcquire(timeout, unit)) {
+                throw new ExhaustedException();
+            }
+            return new Reservation();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an upload buffer", e);
+        }
+    }
+
+    /**
+     * Return a buffer obtained from {@link Reservation#acquire}. Safe to call from any thread.
+     */
+    public void release(ByteBuffer buffer) {
+        buffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getAvailable() {
+        return buffers.size();
+    }
+
+    public int getUnreserved() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * The right to hold a number of buffers at once, starting at one. Used by a single thread; the
+     * buffers it takes may be released from others. Close it once every buffer is back in the pool.
+     */
+    public final class Reservation implements AutoCloseable {
+
+        private int reserved = 1;
+        private boolean closed;
+
+        private Reservation() {
+        }
+
+        /**
+         * Reserve one more buffer if one is free right now, up to max in total
+         */
+        public boolean tryGrow(int max) {
+            if (reserved < max && permits.tryAcquire()) {
+                reserved++;
+                return true;
+            }
+            return false;
+        }
+
+        public int getReserved() {
+            return reserved;
+        }
+
+        /**
+         * Take a cleared buffer. The caller must hold fewer buffers than it reserved, which leaves one
+         * in the pool.
+         */
+        public ByteBuffer acquire() {
+            ByteBuffer buffer = buffers.poll();
+            if (buffer == null) {
+                throw new IllegalStateException("More upload buffers taken than reserved");
+            }
+            buffer.clear();
+            return buffer;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                permits.release(reserved);
+            }
+        }
+    }
+
+    /**
+     * Raised when every buffer is reserved; the caller should retry later
+     */
+    public static class ExhaustedException extends IOException {
+        public ExhaustedException() {
+            super("Every upload buffer is in use");
+        }
+    }
+}
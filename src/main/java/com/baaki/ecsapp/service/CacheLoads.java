@@ -0,0 +1,43 @@
+package com.baaki.ecsapp.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Single-flight loading for caches whose loaders block on I/O.
+ * Cache.get(key, loader) runs the loader inside ConcurrentHashMap.compute, which holds a monitor
+ * and pins a virtual thread's carrier for the whole JDBC or HTTP call. Here the loader runs on
+ * the calling thread outside any lock; concurrent callers for the same key wait on its future.
+ */
+final class CacheLoads {
+
+    private CacheLoads() {
+    }
+
+    static <K, V> V getOrLoad(AsyncCache<K, V> cache, K key, Function<K, V> loader) {
+        // getIfPresent records the hit or miss for the cache statistics
+        CompletableFuture<V> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached.join();
+        }
+
+        CompletableFuture<V> loading = new CompletableFuture<>();
+        CompletableFuture<V> existing = cache.asMap().putIfAbsent(key, loading);
+        if (existing != null) {
+            return existing.join();
+        }
+
+        try {
+            V value = loader.apply(key);
+            // A null value completes the future and the cache drops the entry, so it is retried
+            loading.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            cache.asMap().remove(key, loading);
+            loading.completeExceptionally(e);
+            throw e;
+        }
+    }
+}
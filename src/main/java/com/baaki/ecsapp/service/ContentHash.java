@@ -0,0 +1,51 @@
+package com.baaki.ecsapp.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 helpers for content deduplication
+ */
+public final class ContentHash {
+
+    private ContentHash() {
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Hash a stream to the end in fixed-size chunks; the stream is closed afterwards
+     */
+    public static String of(InputStream inputStream) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = inputStream) {
+            byte[] chunk = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                digest.update(chunk, 0, read);
+            }
+        }
+        return hex(digest);
+    }
+
+    /**
+     * Hex digest of everything read through the stream so far
+     */
+    public static String digestOf(DigestInputStream inputStream) {
+        return hex(inputStream.getMessageDigest());
+    }
+
+    private static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
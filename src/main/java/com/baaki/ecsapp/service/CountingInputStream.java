@@ -0,0 +1,83 @@
+package com.baaki.ecsapp.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Counts the bytes read through it and fails once a size limit is exceeded,
+ * so uploads of unknown length can be capped without buffering them first.
+ */
+public class CountingInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private final LongConsumer progressListener;
+    private long count;
+
+    public CountingInputStream(InputStream in, long maxBytes) {
+        this(in, maxBytes, null);
+    }
+
+    /**
+     * @param progressListener receives the running byte count after every read, may be null
+     */
+    public CountingInputStream(InputStream in, long maxBytes, LongConsumer progressListener) {
+        super(in);
+        this.maxBytes = maxBytes;
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            advance(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int read = super.read(bytes, offset, length);
+        if (read > 0) {
+            advance(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        advance(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    private void advance(long bytes) throws IOException {
+        count += bytes;
+        if (count > maxBytes) {
+            throw new SizeLimitExceededException(maxBytes);
+        }
+        if (progressListener != null) {
+            progressListener.accept(count);
+        }
+    }
+
+    /**
+     * Raised when the stream grows past its limit
+     */
+    public static class SizeLimitExceededException extends IOException {
+        public SizeLimitExceededException(long maxBytes) {
+            super("Upload exceeds the maximum size of " + maxBytes + " bytes");
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.baaki.ecsapp.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * The original layout, photos/&lt;uuid&gt;.ext. Every object shares one prefix, so S3's per-prefix
+ * request rate limits apply to the whole bucket at once.
+ */
+@Component
+@ConditionalOnProperty(name = "app.s3.key-strategy", havingValue = "flat")
+public class FlatKeyStrategy implements ObjectKeyStrategy {
+
+    private static final Pattern KEY =
+            Pattern.compile("photos/[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}[^/]*");
+
+    @Override
+    public String newKey(String originalFilename) {
+        return "photos/" + UUID.randomUUID() + ObjectKeyStrategy.fileExtension(originalFilename);
+    }
+
+    @Override
+    public boolean isGeneratedKey(String key) {
+        return key != null && KEY.matcher(key).matches();
+    }
+}
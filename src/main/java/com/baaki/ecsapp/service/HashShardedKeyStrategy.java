@@ -0,0 +1,65 @@
+package com.baaki.ecsapp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keys of the form &lt;shard&gt;/photos/&lt;uuid&gt;.ext, where the shard is the leading hex digits of a
+ * hash of the uuid. S3 scales request rates per key prefix, so uniformly spread leading characters
+ * let it split the load across partitions instead of throttling one hot photos/ prefix.
+ */
+@Component
+@ConditionalOnProperty(name = "app.s3.key-strategy", havingValue = "sharded", matchIfMissing = true)
+public class HashShardedKeyStrategy implements ObjectKeyStrategy {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashShardedKeyStrategy.class);
+
+    private static final Pattern KEY = Pattern.compile(
+            "([0-9a-f]+)/photos/([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})[^/]*");
+
+    // Hex digits in the shard prefix; 2 gives 256 prefixes
+    @Value("${app.s3.key.shard-prefix-length:2}")
+    private int prefixLength;
+
+    @PostConstruct
+    public void init() {
+        if (prefixLength < 1 || prefixLength > 8) {
+            throw new IllegalStateException("app.s3.key.shard-prefix-length must be between 1 and 8");
+        }
+        logger.info("Sharding new S3 keys over {} prefixes", 1L << (4 * prefixLength));
+    }
+
+    @Override
+    public String newKey(String originalFilename) {
+        String id = UUID.randomUUID().toString();
+        return shardOf(id) + "/photos/" + id + ObjectKeyStrategy.fileExtension(originalFilename);
+    }
+
+    @Override
+    public boolean isGeneratedKey(String key) {
+        if (key == null) {
+            return false;
+        }
+        Matcher matcher = KEY.matcher(key);
+        return matcher.matches() && matcher.group(1).equals(shardOf(matcher.group(2)));
+    }
+
+    private String shardOf(String id) {
+        // FNV-1a: cheap, stable across JVMs and releases, and well mixed in the low bits
+        int hash = 0x811c9dc5;
+        for (byte b : id.getBytes(StandardCharsets.US_ASCII)) {
+            hash = (hash ^ (b & 0xff)) * 0x01000193;
+        }
+        return HexFormat.of().toHexDigits(hash).substring(8 - prefixLength);
+    }
+}
@@ -0,0 +1,282 @@
+package com.baaki.ecsapp.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Format, dimensions and EXIF orientation of an image, read from the first bytes of the file without
+ * decoding any pixels. Supports the upload formats: JPEG, PNG, GIF and WebP. Only the head of the file is
+ * ever read, so the cost does not grow with the size of the image.
+ */
+public final class ImageHeader {
+
+    /**
+     * Most bytes read from the start of a file. JPEG dimensions follow the EXIF and ICC segments, which
+     * are usually a few KB but can reach 64 KB with an embedded thumbnail; a JPEG whose frame header
+     * lies beyond this is still recognised, only without dimensions.
+     */
+    public static final int MAX_HEADER_BYTES = 64 * 1024;
+
+    // Enough for every format but JPEGs with large metadata, which are read further in doubling steps
+    private static final int INITIAL_HEADER_BYTES = 4 * 1024;
+
+    // EXIF orientation for an image stored upright
+    public static final int NORMAL_ORIENTATION = 1;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    private final String contentType;
+    private final Integer width;
+    private final Integer height;
+    private final int orientation;
+
+    private ImageHeader(String contentType, Integer width, Integer height, int orientation) {
+        this.contentType = contentType;
+        this.width = width;
+        this.height = height;
+        this.orientation = orientation;
+    }
+
+    /**
+     * Read the head of a stream and parse it; the stream is closed afterwards.
+     * Returns null when the content is not a supported image format.
+     */
+    public static ImageHeader read(InputStream inputStream) throws IOException {
+        try (InputStream in = inputStream) {
+            byte[] head = readHead(in);
+            return parse(head, head.length);
+        }
+    }
+
+    /**
+     * Read as much of the head of a stream as parsing needs: a few KB, and at most MAX_HEADER_BYTES.
+     * The stream is left open, positioned after the returned bytes.
+     */
+    public static byte[] readHead(InputStream in) throws IOException {
+        byte[] head = in.readNBytes(INITIAL_HEADER_BYTES);
+        boolean ended = head.length < INITIAL_HEADER_BYTES;
+        while (!ended && head.length < MAX_HEADER_BYTES) {
+            ImageHeader header = parse(head, head.length);
+            if (header == null || header.width != null) {
+                break;
+            }
+            byte[] more = in.readNBytes(head.length);
+            ended = more.length < head.length;
+            byte[] grown = Arrays.copyOf(head, head.length + more.length);
+            System.arraycopy(more, 0, grown, head.length, more.length);
+            head = grown;
+        }
+        return head;
+    }
+
+    /**
+     * Parse the first length bytes of a file, or return null when they are not a supported image format
+     */
+    public static ImageHeader parse(byte[] head, int length) {
+        if (startsWith(head, length, PNG_SIGNATURE)) {
+            return parsePng(head, length);
+        }
+        if (length >= 3 && u8(head, 0) == 0xFF && u8(head, 1) == 0xD8 && u8(head, 2) == 0xFF) {
+            return parseJpeg(head, length);
+        }
+        if (startsWith(head, length, "GIF87a".getBytes(StandardCharsets.US_ASCII))
+                || startsWith(head, length, "GIF89a".getBytes(StandardCharsets.US_ASCII))) {
+            return length >= 10
+                    ? new ImageHeader("image/gif", u16le(head, 6), u16le(head, 8), NORMAL_ORIENTATION)
+                    : new ImageHeader("image/gif", null, null, NORMAL_ORIENTATION);
+        }
+        if (length >= 12 && fourCc(head, 0).equals("RIFF") && fourCc(head, 8).equals("WEBP")) {
+            return parseWebp(head, length);
+        }
+        return null;
+    }
+
+    private static ImageHeader parsePng(byte[] head, int length) {
+        // IHDR is always the first chunk
+        if (length >= 24 && fourCc(head, 12).equals("IHDR")) {
+            return new ImageHeader("image/png", u32be(head, 16), u32be(head, 20), NORMAL_ORIENTATION);
+        }
+        return new ImageHeader("image/png", null, null, NORMAL_ORIENTATION);
+    }
+
+    /**
+     * Walk the marker segments up to the frame header, picking up the orientation from an EXIF APP1
+     * segment on the way. Stops at the start of the compressed data.
+     */
+    private static ImageHeader parseJpeg(byte[] head, int length) {
+        int orientation = NORMAL_ORIENTATION;
+        int position = 2;
+        while (position + 4 <= length) {
+            if (u8(head, position) != 0xFF) {
+                break;
+            }
+            int marker = u8(head, position + 1);
+            if (marker == 0xFF) {
+                // Fill byte before a marker
+                position++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                // Standalone markers carry no length
+                position += 2;
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                break;
+            }
+            int segmentStart = position + 4;
+            int segmentEnd = position + 2 + u16be(head, position + 2);
+            if (isStartOfFrame(marker)) {
+                if (segmentStart + 5 <= length) {
+                    return new ImageHeader("image/jpeg", u16be(head, segmentStart + 3), u16be(head, segmentStart + 1),
+                            orientation);
+                }
+                break;
+            }
+            if (marker == 0xE1 && segmentEnd <= length && segmentStart + 6 <= segmentEnd
+                    && fourCc(head, segmentStart).equals("Exif") && head[segmentStart + 4] == 0 && head[segmentStart + 5] == 0) {
+                orientation = exifOrientation(head, segmentStart + 6, segmentEnd);
+            }
+            position = segmentEnd;
+        }
+        return new ImageHeader("image/jpeg", null, null, orientation);
+    }
+
+    // SOF0 to SOF15, except DHT (C4), JPG (C8) and DAC (CC), which share the range
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    /**
+     * Orientation tag of IFD0 in the TIFF structure between start and end, or normal when it is missing
+     * or out of range
+     */
+    private static int exifOrientation(byte[] head, int start, int end) {
+        if (start + 8 > end) {
+            return NORMAL_ORIENTATION;
+        }
+        boolean littleEndian;
+        if (head[start] == 'I' && head[start + 1] == 'I') {
+            littleEndian = true;
+        } else if (head[start] == 'M' && head[start + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return NORMAL_ORIENTATION;
+        }
+        long ifdOffset = tiffU32(head, start + 4, littleEndian);
+        if (ifdOffset < 8 || start + ifdOffset + 2 > end) {
+            return NORMAL_ORIENTATION;
+        }
+        int ifd = start + (int) ifdOffset;
+        int entries = tiffU16(head, ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (tiffU16(head, entry, littleEndian) == EXIF_ORIENTATION_TAG) {
+                int orientation = tiffU16(head, entry + 8, littleEndian);
+                return orientation >= 1 && orientation <= 8 ? orientation : NORMAL_ORIENTATION;
+            }
+        }
+        return NORMAL_ORIENTATION;
+    }
+
+    private static ImageHeader parseWebp(byte[] head, int length) {
+        String chunk = length >= 16 ? fourCc(head, 12) : "";
+        switch (chunk) {
+            case "VP8 ":
+                // Lossy: the key frame header follows a 3-byte frame tag and the 9D 01 2A start code
+                if (length >= 30 && u8(head, 23) == 0x9D && u8(head, 24) == 0x01 && u8(head, 25) == 0x2A) {
+                    return new ImageHeader("image/webp", u16le(head, 26) & 0x3FFF, u16le(head, 28) & 0x3FFF,
+                            NORMAL_ORIENTATION);
+                }
+                break;
+            case "VP8L":
+                // Lossless: two 14-bit fields, each storing the size minus one, after the 0x2F signature
+                if (length >= 25 && u8(head, 20) == 0x2F) {
+                    int bits = u8(head, 21) | u8(head, 22) << 8 | u8(head, 23) << 16 | u8(head, 24) << 24;
+                    return new ImageHeader("image/webp", (bits & 0x3FFF) + 1, (bits >>> 14 & 0x3FFF) + 1,
+                            NORMAL_ORIENTATION);
+                }
+                break;
+            case "VP8X":
+                // Extended: 24-bit canvas size minus one
+                if (length >= 30) {
+                    return new ImageHeader("image/webp", u24le(head, 24) + 1, u24le(head, 27) + 1, NORMAL_ORIENTATION);
+                }
+                break;
+            default:
+                break;
+        }
+        return new ImageHeader("image/webp", null, null, NORMAL_ORIENTATION);
+    }
+
+    private static boolean startsWith(byte[] head, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (head[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String fourCc(byte[] head, int offset) {
+        return new String(head, offset, 4, StandardCharsets.US_ASCII);
+    }
+
+    private static int u8(byte[] head, int offset) {
+        return head[offset] & 0xFF;
+    }
+
+    private static int u16be(byte[] head, int offset) {
+        return u8(head, offset) << 8 | u8(head, offset + 1);
+    }
+
+    private static int u16le(byte[] head, int offset) {
+        return u8(head, offset) | u8(head, offset + 1) << 8;
+    }
+
+    private static int u24le(byte[] head, int offset) {
+        return u8(head, offset) | u8(head, offset + 1) << 8 | u8(head, offset + 2) << 16;
+    }
+
+    // PNG sizes are limited to 2^31 - 1, so anything larger is a corrupt header
+    private static Integer u32be(byte[] head, int offset) {
+        long value = (long) u16be(head, offset) << 16 | u16be(head, offset + 2);
+        return value <= Integer.MAX_VALUE ? (int) value : null;
+    }
+
+    private static int tiffU16(byte[] head, int offset, boolean littleEndian) {
+        return littleEndian ? u16le(head, offset) : u16be(head, offset);
+    }
+
+    private static long tiffU32(byte[] head, int offset, boolean littleEndian) {
+        return littleEndian
+                ? (long) tiffU16(head, offset + 2, true) << 16 | tiffU16(head, offset, true)
+                : (long) tiffU16(head, offset, false) << 16 | tiffU16(head, offset + 2, false);
+    }
+
+    /**
+     * Canonical MIME type of the detected format
+     */
+    public String getContentType() { return contentType; }
+
+    /**
+     * Stored width in pixels, or null when the header was not within the bytes read
+     */
+    public Integer getWidth() { return width; }
+
+    public Integer getHeight() { return height; }
+
+    /**
+     * EXIF orientation, 1 to 8; 5 to 8 mean the image is displayed rotated by 90 degrees
+     */
+    public int getOrientation() { return orientation; }
+}
@@ -0,0 +1,55 @@
+package com.baaki.ecsapp.service;
+
+/**
+ * Downscaled copies generated for every uploaded photo.
+ * Rendition keys are derived from the original key, so they never need to be looked up.
+ */
+public enum ImageRendition {
+    THUMBNAIL(200),
+    PREVIEW(800);
+
+    private static final String ORIGINAL_PREFIX = "photos/";
+    private static final String RENDITION_PREFIX = "renditions/";
+
+    private final int maxDimension;
+
+    ImageRendition(int maxDimension) {
+        this.maxDimension = maxDimension;
+    }
+
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    /**
+     * Derive the rendition key, e.g. photos/abc.png becomes renditions/200/abc.jpg.
+     * A shard prefix is kept in front, so 3f/photos/abc.png becomes 3f/renditions/200/abc.jpg
+     * and renditions are spread over the same prefixes as their originals.
+     */
+    public String keyFor(String originalKey) {
+        int original = originalKey.indexOf(ORIGINAL_PREFIX);
+        boolean hasShard = original > 0 && original == originalKey.indexOf('/') + 1;
+        String shard = hasShard ? originalKey.substring(0, original) : "";
+        String name = original == 0 || hasShard
+                ? originalKey.substring(original + ORIGINAL_PREFIX.length())
+                : originalKey;
+        int extension = name.lastIndexOf('.');
+        if (extension > name.lastIndexOf('/')) {
+            name = name.substring(0, extension);
+        }
+        return shard + RENDITION_PREFIX + maxDimension + "/" + name + ".jpg";
+    }
+
+    /**
+     * The largest rendition; decoding is sized for it and smaller ones are scaled from that result
+     */
+    public static ImageRendition largest() {
+        ImageRendition largest = values()[0];
+        for (ImageRendition rendition : values()) {
+            if (rendition.maxDimension > largest.maxDimension) {
+                largest = rendition;
+            }
+        }
+        return largest;
+    }
+}
@@ -0,0 +1,50 @@
+package com.baaki.ecsapp.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An open cached object. The channel keeps the file readable even if the cache evicts and deletes
+ * it meanwhile, so it must be closed once the response is written.
+ */
+public final class ObjectContent implements Closeable {
+
+    private final ObjectFile file;
+    private final FileChannel channel;
+
+    ObjectContent(ObjectFile file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    public ObjectFile getFile() {
+        return file;
+    }
+
+    /**
+     * Write count bytes from position. The servlet stream is not a channel, so this is not a
+     * zero-copy send: each chunk goes through a temporary direct buffer and the stream wrapper's
+     * heap array. Memory use stays at one chunk whatever the object size.
+     */
+    public void transferTo(long position, long count, OutputStream outputStream) throws IOException {
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        long end = position + count;
+        while (position < end) {
+            long sent = channel.transferTo(position, end - position, target);
+            if (sent <= 0) {
+                throw new IOException("Cached file ended at " + position + " of " + file.getSize() + " bytes");
+            }
+            position += sent;
+        }
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,31 @@
+package com.baaki.ecsapp.service;
+
+import java.nio.file.Path;
+
+/**
+ * An S3 object downloaded to the local disk cache, with the metadata needed to serve it
+ */
+public final class ObjectFile {
+
+    private final Path path;
+    private final long size;
+    private final String contentType;
+
+    public ObjectFile(Path path, long size, String contentType) {
+        this.path = path;
+        this.size = size;
+        this.contentType = contentType;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+}
@@ -0,0 +1,171 @@
+package com.baaki.ecsapp.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Bounded cache of S3 objects on local disk, for serving content through the app. Entries are
+ * weighed by their size, and once the total passes app.content.cache.max-size the least valuable
+ * are evicted and their files deleted. Concurrent misses for one object wait on a single download.
+ *
+ * The directory is meant to be the task's ephemeral storage: cached files do not outlive the
+ * process, and any left behind by a previous one are deleted on startup.
+ */
+@Component
+public class ObjectFileCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ObjectFileCache.class);
+
+    private static final String FILE_SUFFIX = ".object";
+
+    @Value("${app.content.cache.directory:${java.io.tmpdir}/ecs-app-content-cache}")
+    private Path directory;
+
+    // Must exceed the largest object served, or it is evicted as soon as it is downloaded
+    @Value("${app.content.cache.max-size:1GB}")
+    private DataSize maxSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private AsyncCache<ObjectLocation, ObjectFile> cache;
+
+    /**
+     * Writes an object to the given path, which does not exist yet, and describes the result
+     */
+    @FunctionalInterface
+    public interface Downloader {
+        ObjectFile download(ObjectLocation location, Path file) throws IOException;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(directory);
+        deleteCachedFiles();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((ObjectLocation location, ObjectFile file) -> (int) Math.min(file.getSize(), Integer.MAX_VALUE))
+                // Readers that already opened the file keep reading it after the delete
+                .removalListener((ObjectLocation location, ObjectFile file, RemovalCause cause) -> {
+                    if (file != null) {
+                        deleteQuietly(file.getPath());
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "objectFiles");
+
+        logger.info("Object file cache initialized in {} with max size: {}", directory, maxSize);
+    }
+
+    @PreDestroy
+    public void cleanup() throws IOException {
+        deleteCachedFiles();
+    }
+
+    /**
+     * Open an object from the cache, downloading it on a miss. The caller must close the content.
+     */
+    public ObjectContent open(ObjectLocation location, Downloader downloader) throws IOException {
+        // The entry can be evicted between the lookup and the open; its file is then gone, so load it again
+        for (int attempt = 1; ; attempt++) {
+            ObjectFile file = get(location, downloader);
+            try {
+                return new ObjectContent(file, FileChannel.open(file.getPath(), StandardOpenOption.READ));
+            } catch (NoSuchFileException e) {
+                CompletableFuture<ObjectFile> stale = cache.getIfPresent(location);
+                if (stale != null && stale.getNow(null) == file) {
+                    cache.asMap().remove(location, stale);
+                }
+                if (attempt == 2) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop a cached object that is being deleted from S3
+     */
+    public void invalidate(ObjectLocation location) {
+        cache.synchronous().invalidate(location);
+    }
+
+    private ObjectFile get(ObjectLocation location, Downloader downloader) throws IOException {
+        try {
+            return CacheLoads.getOrLoad(cache, location, key -> download(key, downloader));
+        } catch (CompletionException e) {
+            // Callers that waited on another's download see its failure wrapped
+            throw unwrap(e.getCause() != null ? e.getCause() : e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static IOException unwrap(Throwable cause) {
+        if (cause instanceof UncheckedIOException e) {
+            return e.getCause();
+        }
+        if (cause instanceof RuntimeException e) {
+            throw e;
+        }
+        return new IOException(cause);
+    }
+
+    private ObjectFile download(ObjectLocation location, Downloader downloader) {
+        Path file = directory.resolve(UUID.randomUUID() + FILE_SUFFIX);
+        try {
+            ObjectFile downloaded = downloader.download(location, file);
+            logger.debug("Cached {} bytes of {} in {}", downloaded.getSize(), location, file);
+            return downloaded;
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    private void deleteCachedFiles() throws IOException {
+        // Only files this cache names are touched, in case the directory is shared
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete cached object file {}: {}", file, e.getMessage());
+        }
+    }
+}
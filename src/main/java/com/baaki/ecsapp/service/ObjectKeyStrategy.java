@@ -0,0 +1,30 @@
+package com.baaki.ecsapp.service;
+
+/**
+ * Naming scheme for newly uploaded originals, selected with app.s3.key-strategy.
+ * Keys already stored keep working under any strategy: they are read back from the database,
+ * never recomputed.
+ */
+public interface ObjectKeyStrategy {
+
+    /**
+     * A new, unique key for an original with the given filename
+     */
+    String newKey(String originalFilename);
+
+    /**
+     * Whether a key could have been produced by newKey, for checking keys echoed back by clients
+     */
+    boolean isGeneratedKey(String key);
+
+    /**
+     * Keep the original's file extension, so S3 consoles and downloads show a sensible type
+     */
+    static String fileExtension(String filename) {
+        if (filename == null || !filename.contains(".")) {
+            return "";
+        }
+        String extension = filename.substring(filename.lastIndexOf("."));
+        return extension.contains("/") ? "" : extension;
+    }
+}
@@ -0,0 +1,53 @@
+package com.baaki.ecsapp.service;
+
+import java.util.Objects;
+
+/**
+ * Where an S3 object lives: the bucket it was written to and its key in that bucket.
+ */
+public final class ObjectLocation {
+
+    private final String bucket;
+    private final String key;
+
+    public ObjectLocation(String bucket, String key) {
+        this.bucket = Objects.requireNonNull(bucket, "bucket");
+        this.key = Objects.requireNonNull(key, "key");
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Another object in the same bucket, such as a rendition of this one
+     */
+    public ObjectLocation withKey(String otherKey) {
+        return new ObjectLocation(bucket, otherKey);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ObjectLocation other)) {
+            return false;
+        }
+        return bucket.equals(other.bucket) && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * bucket.hashCode() + key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return bucket + "/" + key;
+    }
+}
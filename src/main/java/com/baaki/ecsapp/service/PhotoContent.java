@@ -0,0 +1,35 @@
+package com.baaki.ecsapp.service;
+
+import java.time.Instant;
+
+/**
+ * The original of a photo as described by its row: where it lives and the validators conditional
+ * requests are checked against, known before anything is fetched from S3
+ */
+public final class PhotoContent {
+
+    private final ObjectLocation location;
+    private final String eTag;
+    private final Instant lastModified;
+
+    public PhotoContent(ObjectLocation location, String eTag, Instant lastModified) {
+        this.location = location;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    public ObjectLocation getLocation() {
+        return location;
+    }
+
+    /**
+     * Strong ETag, quoted as in an HTTP header
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    public Instant getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,138 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.config.ReadYourWritesFilter;
+import com.baaki.ecsapp.dto.ListingVersion;
+import com.baaki.ecsapp.dto.PhotoSummary;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache for the total photo count, the listing version stamp and the first gallery page.
+ * Writes on this instance invalidate it once they commit; the TTL bounds how long other
+ * instances behind the load balancer can serve a stale count or first page.
+ */
+@Component
+public class PhotoListingCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhotoListingCache.class);
+
+    private static final String COUNT_KEY = "count";
+
+    private static final String VERSION_KEY = "version";
+
+    @Value("${app.gallery.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.gallery.cache.ttl:PT30S}")
+    private Duration timeToLive;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private AsyncCache<String, Long> countCache;
+
+    private AsyncCache<String, ListingVersion> versionCache;
+
+    private AsyncCache<Integer, List<PhotoSummary>> firstPageCache;
+
+    @PostConstruct
+    public void init() {
+        this.countCache = Caffeine.newBuilder()
+                .maximumSize(enabled ? 1 : 0)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .buildAsync();
+
+        this.versionCache = Caffeine.newBuilder()
+                .maximumSize(enabled ? 1 : 0)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .buildAsync();
+
+        // Keyed by the requested row limit; clients rarely use more than a few page sizes
+        this.firstPageCache = Caffeine.newBuilder()
+                .maximumSize(enabled ? 16 : 0)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, countCache, "photoCount");
+        CaffeineCacheMetrics.monitor(meterRegistry, versionCache, "photoListingVersion");
+        CaffeineCacheMetrics.monitor(meterRegistry, firstPageCache, "photoFirstPage");
+
+        logger.info("Photo listing cache initialized with time-to-live: {}, enabled: {}", timeToLive, enabled);
+    }
+
+    /**
+     * Return the cached photo count, running the query on a miss
+     */
+    public long getCount(Supplier<Long> loader) {
+        return load(countCache, COUNT_KEY, key -> loader.get());
+    }
+
+    /**
+     * Return the cached listing version stamp, running the aggregate query on a miss
+     */
+    public ListingVersion getVersion(Supplier<ListingVersion> loader) {
+        return load(versionCache, VERSION_KEY, key -> loader.get());
+    }
+
+    /**
+     * Return the cached first page rows for the given row limit, running the query on a miss
+     */
+    public List<PhotoSummary> getFirstPage(int limit, Function<Integer, List<PhotoSummary>> loader) {
+        return load(firstPageCache, limit, loader);
+    }
+
+    private <K, V> V load(AsyncCache<K, V> cache, K key, Function<K, V> loader) {
+        if (ReadYourWritesFilter.isPrimaryRequired()) {
+            // A read from a lagging replica may have refilled the entry after this client's own write;
+            // read the primary instead and replace it
+            V value = loader.apply(key);
+            if (value != null) {
+                cache.put(key, CompletableFuture.completedFuture(value));
+            }
+            return value;
+        }
+        return CacheLoads.getOrLoad(cache, key, loader);
+    }
+
+    /**
+     * Drop the cached count, version and first page. Inside a transaction this happens again after commit,
+     * so a reader that refilled the cache from pre-commit data does not keep it for a full TTL.
+     */
+    public void invalidate() {
+        invalidateAll();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateAll();
+                }
+            });
+        }
+    }
+
+    private void invalidateAll() {
+        // Drops loads still in flight too; their callers get the value but it is not cached
+        countCache.synchronous().invalidateAll();
+        versionCache.synchronous().invalidateAll();
+        firstPageCache.synchronous().invalidateAll();
+    }
+}
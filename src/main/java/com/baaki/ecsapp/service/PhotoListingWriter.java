@@ -0,0 +1,126 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.PhotoField;
+import com.baaki.ecsapp.dto.PhotoSummary;
+import com.baaki.ecsapp.repository.PhotoRepository;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the whole photo listing as one JSON array, reading the rows in keyset chunks with the same
+ * (uploadedAt, id) queries as the paged listing. Each chunk is one short read-only transaction, so no
+ * connection is held while the response is written, and memory use stays at one chunk however large
+ * the gallery is or however slowly the client reads. Null fields are omitted and uploadedAt is
+ * written as epoch milliseconds.
+ */
+@Service
+public class PhotoListingWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhotoListingWriter.class);
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.listing.stream.chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * Stream every photo, newest first, with the selected fields. Photos whose URL cannot be
+     * presigned are skipped, as in the paged listing; without a URL field nothing is presigned.
+     * Not a snapshot: like paging by hand, a photo uploaded or deleted meanwhile may or may not appear.
+     */
+    public void writeAll(OutputStream outputStream, Set<PhotoField> fields) throws IOException {
+        boolean presign = fields.contains(PhotoField.URL);
+        long written = 0;
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream, JsonEncoding.UTF8)) {
+            // The servlet container owns the response stream
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+
+            List<PhotoSummary> chunk = photoRepository.findFirstPage(Limit.of(chunkSize));
+            while (!chunk.isEmpty()) {
+                for (PhotoSummary photo : chunk) {
+                    String url = presign ? s3Service.generatePresignedUrl(location(photo, photo.getS3Key())) : null;
+                    if (presign && url == null) {
+                        continue;
+                    }
+                    writePhoto(generator, photo, url, fields);
+                    written++;
+                }
+                if (chunk.size() < chunkSize) {
+                    break;
+                }
+                PhotoSummary last = chunk.get(chunk.size() - 1);
+                chunk = photoRepository.findPageAfter(last.getUploadedAt(), last.getId(), Limit.of(chunkSize));
+            }
+
+            generator.writeEndArray();
+        }
+
+        logger.debug("Streamed {} photos", written);
+    }
+
+    private void writePhoto(JsonGenerator generator, PhotoSummary photo, String url, Set<PhotoField> fields)
+            throws IOException {
+        generator.writeStartObject();
+        for (PhotoField field : fields) {
+            switch (field) {
+                case ID -> generator.writeNumberField(field.getJsonName(), photo.getId());
+                case FILENAME -> writeString(generator, field, photo.getFilename());
+                case DESCRIPTION -> writeString(generator, field, photo.getDescription());
+                case CONTENT_TYPE -> writeString(generator, field, photo.getContentType());
+                case FILE_SIZE -> generator.writeNumberField(field.getJsonName(), photo.getFileSize());
+                case UPLOADED_AT -> generator.writeNumberField(field.getJsonName(),
+                        photo.getUploadedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                case URL -> writeString(generator, field, url);
+                case THUMBNAIL_URL -> writeString(generator, field, presignIfPresent(photo, photo.getThumbnailS3Key()));
+                case PREVIEW_URL -> writeString(generator, field, presignIfPresent(photo, photo.getPreviewS3Key()));
+                case WIDTH -> writeNumber(generator, field, photo.getWidth());
+                case HEIGHT -> writeNumber(generator, field, photo.getHeight());
+                case ORIENTATION -> writeNumber(generator, field, photo.getOrientation());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private String presignIfPresent(PhotoSummary photo, String s3Key) {
+        return s3Key != null ? s3Service.generatePresignedUrl(location(photo, s3Key)) : null;
+    }
+
+    // Renditions live in the same bucket as their original
+    private ObjectLocation location(PhotoSummary photo, String s3Key) {
+        return s3Service.location(photo.getBucket(), s3Key);
+    }
+
+    private static void writeString(JsonGenerator generator, PhotoField field, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(field.getJsonName(), value);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator generator, PhotoField field, Integer value) throws IOException {
+        if (value != null) {
+            generator.writeNumberField(field.getJsonName(), value);
+        }
+    }
+}
@@ -1,23 +1,74 @@
 package com.baaki.ecsapp.service;
 
+import com.baaki.ecsapp.dto.BulkDeleteResult;
+import com.baaki.ecsapp.dto.DirectUploadCompletion;
+import com.baaki.ecsapp.dto.DirectUploadRequest;
+import com.baaki.ecsapp.dto.DirectUploadTicket;
+import com.baaki.ecsapp.dto.ListingVersion;
+import com.baaki.ecsapp.dto.PhotoCursor;
+import com.baaki.ecsapp.dto.PhotoPage;
+import com.baaki.ecsapp.dto.PhotoSearchCriteria;
+import com.baaki.ecsapp.dto.PhotoSummary;
 import com.baaki.ecsapp.dto.PhotoUploadResult;
 import com.baaki.ecsapp.dto.PhotoWithPresignedUrl;
 import com.baaki.ecsapp.model.Photo;
+import com.baaki.ecsapp.repository.ListingCounterRepository;
 import com.baaki.ecsapp.repository.PhotoRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.services.s3.model.ChecksumType;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+/**
+ * Photo uploads, listings and deletes. There is deliberately no class-level transaction: S3 calls run
+ * outside any transaction and each metadata write commits in a short one of its own, so a slow S3
+ * round trip never holds a pooled connection.
+ */
 @Service
-@Transactional
 public class PhotoService {
 
     private static final Logger logger = LoggerFactory.getLogger(PhotoService.class);
@@ -28,41 +79,126 @@ public class PhotoService {
 
     private static final long MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
 
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private static final int MAX_SEARCH_TEXT_LENGTH = 200;
+
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-fA-F]{64}");
+
+    @Value("${app.upload.stream.max-file-size:500MB}")
+    private DataSize maxStreamFileSize;
+
+    @Value("${app.gallery.page-size:24}")
+    private int defaultPageSize;
+
+    @Value("${app.upload.batch.max-files:200}")
+    private int maxBatchFiles;
+
+    @Value("${app.upload.batch.concurrency:8}")
+    private int batchConcurrency;
+
+    @Value("${app.photos.bulk-delete.max-ids:5000}")
+    private int maxBulkDeleteIds;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${app.upload.direct.url-duration:PT15M}")
+    private Duration directUploadUrlDuration;
+
+    @Value("${app.gallery.http-cache.max-age:PT0S}")
+    private Duration listingMaxAge;
+
     @Autowired
     private PhotoRepository photoRepository;
 
     @Autowired
     private S3Service s3Service;
 
+    @Autowired
+    private PresignPipeline presignPipeline;
+
+    @Autowired
+    private RenditionService renditionService;
+
+    @Autowired
+    private S3DeletionOutbox s3DeletionOutbox;
+
+    @Autowired
+    private StoredObjectService storedObjectService;
+
+    @Autowired
+    private PhotoListingCache photoListingCache;
+
+    @Autowired
+    private ListingCounterRepository listingCounterRepository;
+
+    @Autowired
+    private PresignedUrlCache presignedUrlCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Present only with app.s3.client=async
+    @Autowired(required = false)
+    private S3AsyncService s3AsyncService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private ExecutorService batchUploadExecutor;
+
+    @PostConstruct
+    public void init() {
+        listingCounterRepository.insertIfAbsent();
+        this.batchUploadExecutor = Executors.newFixedThreadPool(batchConcurrency,
+                WorkerThreads.factory("batch-upload", virtualThreads, true));
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        if (batchUploadExecutor != null) {
+            batchUploadExecutor.shutdown();
+        }
+    }
+
     /**
      * Upload a new photo with validation
      */
     public PhotoUploadResult uploadPhoto(MultipartFile file, String description) {
         try {
             // Validate file
-            validateFile(file);
+            ImageHeader header = validateFile(file);
 
-            // Upload to S3
-            String s3Key = s3Service.uploadFile(file, description);
+            // Upload to S3, unless identical content is already stored
+            String contentHash = ContentHash.of(file.getInputStream());
+            ObjectLocation location = storedObjectService.storeIfAbsent(contentHash, file.getSize(),
+                    () -> s3Service.uploadFile(file, description));
 
             // Save metadata to database
             Photo photo = new Photo(
                     file.getOriginalFilename(),
-                    s3Key,
+                    location.getKey(),
                     description,
                     file.getContentType(),
                     file.getSize()
             );
+            photo.setBucket(location.getBucket());
+            photo.setContentHash(contentHash);
+            describeImage(photo, header);
+            photo = savePhoto(photo);
 
-            photo = photoRepository.save(photo);
-
-            logger.info("Successfully uploaded photo with ID: {} and S3 key: {}", photo.getId(), s3Key);
+            recordUploadSize("form", photo.getFileSize());
+            logger.info("Successfully uploaded photo with ID: {} to S3 at: {}", photo.getId(), location);
 
             return PhotoUploadResult.success(photo.getId(), "Photo uploaded successfully");
 
         } catch (IllegalArgumentException e) {
             logger.warn("File validation failed: {}", e.getMessage());
             return PhotoUploadResult.error(e.getMessage());
+        } catch (ByteBufferPool.ExhaustedException e) {
+            logger.warn("No upload buffer free, turning away {}", file.getOriginalFilename());
+            return PhotoUploadResult.busy();
         } catch (IOException e) {
             logger.error("Failed to upload photo: {}", e.getMessage(), e);
             return PhotoUploadResult.error("Failed to upload photo. Please try again.");
@@ -73,16 +209,415 @@ public class PhotoService {
     }
 
     /**
-     * Get all photos with presigned URLs for viewing
+     * Upload several photos at once.
+     * Every file is validated before any upload starts, valid files are pushed to S3 concurrently,
+     * and all resulting rows are written in one batched insert. Results are in the order of the files.
+     * saveAll opens its own short transaction once every S3 upload has finished.
+     */
+    public List<PhotoUploadResult> uploadPhotos(List<MultipartFile> files, String description) {
+        if (files == null || files.isEmpty()) {
+            return List.of(PhotoUploadResult.error("Please select at least one file to upload"));
+        }
+        if (files.size() > maxBatchFiles) {
+            return List.of(PhotoUploadResult.error("A batch may contain at most " + maxBatchFiles + " files"));
+        }
+
+        PhotoUploadResult[] results = new PhotoUploadResult[files.size()];
+        ImageHeader[] headers = new ImageHeader[files.size()];
+        List<CompletableFuture<StoredUpload>> uploads = new ArrayList<>(files.size());
+
+        // Validate up front so a bad file never costs an S3 round trip
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            try {
+                headers[i] = validateFile(file);
+                uploads.add(s3AsyncService != null
+                        ? uploadToS3Async(file, description)
+                        : CompletableFuture.supplyAsync(() -> uploadToS3(file, description), batchUploadExecutor));
+            } catch (IllegalArgumentException e) {
+                results[i] = PhotoUploadResult.error(e.getMessage()).forFile(file.getOriginalFilename());
+                uploads.add(null);
+            }
+        }
+
+        List<Photo> photos = new ArrayList<>();
+        List<Integer> photoIndexes = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (uploads.get(i) == null) {
+                continue;
+            }
+            MultipartFile file = files.get(i);
+            try {
+                StoredUpload upload = uploads.get(i).join();
+                Photo photo = new Photo(file.getOriginalFilename(), upload.location.getKey(), description,
+                        file.getContentType(), file.getSize());
+                photo.setBucket(upload.location.getBucket());
+                photo.setContentHash(upload.contentHash);
+                describeImage(photo, headers[i]);
+                reuseRenditions(photo);
+                photos.add(photo);
+                photoIndexes.add(i);
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof ByteBufferPool.ExhaustedException) {
+                    logger.warn("No upload buffer free, turning away {} in batch", file.getOriginalFilename());
+                    results[i] = PhotoUploadResult.busy().forFile(file.getOriginalFilename());
+                    continue;
+                }
+                logger.error("Failed to upload {} in batch: {}", file.getOriginalFilename(), e.getCause().getMessage());
+                results[i] = PhotoUploadResult.error("Failed to upload photo. Please try again.")
+                        .forFile(file.getOriginalFilename());
+            }
+        }
+
+        if (!photos.isEmpty()) {
+            try {
+                // Sequence ids are allocated in blocks, so this is sent as one JDBC batch
+                List<Photo> saved = transactionTemplate.execute(status -> {
+                    List<Photo> inserted = photoRepository.saveAll(photos);
+                    listingCounterRepository.increment();
+                    photoListingCache.invalidate();
+                    return inserted;
+                });
+
+                for (int j = 0; j < saved.size(); j++) {
+                    scheduleRenditions(saved.get(j));
+                    recordUploadSize("batch", saved.get(j).getFileSize());
+                    int i = photoIndexes.get(j);
+                    results[i] = PhotoUploadResult.success(saved.get(j).getId(), "Photo uploaded successfully")
+                            .forFile(files.get(i).getOriginalFilename());
+                }
+                logger.info("Successfully uploaded batch of {} photos", saved.size());
+
+            } catch (Exception e) {
+                logger.error("Failed to save batch metadata, releasing {} uploaded objects: {}", photos.size(), e.getMessage(), e);
+                releaseAndDelete(photos);
+                for (int j = 0; j < photos.size(); j++) {
+                    int i = photoIndexes.get(j);
+                    results[i] = PhotoUploadResult.error("An unexpected error occurred. Please try again.")
+                            .forFile(files.get(i).getOriginalFilename());
+                }
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private StoredUpload uploadToS3(MultipartFile file, String description) {
+        try {
+            String contentHash = ContentHash.of(file.getInputStream());
+            ObjectLocation location = storedObjectService.storeIfAbsent(contentHash, file.getSize(),
+                    () -> s3Service.uploadFile(file, description));
+            return new StoredUpload(contentHash, location);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Hash on the batch executor, then issue the PUT on the async client. The executor thread is
+     * released while the PUT is in flight, so every file in the batch uploads concurrently.
+     */
+    private CompletableFuture<StoredUpload> uploadToS3Async(MultipartFile file, String description) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return ContentHash.of(file.getInputStream());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, batchUploadExecutor).thenCompose(contentHash -> storedObjectService
+                .storeIfAbsentAsync(contentHash, file.getSize(),
+                        () -> s3AsyncService.uploadFile(file, description), batchUploadExecutor)
+                .thenApply(location -> new StoredUpload(contentHash, location)));
+    }
+
+    private static class StoredUpload {
+        private final String contentHash;
+        private final ObjectLocation location;
+
+        StoredUpload(String contentHash, ObjectLocation location) {
+            this.contentHash = contentHash;
+            this.location = location;
+        }
+    }
+
+    /**
+     * Upload a photo streamed straight from the request body, without multipart buffering.
+     * The size is only known once the stream ends, so the limit is enforced while reading.
+     */
+    public PhotoUploadResult uploadPhotoStream(InputStream inputStream, String filename, String contentType,
+                                               String description) {
+        try {
+            validateFilename(filename);
+            validateContentType(contentType);
+
+            // Probe the head before anything reaches S3, then replay it in front of the rest of the body
+            byte[] head = ImageHeader.readHead(inputStream);
+            if (head.length == 0) {
+                throw new IllegalArgumentException("Please select a file to upload");
+            }
+            ImageHeader header = validateImage(ImageHeader.parse(head, head.length), contentType);
+
+            // The body can only be read once, so it is hashed while it streams to S3
+            CountingInputStream countingStream = new CountingInputStream(
+                    new SequenceInputStream(new ByteArrayInputStream(head), inputStream), maxStreamFileSize.toBytes());
+            DigestInputStream digestStream = new DigestInputStream(countingStream, ContentHash.newDigest());
+            ObjectLocation uploaded = s3Service.uploadStream(digestStream, filename, contentType, description);
+
+            String contentHash = ContentHash.digestOf(digestStream);
+            ObjectLocation location = storedObjectService.registerUploaded(contentHash, uploaded, countingStream.getCount());
+
+            Photo photo = new Photo(filename, location.getKey(), description, contentType, countingStream.getCount());
+            photo.setBucket(location.getBucket());
+            photo.setContentHash(contentHash);
+            describeImage(photo, header);
+            photo = savePhoto(photo);
+
+            recordUploadSize("stream", photo.getFileSize());
+            logger.info("Successfully streamed photo with ID: {}, size: {} bytes to S3 at: {}",
+                    photo.getId(), photo.getFileSize(), location);
+
+            return PhotoUploadResult.success(photo.getId(), "Photo uploaded successfully");
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("File validation failed: {}", e.getMessage());
+            return PhotoUploadResult.error(e.getMessage());
+        } catch (CountingInputStream.SizeLimitExceededException e) {
+            logger.warn("Streamed upload rejected: {}", e.getMessage());
+            return PhotoUploadResult.error("File size must be less than " + maxStreamFileSize.toMegabytes() + "MB");
+        } catch (ByteBufferPool.ExhaustedException e) {
+            logger.warn("No upload buffer free, turning away {}", filename);
+            return PhotoUploadResult.busy();
+        } catch (IOException e) {
+            logger.error("Failed to stream photo: {}", e.getMessage(), e);
+            return PhotoUploadResult.error("Failed to upload photo. Please try again.");
+        } catch (Exception e) {
+            logger.error("Unexpected error during streamed photo upload: {}", e.getMessage(), e);
+            return PhotoUploadResult.error("An unexpected error occurred. Please try again.");
+        }
+    }
+
+    /**
+     * Upload a photo that was already validated and staged to local disk by the async upload pipeline
+     */
+    public PhotoUploadResult uploadStagedPhoto(Path stagedFile, String filename, String contentType,
+                                               String description, LongConsumer progressListener) {
+        try {
+            // The staged copy is local, so hash it first and skip the upload entirely for duplicates
+            long fileSize = Files.size(stagedFile);
+            String contentHash = ContentHash.of(Files.newInputStream(stagedFile));
+            ObjectLocation location = storedObjectService.storeIfAbsent(contentHash, fileSize, () -> {
+                if (s3AsyncService != null) {
+                    // The transfer manager uploads parts of the file in parallel and reports progress itself
+                    return await(s3AsyncService.uploadFile(stagedFile, filename, contentType, description, progressListener));
+                }
+                try (InputStream inputStream = new CountingInputStream(
+                        Files.newInputStream(stagedFile), Long.MAX_VALUE, progressListener)) {
+                    return s3Service.uploadStream(inputStream, filename, contentType, description);
+                }
+            });
+
+            Photo photo = new Photo(filename, location.getKey(), description, contentType, fileSize);
+            photo.setBucket(location.getBucket());
+            photo.setContentHash(contentHash);
+            // The header was checked when the job was submitted; reading it again from local disk is cheap
+            describeImage(photo, ImageHeader.read(Files.newInputStream(stagedFile)));
+            photo = savePhoto(photo);
+
+            recordUploadSize("async", photo.getFileSize());
+            logger.info("Successfully uploaded staged photo with ID: {} to S3 at: {}", photo.getId(), location);
+
+            return PhotoUploadResult.success(photo.getId(), "Photo uploaded successfully");
+
+        } catch (ByteBufferPool.ExhaustedException e) {
+            logger.warn("No upload buffer free, turning away {}", filename);
+            return PhotoUploadResult.busy();
+        } catch (IOException e) {
+            logger.error("Failed to upload staged photo: {}", e.getMessage(), e);
+            return PhotoUploadResult.error("Failed to upload photo. Please try again.");
+        } catch (Exception e) {
+            logger.error("Unexpected error during staged photo upload: {}", e.getMessage(), e);
+            return PhotoUploadResult.error("An unexpected error occurred. Please try again.");
+        }
+    }
+
+    /**
+     * Issue a presigned PUT so the browser sends the file straight to S3 instead of through this service.
+     * The declared type and size are checked here and then enforced by S3 through the signature.
+     */
+    public DirectUploadTicket createDirectUpload(DirectUploadRequest request) {
+        validateFilename(request.getFilename());
+        validateContentType(request.getContentType());
+        validateFileSize(request.getSize());
+
+        String checksum = null;
+        if (request.getSha256() != null && !request.getSha256().isBlank()) {
+            if (!SHA256_HEX.matcher(request.getSha256()).matches()) {
+                throw new IllegalArgumentException("Invalid SHA-256 checksum");
+            }
+            // S3 takes the digest base64-encoded
+            checksum = Base64.getEncoder().encodeToString(HexFormat.of().parseHex(request.getSha256()));
+        }
+
+        ObjectLocation location = s3Service.newLocation(request.getFilename());
+        PresignedPutObjectRequest presigned = s3Service.presignUpload(location, request.getContentType(),
+                request.getSize(), checksum, directUploadUrlDuration);
+
+        // Browsers set Host and Content-Length themselves and refuse to let scripts set them
+        Map<String, String> headers = new LinkedHashMap<>();
+        presigned.signedHeaders().forEach((name, values) -> {
+            if (!name.equalsIgnoreCase("host") && !name.equalsIgnoreCase("content-length")) {
+                headers.put(name, String.join(",", values));
+            }
+        });
+
+        logger.info("Issued direct upload for file: {}, size: {} bytes, S3 location: {}",
+                request.getFilename(), request.getSize(), location);
+        return new DirectUploadTicket(location.getBucket(), location.getKey(), presigned.url().toString(), presigned.httpRequest().method().name(),
+                headers, presigned.expiration());
+    }
+
+    /**
+     * Save the photo for a direct upload the browser reports as done. The object's size, type and
+     * checksum are read back from S3 rather than taken from the client; a SHA-256 checksum signed
+     * into the upload doubles as the content hash, so such uploads are deduplicated as well.
+     * The uploaded key is kept on the photo, unique, so a repeated completion is rejected even when the
+     * content was deduplicated and the photo points at another object.
+     */
+    public PhotoUploadResult completeDirectUpload(DirectUploadCompletion completion) {
+        try {
+            validateFilename(completion.getFilename());
+            if (completion.getS3Key() == null) {
+                throw new IllegalArgumentException("Unknown upload");
+            }
+            // Clients from before multi-bucket support send no bucket; their tickets were for the default one
+            ObjectLocation uploaded = s3Service.location(completion.getBucket(), completion.getS3Key());
+            if (!s3Service.isNewLocation(uploaded)) {
+                throw new IllegalArgumentException("Unknown upload");
+            }
+            if (photoRepository.existsByS3KeyOrUploadS3Key(uploaded.getKey(), uploaded.getKey())) {
+                throw new IllegalArgumentException("This upload has already been completed");
+            }
+
+            HeadObjectResponse object = s3Service.describeFile(uploaded);
+            if (object == null) {
+                throw new IllegalArgumentException("The file has not been uploaded yet");
+            }
+            ImageHeader header;
+            try {
+                validateContentType(object.contentType());
+                validateFileSize(object.contentLength());
+                // A ranged GET of the head only; the object itself is never downloaded
+                byte[] head = s3Service.readHead(uploaded, ImageHeader.MAX_HEADER_BYTES);
+                header = validateImage(ImageHeader.parse(head, head.length), object.contentType());
+            } catch (IllegalArgumentException e) {
+                s3DeletionOutbox.enqueue(List.of(uploaded));
+                throw e;
+            }
+
+            // Only a full-object SHA-256 is a content hash; S3's default CRC checksums are ignored. Without
+            // one the object is registered under its location hash, so a concurrent second completion of
+            // the same upload is rejected here rather than creating a second photo that owns the object.
+            String contentHash = object.checksumSHA256() != null && object.checksumType() != ChecksumType.COMPOSITE
+                    ? HexFormat.of().formatHex(Base64.getDecoder().decode(object.checksumSHA256()))
+                    : StoredObjectService.locationHash(uploaded);
+            ObjectLocation location = storedObjectService.registerUploaded(contentHash, uploaded, object.contentLength());
+
+            Photo photo = new Photo(completion.getFilename(), location.getKey(), completion.getDescription(),
+                    object.contentType(), object.contentLength());
+            photo.setBucket(location.getBucket());
+            photo.setContentHash(contentHash);
+            photo.setUploadS3Key(uploaded.getKey());
+            describeImage(photo, header);
+            try {
+                photo = savePhoto(photo);
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent completion of a deduplicated upload saved first; savePhoto gave the reference back
+                if (photoRepository.existsByUploadS3Key(uploaded.getKey())) {
+                    throw new IllegalArgumentException("This upload has already been completed");
+                }
+                throw e;
+            }
+
+            recordUploadSize("direct", photo.getFileSize());
+            logger.info("Successfully completed direct upload with ID: {} to S3 at: {}", photo.getId(), location);
+
+            return PhotoUploadResult.success(photo.getId(), "Photo uploaded successfully");
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("Direct upload completion rejected: {}", e.getMessage());
+            return PhotoUploadResult.error(e.getMessage());
+        } catch (IOException e) {
+            logger.error("Failed to complete direct upload: {}", e.getMessage(), e);
+            return PhotoUploadResult.error("Failed to upload photo. Please try again.");
+        } catch (Exception e) {
+            logger.error("Unexpected error during direct upload completion: {}", e.getMessage(), e);
+            return PhotoUploadResult.error("An unexpected error occurred. Please try again.");
+        }
+    }
+
+    /**
+     * Get one keyset page of photos with presigned URLs, newest first.
+     * Pass a null cursor for the first page and the returned nextCursor for the following ones.
+     * There is no surrounding transaction: a cached first page never touches the database, and
+     * otherwise the one query runs in the repository's own read-only transaction.
+     */
+    public PhotoPage getPhotoPage(String cursor, Integer pageSize) {
+        int size = resolvePageSize(pageSize);
+
+        // Fetch one extra row to learn whether another page exists
+        Limit limit = Limit.of(size + 1);
+        List<PhotoSummary> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = photoListingCache.getFirstPage(limit.max(),
+                    max -> List.copyOf(photoRepository.findFirstPage(Limit.of(max))));
+        } else {
+            PhotoCursor position = PhotoCursor.decode(cursor);
+            rows = photoRepository.findPageAfter(position.getUploadedAt(), position.getId(), limit);
+        }
+
+        return toPage(rows, size);
+    }
+
+    /**
+     * Search photos by text in the filename and description, exact content type and upload time range,
+     * newest first. Pages work as in getPhotoPage: pass the returned nextCursor to continue.
+     *
+     * @throws IllegalArgumentException with a user-facing message when the criteria are rejected
      */
     @Transactional(readOnly = true)
-    public List<PhotoWithPresignedUrl> getAllPhotosWithUrls() {
-        List<Photo> photos = photoRepository.findAllOrderByUploadedAtDesc();
+    public PhotoPage searchPhotos(String text, String contentType, LocalDateTime from, LocalDateTime to,
+                                  String cursor, Integer pageSize) {
+        String query = text == null || text.isBlank() ? null : text.trim();
+        if (query != null && query.length() > MAX_SEARCH_TEXT_LENGTH) {
+            throw new IllegalArgumentException("Search text must be at most " + MAX_SEARCH_TEXT_LENGTH + " characters");
+        }
+        String type = contentType == null || contentType.isBlank() ? null : contentType.trim().toLowerCase();
+        if (type != null) {
+            validateContentType(type);
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("The start of the date range must be before its end");
+        }
 
-        return photos.stream()
-                .map(this::createPhotoWithPresignedUrl)
-                .filter(photoWithUrl -> photoWithUrl.getPresignedUrl() != null) // Filter out photos with failed URL generation
-                .collect(Collectors.toList());
+        int size = resolvePageSize(pageSize);
+        PhotoCursor after = cursor == null || cursor.isBlank() ? null : PhotoCursor.decode(cursor);
+
+        // Fetch one extra row to learn whether another page exists
+        List<PhotoSummary> rows = photoRepository.search(new PhotoSearchCriteria(query, type, from, to), after, size + 1);
+        return toPage(rows, size);
+    }
+
+    private PhotoPage toPage(List<PhotoSummary> rows, int size) {
+        boolean hasMore = rows.size() > size;
+        if (hasMore) {
+            rows = rows.subList(0, size);
+        }
+
+        List<PhotoWithPresignedUrl> photos = presignPipeline.presignAll(rows, this::createPhotoWithPresignedUrl);
+
+        // The cursor follows the last row read, even if its URL failed, so paging never stalls
+        String nextCursor = hasMore ? PhotoCursor.after(rows.get(rows.size() - 1)).encode() : null;
+        return new PhotoPage(photos, nextCursor);
     }
 
     /**
@@ -96,26 +631,53 @@ public class PhotoService {
     }
 
     /**
-     * Delete a photo
+     * Describe the original of a photo from its row, or return null when there is no such photo.
+     * The ETag is the content hash and Last-Modified the upload time, so a conditional request is
+     * answered without touching S3; the object behind a photo never changes.
+     */
+    public PhotoContent findPhotoContent(Long photoId) {
+        Photo photo = photoRepository.findById(photoId).orElse(null);
+        if (photo == null) {
+            return null;
+        }
+        ObjectLocation location = s3Service.location(photo.getBucket(), photo.getS3Key());
+        String hash = photo.getContentHash() != null ? photo.getContentHash() : StoredObjectService.locationHash(location);
+        return new PhotoContent(location, "\"" + hash + "\"",
+                photo.getUploadedAt().atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Open the original of a photo from the local object cache. No transaction is held, so a cache
+     * miss never keeps a connection while it downloads. The caller must close the content.
+     */
+    public ObjectContent openPhotoContent(PhotoContent content) throws IOException {
+        return s3Service.openCached(content.getLocation());
+    }
+
+    /**
+     * Delete a photo. The row is removed, and objects no other photo shares are queued for deletion
+     * from S3, in one short transaction; the request never waits for S3.
      */
     public boolean deletePhoto(Long photoId) {
         try {
-            Photo photo = photoRepository.findById(photoId).orElse(null);
-            if (photo == null) {
+            List<ObjectLocation> unreferenced = transactionTemplate.execute(status -> {
+                Photo photo = photoRepository.findByIdForUpdate(photoId).orElse(null);
+                if (photo == null) {
+                    return null;
+                }
+                photoRepository.delete(photo);
+                photoListingCache.invalidate();
+                List<ObjectLocation> released = releaseContent(List.of(photo));
+                s3DeletionOutbox.enqueue(released);
+                listingCounterRepository.increment();
+                return released;
+            });
+            if (unreferenced == null) {
                 logger.warn("Attempted to delete non-existent photo with ID: {}", photoId);
                 return false;
             }
 
-            // Delete from S3 first
-            boolean s3Deleted = s3Service.deleteFile(photo.getS3Key());
-            if (!s3Deleted) {
-                logger.warn("Failed to delete photo from S3, but continuing with database deletion");
-            }
-
-            // Delete from database
-            photoRepository.deleteById(photoId);
-
-            logger.info("Successfully deleted photo with ID: {} and S3 key: {}", photoId, photo.getS3Key());
+            logger.info("Successfully deleted photo with ID: {}, {} S3 objects queued for deletion", photoId, unreferenced.size());
             return true;
 
         } catch (Exception e) {
@@ -125,33 +687,298 @@ public class PhotoService {
     }
 
     /**
-     * Get photo count
+     * Delete many photos at once.
+     * Rows are locked with one SELECT ... FOR UPDATE and removed with a single DELETE ... WHERE id IN,
+     * in the same transaction that releases their content references and queues objects no longer
+     * referenced by any photo for deletion; the outbox worker removes them with S3 multi-object deletes.
+     * Only rows this transaction deleted release a reference, so overlapping deletes of the same photos
+     * never release one twice.
      */
-    @Transactional(readOnly = true)
+    public BulkDeleteResult deletePhotos(List<Long> photoIds) {
+        if (photoIds == null || photoIds.isEmpty()) {
+            return new BulkDeleteResult();
+        }
+
+        Set<Long> ids = new LinkedHashSet<>(photoIds);
+        if (ids.size() > maxBulkDeleteIds) {
+            return BulkDeleteResult.rejected(new ArrayList<>(ids),
+                    "A bulk delete may contain at most " + maxBulkDeleteIds + " ids");
+        }
+
+        BulkDeleteResult result = new BulkDeleteResult();
+        try {
+            Set<Long> deleted = transactionTemplate.execute(status -> {
+                List<Photo> photos = photoRepository.findAllByIdForUpdate(ids);
+                Set<Long> found = photos.stream().map(Photo::getId).collect(Collectors.toSet());
+                if (!found.isEmpty()) {
+                    photoRepository.deleteAllByIdInBatch(found);
+                    photoListingCache.invalidate();
+                    s3DeletionOutbox.enqueue(releaseContent(photos));
+                    listingCounterRepository.increment();
+                }
+                return found;
+            });
+
+            for (Long id : ids) {
+                if (deleted.contains(id)) {
+                    result.addDeleted(id);
+                } else {
+                    result.addFailure(id, "Photo not found");
+                }
+            }
+
+            logger.info("Bulk deleted {} photos, {} failed", result.getDeleted().size(), result.getFailed().size());
+            return result;
+
+        } catch (Exception e) {
+            logger.error("Failed to bulk delete {} photos: {}", ids.size(), e.getMessage(), e);
+            for (Long id : ids) {
+                if (!result.getFailed().containsKey(id)) {
+                    result.addFailure(id, "An error occurred while deleting the photo");
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Get photo count, served from the listing cache between writes.
+     * SUPPORTS keeps a cache hit from borrowing a pooled connection just to open a transaction.
+     */
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public long getPhotoCount() {
-        return photoRepository.count();
+        return photoListingCache.getCount(photoRepository::count);
+    }
+
+    /**
+     * Weak ETag for the photo listing: the cached version stamp plus the current presign period.
+     * A conditional GET that matches therefore costs no query and no presigning. The period rolls
+     * over at half the guaranteed remaining validity of the presigned URLs, so revalidating never
+     * keeps a client on links that are about to expire.
+     */
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public String getListingETag() {
+        ListingVersion version = photoListingCache.getVersion(listingCounterRepository::findListingVersion);
+        long period = System.currentTimeMillis() / Math.max(1, listingRefreshPeriod().toMillis());
+        return "W/\"" + version + "-" + period + "\"";
+    }
+
+    /**
+     * How long clients may reuse a listing without revalidating, never longer than one presign period
+     */
+    public Duration getListingMaxAge() {
+        Duration period = listingRefreshPeriod();
+        return listingMaxAge.compareTo(period) < 0 ? listingMaxAge : period;
+    }
+
+    private Duration listingRefreshPeriod() {
+        return presignedUrlCache.getMinimumRemainingValidity().dividedBy(2);
+    }
+
+    /**
+     * Release the content of photos whose rows were never written, and queue objects nothing else
+     * references for deletion, in one transaction
+     */
+    private void releaseAndDelete(Collection<Photo> photos) {
+        transactionTemplate.executeWithoutResult(status -> s3DeletionOutbox.enqueue(releaseContent(photos)));
+    }
+
+    private static ObjectLocation await(CompletableFuture<ObjectLocation> upload) throws IOException {
+        try {
+            return upload.join();
+        } catch (CompletionException e) {
+            throw new IOException("Failed to upload file to S3", e.getCause());
+        }
+    }
+
+    /**
+     * Release the photos' content references and return every S3 object (originals and renditions)
+     * that no photo references any more. Legacy photos without a hash always own their object.
+     */
+    private List<ObjectLocation> releaseContent(Collection<Photo> photos) {
+        Map<String, Integer> referencesByHash = new HashMap<>();
+        Map<String, ObjectLocation> locationsByHash = new HashMap<>();
+        List<ObjectLocation> unreferenced = new ArrayList<>();
+
+        for (Photo photo : photos) {
+            ObjectLocation location = s3Service.location(photo.getBucket(), photo.getS3Key());
+            if (photo.getContentHash() == null) {
+                addWithRenditions(unreferenced, location);
+            } else {
+                referencesByHash.merge(photo.getContentHash(), 1, Integer::sum);
+                locationsByHash.put(photo.getContentHash(), location);
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : referencesByHash.entrySet()) {
+            if (storedObjectService.release(entry.getKey(), entry.getValue())) {
+                addWithRenditions(unreferenced, locationsByHash.get(entry.getKey()));
+            }
+        }
+        return unreferenced;
+    }
+
+    // Renditions are written next to their original, in the same bucket
+    private void addWithRenditions(List<ObjectLocation> locations, ObjectLocation original) {
+        locations.add(original);
+        renditionService.renditionKeys(original.getKey()).forEach(key -> locations.add(original.withKey(key)));
+    }
+
+    /**
+     * Write the row for a photo whose content is already in S3, in a short transaction of its own.
+     * If the write fails the content reference taken for the upload is released again, so the
+     * object does not outlive the failed upload.
+     */
+    private Photo savePhoto(Photo photo) {
+        try {
+            return transactionTemplate.execute(status -> {
+                reuseRenditions(photo);
+                Photo saved = photoRepository.save(photo);
+                listingCounterRepository.increment();
+                photoListingCache.invalidate();
+                scheduleRenditions(saved);
+                return saved;
+            });
+        } catch (RuntimeException e) {
+            try {
+                releaseAndDelete(List.of(photo));
+            } catch (RuntimeException compensation) {
+                e.addSuppressed(compensation);
+                logger.error("Failed to release content of unsaved photo at {}: {}",
+                        photo.getS3Key(), compensation.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Record the size of a stored upload, tagged by the endpoint that received it
+     */
+    private void recordUploadSize(String mode, long bytes) {
+        DistributionSummary.builder("photo.upload.size")
+                .description("Size of successfully uploaded photos")
+                .baseUnit("bytes")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1024.0)
+                .maximumExpectedValue((double) maxStreamFileSize.toBytes())
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    /**
+     * Point a new photo at renditions already generated for identical content
+     */
+    private void reuseRenditions(Photo photo) {
+        if (photo.getContentHash() == null) {
+            return;
+        }
+        photoRepository.findFirstByContentHashAndThumbnailS3KeyIsNotNull(photo.getContentHash())
+                .ifPresent(existing -> {
+                    photo.setThumbnailS3Key(existing.getThumbnailS3Key());
+                    photo.setPreviewS3Key(existing.getPreviewS3Key());
+                });
+    }
+
+    private void scheduleRenditions(Photo photo) {
+        if (photo.getThumbnailS3Key() == null) {
+            renditionService.scheduleAfterCommit(photo.getId(), s3Service.location(photo.getBucket(), photo.getS3Key()));
+        }
     }
 
     private PhotoWithPresignedUrl createPhotoWithPresignedUrl(Photo photo) {
-        String presignedUrl = s3Service.generatePresignedUrl(photo.getS3Key());
-        return new PhotoWithPresignedUrl(photo, presignedUrl);
+        ObjectLocation location = s3Service.location(photo.getBucket(), photo.getS3Key());
+        PhotoWithPresignedUrl photoWithUrl = new PhotoWithPresignedUrl(photo, s3Service.generatePresignedUrl(location));
+        addRenditionUrls(photoWithUrl, location, photo.getThumbnailS3Key(), photo.getPreviewS3Key());
+        return photoWithUrl;
     }
 
-    private void validateFile(MultipartFile file) {
+    private PhotoWithPresignedUrl createPhotoWithPresignedUrl(PhotoSummary photo) {
+        ObjectLocation location = s3Service.location(photo.getBucket(), photo.getS3Key());
+        PhotoWithPresignedUrl photoWithUrl = new PhotoWithPresignedUrl(photo, s3Service.generatePresignedUrl(location));
+        addRenditionUrls(photoWithUrl, location, photo.getThumbnailS3Key(), photo.getPreviewS3Key());
+        return photoWithUrl;
+    }
+
+    private void addRenditionUrls(PhotoWithPresignedUrl photoWithUrl, ObjectLocation original,
+                                  String thumbnailS3Key, String previewS3Key) {
+        if (thumbnailS3Key != null) {
+            photoWithUrl.setThumbnailUrl(s3Service.generatePresignedUrl(original.withKey(thumbnailS3Key)));
+        }
+        if (previewS3Key != null) {
+            photoWithUrl.setPreviewUrl(s3Service.generatePresignedUrl(original.withKey(previewS3Key)));
+        }
+    }
+
+    private int resolvePageSize(Integer pageSize) {
+        if (pageSize == null || pageSize <= 0) {
+            return Math.min(defaultPageSize, MAX_PAGE_SIZE);
+        }
+        return Math.min(pageSize, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Check an uploaded file against the size, type and filename rules, and probe its header to confirm
+     * the declared type. Only the first bytes of the file are read, whatever its size.
+     *
+     * @return the probed header, with the image's dimensions and orientation
+     * @throws IllegalArgumentException with a user-facing message when the file is rejected
+     */
+    public ImageHeader validateFile(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("Please select a file to upload");
         }
 
-        if (file.getSize() > MAX_FILE_SIZE) {
+        validateFileSize(file.getSize());
+        validateContentType(file.getContentType());
+        validateFilename(file.getOriginalFilename());
+
+        try {
+            return validateImage(ImageHeader.read(file.getInputStream()), file.getContentType());
+        } catch (IOException e) {
+            logger.warn("Failed to read the header of {}: {}", file.getOriginalFilename(), e.getMessage());
+            throw new IllegalArgumentException("The file could not be read");
+        }
+    }
+
+    /**
+     * Check that the content really is an image of the declared type, whatever the client claims
+     */
+    private ImageHeader validateImage(ImageHeader header, String contentType) {
+        if (header == null) {
+            throw new IllegalArgumentException("Only image files (JPEG, PNG, GIF, WebP) are allowed");
+        }
+        String declared = contentType.toLowerCase();
+        if (!header.getContentType().equals(declared.equals("image/jpg") ? "image/jpeg" : declared)) {
+            throw new IllegalArgumentException("The file content does not match its type " + contentType);
+        }
+        return header;
+    }
+
+    private static void describeImage(Photo photo, ImageHeader header) {
+        if (header != null) {
+            photo.setWidth(header.getWidth());
+            photo.setHeight(header.getHeight());
+            photo.setOrientation(header.getOrientation());
+        }
+    }
+
+    private void validateFileSize(long size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Please select a file to upload");
+        }
+        if (size > MAX_FILE_SIZE) {
             throw new IllegalArgumentException("File size must be less than 10MB");
         }
+    }
 
-        String contentType = file.getContentType();
+    private void validateContentType(String contentType) {
         if (contentType == null || !ALLOWED_CONTENT_TYPES.contains(contentType.toLowerCase())) {
             throw new IllegalArgumentException("Only image files (JPEG, PNG, GIF, WebP) are allowed");
         }
+    }
 
-        String filename = file.getOriginalFilename();
+    private void validateFilename(String filename) {
         if (filename == null || filename.trim().isEmpty()) {
             throw new IllegalArgumentException("Invalid filename");
         }
@@ -0,0 +1,75 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.PhotoWithPresignedUrl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Presigns photo lists on a dedicated, bounded fork-join pool.
+ * SigV4 signing is CPU-bound, so large lists are spread over the task's cores while
+ * small lists stay on the calling thread. Input order is always preserved.
+ * Experimental and off by default (parallelism 1) until it shows a gain on the deployed task size.
+ */
+@Component
+public class PresignPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresignPipeline.class);
+
+    // 0 means one worker per available processor; 1, the default, keeps every list on the calling thread
+    @Value("${app.s3.presign.parallelism:1}")
+    private int parallelism;
+
+    @Value("${app.s3.presign.parallel-threshold:64}")
+    private int parallelThreshold;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void init() {
+        int workers = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(workers, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("presign-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+
+        logger.info("Presign pipeline initialized with parallelism: {} and threshold: {}", workers, parallelThreshold);
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Map every photo to its presigned form, dropping photos whose URL could not be generated
+     */
+    public <T> List<PhotoWithPresignedUrl> presignAll(List<T> photos, Function<T, PhotoWithPresignedUrl> presigner) {
+        if (photos.size() < parallelThreshold || pool.getParallelism() == 1) {
+            return presign(photos.stream(), presigner);
+        }
+
+        // A parallel stream started from inside the pool runs on the pool's workers, not the common pool
+        return pool.submit(() -> presign(photos.parallelStream(), presigner)).join();
+    }
+
+    private <T> List<PhotoWithPresignedUrl> presign(Stream<T> photos, Function<T, PhotoWithPresignedUrl> presigner) {
+        return photos
+                .map(presigner)
+                .filter(photoWithUrl -> photoWithUrl.getPresignedUrl() != null) // Filter out photos with failed URL generation
+                .collect(Collectors.toList());
+    }
+}
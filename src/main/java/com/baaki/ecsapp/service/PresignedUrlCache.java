@@ -0,0 +1,90 @@
+package com.baaki.ecsapp.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of presigned GET URLs keyed by object location.
+ * A URL is reused until the configured safety margin before its signature expires,
+ * so clients never receive a link that is about to stop working.
+ */
+@Component
+public class PresignedUrlCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresignedUrlCache.class);
+
+    @Value("${app.s3.presign.duration:P2D}")
+    private Duration signatureDuration;
+
+    @Value("${app.s3.presign.cache.safety-margin:PT6H}")
+    private Duration safetyMargin;
+
+    @Value("${app.s3.presign.cache.max-size:100000}")
+    private long maxSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private AsyncCache<ObjectLocation, String> cache;
+
+    private Duration minimumRemainingValidity;
+
+    @PostConstruct
+    public void init() {
+        Duration timeToLive = signatureDuration.minus(safetyMargin);
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            logger.warn("Presigned URL cache disabled: safety margin {} is not shorter than signature duration {}",
+                    safetyMargin, signatureDuration);
+            timeToLive = Duration.ZERO;
+        }
+        this.minimumRemainingValidity = timeToLive.isZero() ? signatureDuration : safetyMargin;
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(timeToLive.isZero() ? 0 : maxSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "presignedUrls");
+
+        logger.info("Presigned URL cache initialized with max size: {} and time-to-live: {}", maxSize, timeToLive);
+    }
+
+    /**
+     * Return the cached URL for the key, signing a new one on a miss.
+     * A null result from the signer is not cached, so failed signatures are retried on the next call.
+     * Signing may refresh credentials over HTTP, so it runs outside the cache's locks.
+     */
+    public String get(ObjectLocation location, Function<ObjectLocation, String> signer) {
+        return CacheLoads.getOrLoad(cache, location, signer);
+    }
+
+    /**
+     * Drop the cached URL for an object that is being removed
+     */
+    public void invalidate(ObjectLocation location) {
+        cache.synchronous().invalidate(location);
+    }
+
+    public Duration getSignatureDuration() {
+        return signatureDuration;
+    }
+
+    /**
+     * The least time any URL handed out by get() still has before its signature expires
+     */
+    public Duration getMinimumRemainingValidity() {
+        return minimumRemainingValidity;
+    }
+}
@@ -0,0 +1,254 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.repository.ListingCounterRepository;
+import com.baaki.ecsapp.repository.PhotoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates downscaled JPEG renditions of uploaded photos in the background.
+ * The source is decoded with source subsampling sized for the largest rendition, so memory use
+ * depends on the rendition size rather than on the dimensions of the uploaded image.
+ */
+@Service
+public class RenditionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenditionService.class);
+
+    private static final String RENDITION_CONTENT_TYPE = "image/jpeg";
+
+    @Value("${app.renditions.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.renditions.workers:2}")
+    private int workers;
+
+    @Value("${app.renditions.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${app.renditions.max-source-pixels:100000000}")
+    private long maxSourcePixels;
+
+    @Value("${app.renditions.jpeg-quality:0.82}")
+    private float jpegQuality;
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private S3DeletionOutbox s3DeletionOutbox;
+
+    @Autowired
+    private PhotoListingCache photoListingCache;
+
+    @Autowired
+    private ListingCounterRepository listingCounterRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "rendition-worker-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // Renditions are best effort: the gallery falls back to the original when they are missing
+                (runnable, pool) -> logger.warn("Rendition queue is full, skipping rendition job"));
+
+        logger.info("Rendition service initialized with {} workers, enabled: {}", workers, enabled);
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Queue rendition generation once the current transaction commits, so the worker sees the photo row
+     */
+    public void scheduleAfterCommit(Long photoId, ObjectLocation original) {
+        if (!enabled) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    executor.execute(() -> generate(photoId, original));
+                }
+            });
+        } else {
+            executor.execute(() -> generate(photoId, original));
+        }
+    }
+
+    /**
+     * All rendition keys for an original, for cleanup on delete
+     */
+    public List<String> renditionKeys(String s3Key) {
+        List<String> keys = new ArrayList<>();
+        for (ImageRendition rendition : ImageRendition.values()) {
+            keys.add(rendition.keyFor(s3Key));
+        }
+        return keys;
+    }
+
+    private void generate(Long photoId, ObjectLocation original) {
+        String s3Key = original.getKey();
+        try {
+            Map<ImageRendition, byte[]> renditions;
+            try (InputStream source = s3Service.openFile(original)) {
+                renditions = render(source);
+            }
+
+            for (Map.Entry<ImageRendition, byte[]> rendition : renditions.entrySet()) {
+                s3Service.putBytes(original.withKey(rendition.getKey().keyFor(s3Key)), rendition.getValue(),
+                        RENDITION_CONTENT_TYPE);
+            }
+
+            int updated = transactionTemplate.execute(status -> {
+                int rows = photoRepository.updateRenditionKeys(s3Key,
+                        ImageRendition.THUMBNAIL.keyFor(s3Key), ImageRendition.PREVIEW.keyFor(s3Key));
+                if (rows > 0) {
+                    listingCounterRepository.increment();
+                }
+                return rows;
+            });
+
+            if (updated == 0) {
+                // Every photo using this object was deleted while we were rendering
+                s3DeletionOutbox.enqueue(renditionKeys(s3Key).stream().map(original::withKey).toList());
+                logger.info("Photo {} was deleted during rendition, queued its renditions for deletion", photoId);
+            } else {
+                // The cached first page still points tiles at the originals
+                photoListingCache.invalidate();
+                logger.info("Generated {} renditions for photo ID: {}", renditions.size(), photoId);
+            }
+
+        } catch (Exception e) {
+            logger.warn("Failed to generate renditions for photo ID {} ({}): {}", photoId, original, e.getMessage());
+        }
+    }
+
+    private Map<ImageRendition, byte[]> render(InputStream source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            if (input == null) {
+                throw new IOException("Unable to open image stream");
+            }
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("No decoder available for image format");
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                // Forward-only lets the stream discard bytes as they are decoded
+                reader.setInput(input, true, true);
+
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxSourcePixels) {
+                    throw new IOException("Image of " + width + "x" + height + " exceeds the rendition pixel limit");
+                }
+
+                // Decode straight to roughly the largest rendition size instead of full resolution
+                int subsampling = Math.max(1, Math.max(width, height) / ImageRendition.largest().getMaxDimension());
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage decoded = reader.read(0, param);
+
+                Map<ImageRendition, byte[]> renditions = new EnumMap<>(ImageRendition.class);
+                for (ImageRendition rendition : ImageRendition.values()) {
+                    renditions.put(rendition, encodeJpeg(scale(decoded, rendition.getMaxDimension())));
+                }
+                return renditions;
+
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source, int maxDimension) {
+        double ratio = Math.min(1.0, (double) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG has no alpha channel, so flatten transparency onto white
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,235 @@
+package com.baaki.ecsapp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.UploadFileRequest;
+import software.amazon.awssdk.transfer.s3.progress.TransferListener;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking S3 data plane on the CRT-based S3AsyncClient, enabled with app.s3.client=async.
+ * Calls return as soon as the request is issued, so callers can overlap S3 I/O with database work;
+ * the CRT splits large bodies into parts and uploads them in parallel on its own event loop.
+ * Presigning stays on S3Service, since it is local CPU work.
+ * Experimental: the sync client remains the default until this mode measures faster on a real network path.
+ */
+@Service
+@ConditionalOnProperty(name = "app.s3.client", havingValue = "async")
+public class S3AsyncService {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3AsyncService.class);
+
+    // S3 DeleteObjects accepts at most 1000 keys per request
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+
+    @Autowired
+    private S3AsyncClient s3AsyncClient;
+
+    @Autowired
+    private S3TransferManager transferManager;
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private PresignedUrlCache presignedUrlCache;
+
+    @Autowired
+    private ObjectFileCache objectFileCache;
+
+    @Autowired
+    private S3Metrics s3Metrics;
+
+    private ExecutorService bodyReaderExecutor;
+
+    @PostConstruct
+    public void init() {
+        // Multipart request bodies are blocking streams; each upload gets a cheap virtual thread to read its body
+        this.bodyReaderExecutor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("s3-async-body-", 1).factory());
+        logger.info("S3AsyncService initialized");
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        bodyReaderExecutor.shutdown();
+    }
+
+    /**
+     * Upload a multipart request file and complete with where it was stored
+     */
+    public CompletableFuture<ObjectLocation> uploadFile(MultipartFile file, String description) {
+        String originalFilename = file.getOriginalFilename();
+        ObjectLocation location = s3Service.newLocation(originalFilename);
+
+        InputStream inputStream;
+        try {
+            inputStream = file.getInputStream();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .contentType(file.getContentType())
+                .contentLength(file.getSize())
+                .metadata(s3Service.objectMetadata(originalFilename, description))
+                .build();
+
+        return s3Metrics.recordAsync(S3Metrics.Operation.PUT, () -> s3AsyncClient.putObject(putObjectRequest,
+                        AsyncRequestBody.fromInputStream(inputStream, file.getSize(), bodyReaderExecutor)))
+                .whenComplete((response, error) -> closeQuietly(inputStream))
+                .thenApply(response -> {
+                    logger.info("Successfully uploaded file to S3 asynchronously at: {}", location);
+                    return location;
+                });
+    }
+
+    /**
+     * Upload a local file through the transfer manager, reporting bytes sent to the progress listener
+     */
+    public CompletableFuture<ObjectLocation> uploadFile(Path source, String originalFilename, String contentType,
+                                                        String description, LongConsumer progressListener) {
+        ObjectLocation location = s3Service.newLocation(originalFilename);
+
+        UploadFileRequest uploadFileRequest = UploadFileRequest.builder()
+                .putObjectRequest(PutObjectRequest.builder()
+                        .bucket(location.getBucket())
+                        .key(location.getKey())
+                        .contentType(contentType)
+                        .metadata(s3Service.objectMetadata(originalFilename, description))
+                        .build())
+                .source(source)
+                .addTransferListener(new TransferListener() {
+                    @Override
+                    public void bytesTransferred(Context.BytesTransferred context) {
+                        progressListener.accept(context.progressSnapshot().transferredBytes());
+                    }
+                })
+                .build();
+
+        return s3Metrics.recordAsync(S3Metrics.Operation.PUT,
+                        () -> transferManager.uploadFile(uploadFileRequest).completionFuture())
+                .thenApply(completed -> {
+                    logger.info("Successfully uploaded staged file to S3 asynchronously at: {}", location);
+                    return location;
+                });
+    }
+
+    /**
+     * Delete many files with concurrent multi-object deletes of up to 1000 keys each, per bucket.
+     * Completes with the objects that could not be deleted; an empty set means every object is gone.
+     */
+    public CompletableFuture<Set<ObjectLocation>> deleteFiles(Collection<ObjectLocation> locations) {
+        Set<ObjectLocation> failed = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+
+        for (Map.Entry<String, List<String>> entry : S3Service.groupByBucket(locations).entrySet()) {
+            String bucket = entry.getKey();
+            List<String> keys = entry.getValue();
+
+            for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_DELETE) {
+                List<String> batch = keys.subList(from, Math.min(from + MAX_KEYS_PER_DELETE, keys.size()));
+                batch.forEach(key -> {
+                    presignedUrlCache.invalidate(new ObjectLocation(bucket, key));
+                    objectFileCache.invalidate(new ObjectLocation(bucket, key));
+                });
+
+                DeleteObjectsRequest deleteObjectsRequest = DeleteObjectsRequest.builder()
+                        .bucket(bucket)
+                        .delete(Delete.builder()
+                                .objects(batch.stream()
+                                        .map(key -> ObjectIdentifier.builder().key(key).build())
+                                        .collect(Collectors.toList()))
+                                .quiet(true) // Only report failures
+                                .build())
+                        .build();
+
+                batches.add(s3Metrics.recordAsync(S3Metrics.Operation.DELETE_BATCH,
+                                () -> s3AsyncClient.deleteObjects(deleteObjectsRequest))
+                        .handle((response, error) -> {
+                            if (error != null) {
+                                logger.error("Failed to delete batch of {} files from S3 bucket {}: {}",
+                                        batch.size(), bucket, error.getMessage());
+                                batch.forEach(key -> failed.add(new ObjectLocation(bucket, key)));
+                                return null;
+                            }
+                            for (S3Error s3Error : response.errors()) {
+                                logger.warn("Failed to delete file from S3 at {}/{}: {} {}",
+                                        bucket, s3Error.key(), s3Error.code(), s3Error.message());
+                                failed.add(new ObjectLocation(bucket, s3Error.key()));
+                            }
+                            return null;
+                        }));
+            }
+        }
+
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    logger.info("Deleted {} of {} files from S3", locations.size() - failed.size(), locations.size());
+                    return failed;
+                });
+    }
+
+    /**
+     * Check if a file exists in S3
+     */
+    public CompletableFuture<Boolean> fileExists(ObjectLocation location) {
+        HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .build();
+
+        return s3Metrics.recordAsync(S3Metrics.Operation.HEAD, () -> s3AsyncClient.headObject(headObjectRequest))
+                .handle((response, error) -> {
+                    if (error == null) {
+                        return true;
+                    }
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    if (!(cause instanceof NoSuchKeyException)) {
+                        logger.error("Error checking if file exists in S3 at {}: {}", location, cause.getMessage());
+                    }
+                    return false;
+                });
+    }
+
+    private void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close upload stream: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.model.PendingS3Deletion;
+import com.baaki.ecsapp.repository.PendingS3DeletionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes S3 objects through a transactional outbox. Callers enqueue the objects in the same
+ * transaction that drops their last reference, so a delete request finishes at database speed and
+ * an object is queued if and only if the reference is really gone. A scheduled worker drains the
+ * queue with multi-object deletes and retries failures with exponential backoff until they succeed.
+ */
+@Service
+public class S3DeletionOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3DeletionOutbox.class);
+
+    @Value("${app.s3.deletion.enabled:true}")
+    private boolean enabled;
+
+    // One multi-object delete per bucket holds at most 1000 keys
+    @Value("${app.s3.deletion.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.s3.deletion.lease:PT5M}")
+    private Duration lease;
+
+    @Value("${app.s3.deletion.retry.initial-backoff:PT30S}")
+    private Duration initialBackoff;
+
+    @Value("${app.s3.deletion.retry.max-backoff:PT1H}")
+    private Duration maxBackoff;
+
+    @Autowired
+    private PendingS3DeletionRepository pendingS3DeletionRepository;
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicLong backlog = new AtomicLong();
+
+    private Counter deletedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("s3.deletion.outbox.backlog", backlog, AtomicLong::get)
+                .description("S3 objects waiting to be deleted, as of the last outbox drain")
+                .register(meterRegistry);
+        deletedCounter = processedCounter("deleted");
+        failedCounter = processedCounter("failed");
+    }
+
+    /**
+     * Queue objects for deletion. Joins the caller's transaction, so the objects are only queued if
+     * the change that released them commits.
+     */
+    @Transactional
+    public void enqueue(Collection<ObjectLocation> locations) {
+        if (locations.isEmpty()) {
+            return;
+        }
+        List<PendingS3Deletion> deletions = new ArrayList<>(locations.size());
+        for (ObjectLocation location : locations) {
+            deletions.add(new PendingS3Deletion(location.getBucket(), location.getKey()));
+        }
+        // Sequence ids are allocated in blocks, so this is sent as one JDBC batch
+        pendingS3DeletionRepository.saveAll(deletions);
+    }
+
+    /**
+     * Drain every due deletion, one batch at a time. Failures are rescheduled, not retried in this run.
+     */
+    @Scheduled(fixedDelayString = "${app.s3.deletion.poll-interval:PT5S}",
+            initialDelayString = "${app.s3.deletion.poll-interval:PT5S}")
+    public void drain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int claimed;
+            do {
+                claimed = drainBatch();
+            } while (claimed == batchSize);
+            backlog.set(pendingS3DeletionRepository.count());
+        } catch (RuntimeException e) {
+            logger.error("Failed to drain the S3 deletion outbox: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Claim one batch, delete it from S3 and settle it. Claiming and settling are two short
+     * transactions; the S3 call runs between them, holding no connection. A worker that dies after
+     * claiming leaves the rows leased, and they become due again once the lease runs out.
+     *
+     * @return the number of deletions claimed
+     */
+    int drainBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<PendingS3Deletion> claimed = transactionTemplate.execute(status -> {
+            List<PendingS3Deletion> due = pendingS3DeletionRepository.lockDue(now, batchSize);
+            if (!due.isEmpty()) {
+                pendingS3DeletionRepository.postpone(due.stream().map(PendingS3Deletion::getId).toList(), now.plus(lease));
+            }
+            return due;
+        });
+        if (claimed == null || claimed.isEmpty()) {
+            return 0;
+        }
+
+        List<ObjectLocation> locations = claimed.stream()
+                .map(deletion -> new ObjectLocation(deletion.getBucket(), deletion.getS3Key()))
+                .toList();
+        Set<ObjectLocation> failed = s3Service.deleteFiles(locations);
+
+        List<Long> deleted = new ArrayList<>();
+        // Failures back off by attempt count, so each distinct count is rescheduled with one UPDATE
+        Map<Integer, List<Long>> failedByAttempts = new TreeMap<>();
+        for (int i = 0; i < claimed.size(); i++) {
+            PendingS3Deletion deletion = claimed.get(i);
+            if (failed.contains(locations.get(i))) {
+                failedByAttempts.computeIfAbsent(deletion.getAttempts(), attempts -> new ArrayList<>()).add(deletion.getId());
+            } else {
+                deleted.add(deletion.getId());
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!deleted.isEmpty()) {
+                pendingS3DeletionRepository.deleteAllByIdInBatch(deleted);
+            }
+            LocalDateTime settledAt = LocalDateTime.now();
+            failedByAttempts.forEach((attempts, ids) ->
+                    pendingS3DeletionRepository.recordFailure(ids, settledAt.plus(backoff(attempts))));
+        });
+
+        deletedCounter.increment(deleted.size());
+        failedCounter.increment(failed.size());
+        if (!failed.isEmpty()) {
+            logger.warn("{} of {} S3 deletes failed and will be retried", failed.size(), claimed.size());
+        }
+        logger.debug("Drained {} S3 deletions from the outbox", deleted.size());
+        return claimed.size();
+    }
+
+    /**
+     * Delay before the next attempt after the given number of failed ones: doubles from the initial
+     * backoff, capped at the maximum
+     */
+    private Duration backoff(int previousAttempts) {
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(previousAttempts, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    private Counter processedCounter(String outcome) {
+        return Counter.builder("s3.deletion.outbox.processed")
+                .description("S3 deletions attempted by the outbox worker")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
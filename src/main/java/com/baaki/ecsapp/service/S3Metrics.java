@@ -0,0 +1,90 @@
+package com.baaki.ecsapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency timers for S3 calls, published as s3.requests tagged by operation and outcome.
+ * Every timer is registered up front, so recording a call is a clock read and a histogram
+ * increment with no registry lookup on the request path.
+ */
+@Component
+public class S3Metrics {
+
+    public enum Operation {
+        PUT, CREATE_MULTIPART, PUT_PART, COMPLETE_MULTIPART, GET, HEAD, DELETE, DELETE_BATCH, LIST, PRESIGN
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<Operation, Timer> successTimers = new EnumMap<>(Operation.class);
+    private final Map<Operation, Timer> errorTimers = new EnumMap<>(Operation.class);
+    private final Map<Operation, Timer> notFoundTimers = new EnumMap<>(Operation.class);
+
+    @PostConstruct
+    public void init() {
+        for (Operation operation : Operation.values()) {
+            successTimers.put(operation, timer(operation, "success"));
+            errorTimers.put(operation, timer(operation, "error"));
+            notFoundTimers.put(operation, timer(operation, "not_found"));
+        }
+    }
+
+    /**
+     * Run an S3 call and record its latency; a call that throws is recorded with outcome=error,
+     * except a missing key, which is an expected answer to GET and HEAD
+     */
+    public <T> T record(Operation operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            successTimers.get(operation).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (NoSuchKeyException e) {
+            notFoundTimers.get(operation).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        } catch (RuntimeException e) {
+            errorTimers.get(operation).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    /**
+     * Record the latency of an asynchronous S3 call when its future completes
+     */
+    public <T> CompletableFuture<T> recordAsync(Operation operation, Supplier<CompletableFuture<T>> call) {
+        long start = System.nanoTime();
+        return call.get().whenComplete((result, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            Map<Operation, Timer> timers = cause == null ? successTimers
+                    : cause instanceof NoSuchKeyException ? notFoundTimers : errorTimers;
+            timers.get(operation).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    private Timer timer(Operation operation, String outcome) {
+        return Timer.builder("s3.requests")
+                .description("Latency of S3 API calls")
+                .tag("operation", operation.name().toLowerCase(Locale.ROOT))
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                // Presigning is local and fast; a full part upload can take tens of seconds
+                .minimumExpectedValue(Duration.ofNanos(10_000))
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(meterRegistry);
+    }
+}
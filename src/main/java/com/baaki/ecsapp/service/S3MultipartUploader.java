@@ -0,0 +1,363 @@
+package com.baaki.ecsapp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams uploads of any size to S3 using multipart upload.
+ * Parts are read into pooled direct buffers and uploaded concurrently; a body that fits
+ * in one part is sent with a single PUT. Failed uploads are aborted so S3 discards the parts.
+ * An upload is only admitted once it has reserved a buffer, and holds at most
+ * app.s3.multipart.max-buffers-per-upload, so a few large or slow uploads cannot starve the rest.
+ */
+@Component
+public class S3MultipartUploader {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3MultipartUploader.class);
+
+    // S3 rejects non-final parts smaller than 5MB
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    @Value("${app.s3.multipart.part-size:8MB}")
+    private DataSize partSize;
+
+    @Value("${app.s3.multipart.buffer-count:8}")
+    private int bufferCount;
+
+    @Value("${app.s3.multipart.concurrency:4}")
+    private int concurrency;
+
+    // One buffer being filled, the rest in flight; more are only taken while the pool has spare ones
+    @Value("${app.s3.multipart.max-buffers-per-upload:3}")
+    private int maxBuffersPerUpload;
+
+    // How long a new upload waits for a buffer before it is turned away with ByteBufferPool.ExhaustedException
+    @Value("${app.s3.multipart.admission-wait:PT1S}")
+    private Duration admissionWait;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private S3Metrics s3Metrics;
+
+    private ByteBufferPool bufferPool;
+    private ExecutorService partExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (partSize.toBytes() < MIN_PART_SIZE) {
+            throw new IllegalStateException("app.s3.multipart.part-size must be at least 5MB");
+        }
+        if (maxBuffersPerUpload < 1 || maxBuffersPerUpload > bufferCount) {
+            throw new IllegalStateException("app.s3.multipart.max-buffers-per-upload must be between 1 and buffer-count");
+        }
+        this.bufferPool = new ByteBufferPool(bufferCount, Math.toIntExact(partSize.toBytes()));
+
+        this.partExecutor = Executors.newFixedThreadPool(concurrency,
+                WorkerThreads.factory("s3-part-upload", virtualThreads, true));
+
+        logger.info("Multipart uploader initialized with part size: {}, buffers: {}, per upload: {}, concurrency: {}",
+                partSize, bufferCount, maxBuffersPerUpload, concurrency);
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        if (partExecutor != null) {
+            partExecutor.shutdown();
+        }
+    }
+
+    public long getPartSize() {
+        return partSize.toBytes();
+    }
+
+    /**
+     * Upload the stream to the given key, reading it to the end
+     *
+     * @throws ByteBufferPool.ExhaustedException if every buffer stays reserved for the admission wait;
+     *                                           nothing has been read from the stream
+     */
+    public void upload(String bucket, String key, InputStream inputStream, String contentType,
+                       Map<String, String> metadata) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(inputStream);
+
+        try (ByteBufferPool.Reservation reservation = bufferPool.reserve(admissionWait.toMillis(), TimeUnit.MILLISECONDS)) {
+            ByteBuffer first = reservation.acquire();
+            boolean firstHandedOff = false;
+            try {
+                boolean endOfStream = fill(channel, first);
+                if (endOfStream) {
+                    // Small body: one PUT is cheaper than create/upload/complete
+                    first.flip();
+                    putSingle(bucket, key, first, contentType, metadata);
+                    return;
+                }
+
+                firstHandedOff = true;
+                uploadInParts(bucket, key, channel, reservation, first, contentType, metadata);
+            } finally {
+                if (!firstHandedOff) {
+                    bufferPool.release(first);
+                }
+            }
+        }
+    }
+
+    public ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    private void putSingle(String bucket, String key, ByteBuffer body, String contentType,
+                           Map<String, String> metadata) throws IOException {
+        try {
+            PutObjectRequest request = PutObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .contentType(contentType)
+                    .contentLength((long) body.remaining())
+                    .metadata(metadata)
+                    .build();
+
+            s3Metrics.record(S3Metrics.Operation.PUT, () -> s3Client.putObject(request, requestBody(body, contentType)));
+        } catch (Exception e) {
+            logger.error("Failed to upload file to S3: {}", e.getMessage(), e);
+            throw new IOException("Failed to upload file to S3", e);
+        }
+    }
+
+    /**
+     * Every part's buffer is back in the pool when this returns or throws, so the caller can close
+     * the reservation
+     */
+    private void uploadInParts(String bucket, String key, ReadableByteChannel channel, ByteBufferPool.Reservation reservation,
+                               ByteBuffer first, String contentType, Map<String, String> metadata) throws IOException {
+        String uploadId;
+        try {
+            CreateMultipartUploadRequest request = CreateMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .contentType(contentType)
+                    .metadata(metadata)
+                    .checksumAlgorithm(ChecksumAlgorithm.CRC32)
+                    .build();
+            uploadId = s3Metrics.record(S3Metrics.Operation.CREATE_MULTIPART,
+                    () -> s3Client.createMultipartUpload(request)).uploadId();
+        } catch (Exception e) {
+            bufferPool.release(first);
+            logger.error("Failed to start multipart upload to S3: {}", e.getMessage(), e);
+            throw new IOException("Failed to upload file to S3", e);
+        }
+
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        try {
+            ByteBuffer buffer = first;
+            boolean endOfStream = false;
+            int partNumber = 1;
+
+            while (true) {
+                buffer.flip();
+                if (buffer.hasRemaining() || partNumber == 1) {
+                    parts.add(submitPart(bucket, key, uploadId, partNumber++, buffer, contentType));
+                } else {
+                    bufferPool.release(buffer);
+                }
+                if (endOfStream) {
+                    break;
+                }
+
+                // Stop reading as soon as any part has failed
+                failFast(parts);
+
+                // Blocks while every buffer this upload may hold is in flight, so a fast client cannot outrun S3
+                awaitBuffer(reservation, parts);
+                buffer = reservation.acquire();
+                try {
+                    endOfStream = fill(channel, buffer);
+                } catch (IOException e) {
+                    bufferPool.release(buffer);
+                    throw e;
+                }
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completedParts.add(part.join());
+            }
+            completedParts.sort(Comparator.comparing(CompletedPart::partNumber));
+
+            CompleteMultipartUploadRequest request = CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build();
+            s3Metrics.record(S3Metrics.Operation.COMPLETE_MULTIPART, () -> s3Client.completeMultipartUpload(request));
+
+            logger.debug("Completed multipart upload of {} parts for S3 key: {}", completedParts.size(), key);
+
+        } catch (IOException e) {
+            // Reading the source failed (client went away, size limit hit)
+            abort(bucket, key, uploadId, parts);
+            throw e;
+        } catch (Exception e) {
+            abort(bucket, key, uploadId, parts);
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            logger.error("Multipart upload to S3 failed for key {}: {}", key, cause.getMessage(), cause);
+            throw new IOException("Failed to upload file to S3", cause);
+        }
+    }
+
+    private CompletableFuture<CompletedPart> submitPart(String bucket, String key, String uploadId, int partNumber,
+                                                        ByteBuffer buffer, String contentType) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    UploadPartRequest request = UploadPartRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .contentLength((long) buffer.remaining())
+                            .checksumAlgorithm(ChecksumAlgorithm.CRC32)
+                            .build();
+                    UploadPartResponse response = s3Metrics.record(S3Metrics.Operation.PUT_PART,
+                            () -> s3Client.uploadPart(request, requestBody(buffer, contentType)));
+
+                    return CompletedPart.builder()
+                            .partNumber(partNumber)
+                            .eTag(response.eTag())
+                            .checksumCRC32(response.checksumCRC32())
+                            .build();
+                } finally {
+                    bufferPool.release(buffer);
+                }
+            }, partExecutor);
+        } catch (RejectedExecutionException e) {
+            // The task never ran, so its finally block will not return the buffer
+            bufferPool.release(buffer);
+            throw e;
+        }
+    }
+
+    /**
+     * Return once the upload holds fewer buffers than it reserved: at once when parts in flight leave
+     * one free or the pool has a spare one, otherwise when one of its own parts finishes. Never waits
+     * on other uploads. A part that fails while waited on is rethrown.
+     */
+    private void awaitBuffer(ByteBufferPool.Reservation reservation, List<CompletableFuture<CompletedPart>> parts) {
+        // A finished part has already returned its buffer
+        List<CompletableFuture<CompletedPart>> inFlight = parts.stream().filter(part -> !part.isDone()).toList();
+        if (inFlight.size() < reservation.getReserved() || reservation.tryGrow(maxBuffersPerUpload)) {
+            return;
+        }
+        CompletableFuture.anyOf(inFlight.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private void failFast(List<CompletableFuture<CompletedPart>> parts) {
+        for (CompletableFuture<CompletedPart> part : parts) {
+            if (part.isCompletedExceptionally()) {
+                part.join();
+            }
+        }
+    }
+
+    private void abort(String bucket, String key, String uploadId, List<CompletableFuture<CompletedPart>> parts) {
+        // Let in-flight parts settle first; a part that lands after the abort would be billed until lifecycle cleanup
+        for (CompletableFuture<CompletedPart> part : parts) {
+            try {
+                part.join();
+            } catch (Exception ignored) {
+                // Already failing; the abort below discards whatever was stored
+            }
+        }
+
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+            logger.info("Aborted multipart upload for S3 key: {}", key);
+        } catch (Exception e) {
+            logger.error("Failed to abort multipart upload {} for S3 key {}: {}", uploadId, key, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read until the buffer is full or the stream ends; returns true at end of stream
+     */
+    private boolean fill(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Body that replays the buffer on every attempt without copying it onto the heap
+     */
+    private RequestBody requestBody(ByteBuffer buffer, String contentType) {
+        return RequestBody.fromContentProvider(
+                () -> new ByteBufferInputStream(buffer.duplicate()), buffer.remaining(), contentType);
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
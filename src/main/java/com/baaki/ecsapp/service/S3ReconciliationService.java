@@ -0,0 +1,290 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.ObjectReference;
+import com.baaki.ecsapp.model.ReconciliationCheckpoint;
+import com.baaki.ecsapp.repository.ObjectReferenceRepository;
+import com.baaki.ecsapp.repository.ReconciliationCheckpointRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares each bucket with the database and reports orphaned objects, which no row references, and
+ * dangling references, rows whose object is missing. ListObjectsV2 pages are merge-joined against the
+ * referencing columns read in the same key order, so memory stays at one page per side whatever the
+ * size of the bucket. Progress is checkpointed after every page, and an interrupted run resumes there.
+ *
+ * Objects and rows younger than the grace period, measured from the start of the run, are left alone:
+ * uploads, renditions and deletes still in flight would otherwise be reported. With
+ * app.reconciliation.delete-orphans, orphans are queued on the deletion outbox in the same transaction
+ * as the checkpoint that passes them. Dangling references are only ever reported.
+ */
+@Service
+public class S3ReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3ReconciliationService.class);
+
+    @Value("${app.s3.bucket-name}")
+    private String defaultBucket;
+
+    @Value("${app.reconciliation.grace-period:PT24H}")
+    private Duration gracePeriod;
+
+    @Value("${app.reconciliation.delete-orphans:false}")
+    private boolean deleteOrphans;
+
+    @Value("${app.reconciliation.page-size:1000}")
+    private int pageSize;
+
+    @Value("${app.reconciliation.lease:PT10M}")
+    private Duration lease;
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private S3DeletionOutbox s3DeletionOutbox;
+
+    @Autowired
+    private ObjectReferenceRepository objectReferenceRepository;
+
+    @Autowired
+    private ReconciliationCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Reconcile every bucket in turn. Disabled unless app.reconciliation.cron is set.
+     */
+    @Scheduled(cron = "${app.reconciliation.cron:-}")
+    public void reconcileAll() {
+        for (String bucket : s3Service.getBuckets()) {
+            try {
+                reconcile(bucket);
+            } catch (RuntimeException e) {
+                logger.error("Reconciliation of bucket {} failed, it resumes from its checkpoint on the next run: {}",
+                        bucket, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Reconcile one bucket, resuming an unfinished run. Returns the checkpoint of the completed run,
+     * or null when another instance is reconciling the bucket.
+     */
+    public ReconciliationCheckpoint reconcile(String bucket) {
+        checkpointRepository.insertIfAbsent(bucket);
+        LocalDateTime now = LocalDateTime.now();
+        if (checkpointRepository.acquireLease(bucket, now, now.plus(lease)) == 0) {
+            logger.info("Bucket {} is being reconciled by another instance, skipping", bucket);
+            return null;
+        }
+
+        ReconciliationCheckpoint checkpoint = checkpointRepository.findById(bucket).orElseThrow();
+        if (checkpoint.getStartedAt() == null || checkpoint.getCompletedAt() != null) {
+            checkpoint.setStartedAt(now);
+            checkpoint.setCompletedAt(null);
+            checkpoint.setPosition(null);
+            checkpoint.setObjectsScanned(0L);
+            checkpoint.setOrphanedObjects(0L);
+            checkpoint.setDanglingReferences(0L);
+            logger.info("Starting reconciliation of bucket {}", bucket);
+        } else {
+            logger.info("Resuming reconciliation of bucket {} after {}", bucket, checkpoint.getPosition());
+        }
+        try {
+            merge(bucket, checkpoint);
+        } catch (RuntimeException e) {
+            // Progress up to the last saved page is kept; let the next run resume without waiting out the lease
+            checkpointRepository.releaseLease(bucket);
+            throw e;
+        }
+
+        logger.info("Reconciled bucket {}: {} objects, {} orphaned{}, {} dangling references",
+                bucket, checkpoint.getObjectsScanned(), checkpoint.getOrphanedObjects(),
+                deleteOrphans ? " and queued for deletion" : "", checkpoint.getDanglingReferences());
+        return checkpoint;
+    }
+
+    /**
+     * Merge-join the bucket listing with the references, saving the checkpoint after every page
+     */
+    private void merge(String bucket, ReconciliationCheckpoint checkpoint) {
+        LocalDateTime cutoff = checkpoint.getStartedAt().minus(gracePeriod);
+        ReferenceCursor references = new ReferenceCursor(bucket, checkpoint.getPosition());
+
+        String continuationToken = null;
+        ListObjectsV2Response page;
+        do {
+            page = s3Service.listObjects(bucket, checkpoint.getPosition(), continuationToken);
+            List<ObjectLocation> orphans = new ArrayList<>();
+            for (S3Object object : page.contents()) {
+                // Rows that sort before this object reference keys that are not in the bucket
+                while (references.hasNext() && compareKeys(references.peek().getKey(), object.key()) < 0) {
+                    reportIfDangling(bucket, references.next(), checkpoint, cutoff);
+                }
+                boolean referenced = false;
+                while (references.hasNext() && references.peek().getKey().equals(object.key())) {
+                    references.next();
+                    referenced = true;
+                }
+                if (!referenced && LocalDateTime.ofInstant(object.lastModified(), ZoneId.systemDefault()).isBefore(cutoff)) {
+                    logger.info("Orphaned object {}/{}: {} bytes, last modified {}",
+                            bucket, object.key(), object.size(), object.lastModified());
+                    orphans.add(new ObjectLocation(bucket, object.key()));
+                }
+                checkpoint.setPosition(object.key());
+            }
+            checkpoint.setObjectsScanned(checkpoint.getObjectsScanned() + page.contents().size());
+            checkpoint.setOrphanedObjects(checkpoint.getOrphanedObjects() + orphans.size());
+            save(checkpoint, orphans);
+            continuationToken = page.nextContinuationToken();
+        } while (Boolean.TRUE.equals(page.isTruncated()));
+
+        // Whatever is left sorts after the last object in the bucket
+        while (references.hasNext()) {
+            reportIfDangling(bucket, references.next(), checkpoint, cutoff);
+        }
+        checkpoint.setCompletedAt(LocalDateTime.now());
+        checkpoint.setLeaseUntil(null);
+        save(checkpoint, List.of());
+    }
+
+    private void reportIfDangling(String bucket, ObjectReference reference, ReconciliationCheckpoint checkpoint,
+                                  LocalDateTime cutoff) {
+        // A queued deletion of an object that is already gone is not a problem
+        if (reference.getSource() == ObjectReference.Source.PENDING_DELETION || !reference.getCreatedAt().isBefore(cutoff)) {
+            return;
+        }
+        logger.warn("Dangling reference, {} {} points at missing object {}/{}",
+                reference.getSource(), reference.getRowId(), bucket, reference.getKey());
+        checkpoint.setDanglingReferences(checkpoint.getDanglingReferences() + 1);
+    }
+
+    private void save(ReconciliationCheckpoint checkpoint, List<ObjectLocation> orphans) {
+        if (checkpoint.getCompletedAt() == null) {
+            checkpoint.setLeaseUntil(LocalDateTime.now().plus(lease));
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            checkpointRepository.save(checkpoint);
+            if (deleteOrphans) {
+                s3DeletionOutbox.enqueue(orphans);
+            }
+        });
+    }
+
+    /**
+     * Order keys as S3 lists them, by their UTF-8 bytes. That is code point order, which differs from
+     * String.compareTo for characters outside the Basic Multilingual Plane.
+     */
+    static int compareKeys(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int codePointA = a.codePointAt(i);
+            int codePointB = b.codePointAt(j);
+            if (codePointA != codePointB) {
+                return Integer.compare(codePointA, codePointB);
+            }
+            i += Character.charCount(codePointA);
+            j += Character.charCount(codePointB);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * Every referencing column of a bucket merged into one stream in key order, read a page per column
+     * at a time
+     */
+    private final class ReferenceCursor {
+
+        private final List<ColumnCursor> columns = new ArrayList<>();
+
+        ReferenceCursor(String bucket, String afterKey) {
+            for (ObjectReference.Source source : ObjectReference.Source.values()) {
+                columns.add(new ColumnCursor(source, bucket, afterKey));
+            }
+        }
+
+        boolean hasNext() {
+            return lowest() != null;
+        }
+
+        ObjectReference peek() {
+            return lowest().peek();
+        }
+
+        ObjectReference next() {
+            return lowest().next();
+        }
+
+        private ColumnCursor lowest() {
+            ColumnCursor lowest = null;
+            for (ColumnCursor column : columns) {
+                if (column.peek() != null
+                        && (lowest == null || compareKeys(column.peek().getKey(), lowest.peek().getKey()) < 0)) {
+                    lowest = column;
+                }
+            }
+            return lowest;
+        }
+    }
+
+    /**
+     * One column's references in a bucket. Pages hold rows of every bucket, so a page can yield fewer
+     * references than it read, or none.
+     */
+    private final class ColumnCursor {
+
+        private final ObjectReference.Source source;
+        private final String bucket;
+        private String afterKey;
+        private String afterRowId;
+        private List<ObjectReference> page = List.of();
+        private int index;
+        private boolean exhausted;
+
+        ColumnCursor(ObjectReference.Source source, String bucket, String afterKey) {
+            this.source = source;
+            this.bucket = bucket;
+            this.afterKey = afterKey != null ? afterKey : "";
+        }
+
+        ObjectReference peek() {
+            while (index == page.size() && !exhausted) {
+                List<ObjectReference> rows = objectReferenceRepository.findAfter(source, afterKey, afterRowId, pageSize);
+                exhausted = rows.size() < pageSize;
+                if (!rows.isEmpty()) {
+                    ObjectReference last = rows.get(rows.size() - 1);
+                    afterKey = last.getKey();
+                    afterRowId = last.getRowId();
+                }
+                // Rows without a recorded bucket are in app.s3.bucket-name
+                page = rows.stream()
+                        .filter(row -> bucket.equals(row.getBucket() != null ? row.getBucket() : defaultBucket))
+                        .toList();
+                index = 0;
+            }
+            return index < page.size() ? page.get(index) : null;
+        }
+
+        ObjectReference next() {
+            ObjectReference reference = peek();
+            index++;
+            return reference;
+        }
+    }
+}
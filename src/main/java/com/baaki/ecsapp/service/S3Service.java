@@ -2,88 +2,160 @@ package com.baaki.ecsapp.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
 import jakarta.annotation.PostConstruct;
-import jakarta.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * Blocking S3 data plane. New objects are named by the configured ObjectKeyStrategy and spread over
+ * app.s3.bucket-names when set; existing objects are addressed by the bucket recorded with them,
+ * or app.s3.bucket-name for rows written before buckets were recorded.
+ */
 @Service
 public class S3Service {
 
     private static final Logger logger = LoggerFactory.getLogger(S3Service.class);
 
+    // S3 DeleteObjects accepts at most 1000 keys per request
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+
+    // Bucket of objects stored without a recorded bucket, and of new ones unless bucket-names is set
     @Value("${app.s3.bucket-name}")
     private String bucketName;
 
+    @Value("${app.s3.bucket-names:}")
+    private List<String> bucketNames;
+
     @Value("${app.aws.region}")
     private String awsRegion;
 
+    @Autowired
     private S3Client s3Client;
+
+    @Autowired
     private S3Presigner s3Presigner;
 
+    @Autowired
+    private PresignedUrlCache presignedUrlCache;
+
+    @Autowired
+    private ObjectFileCache objectFileCache;
+
+    @Autowired
+    private S3MultipartUploader multipartUploader;
+
+    @Autowired
+    private S3Metrics s3Metrics;
+
+    @Autowired
+    private ObjectKeyStrategy keyStrategy;
+
+    private List<String> writeBuckets;
+
     @PostConstruct
     public void init() {
-        Region region = Region.of(awsRegion);
-        this.s3Client = S3Client.builder()
-                .region(region)
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+        this.writeBuckets = bucketNames.stream()
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .distinct()
+                .toList();
+        if (writeBuckets.isEmpty()) {
+            this.writeBuckets = List.of(bucketName);
+        }
+        logger.info("S3Service initialized with bucket: {} in region: {}, writing new objects to: {}, key strategy: {}",
+                bucketName, awsRegion, writeBuckets, keyStrategy.getClass().getSimpleName());
+    }
 
-        this.s3Presigner = S3Presigner.builder()
-                .region(region)
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+    /**
+     * Name a new original and pick its bucket. The bucket follows from a hash of the key,
+     * so uploads spread evenly over the configured buckets.
+     */
+    public ObjectLocation newLocation(String originalFilename) {
+        String s3Key = keyStrategy.newKey(originalFilename);
+        return new ObjectLocation(writeBuckets.get(Math.floorMod(s3Key.hashCode(), writeBuckets.size())), s3Key);
+    }
 
-        logger.info("S3Service initialized with bucket: {} in region: {}", bucketName, awsRegion);
+    /**
+     * Locate a stored object from its recorded bucket, which is null for objects stored before
+     * buckets were recorded; those all live in app.s3.bucket-name
+     */
+    public ObjectLocation location(String bucket, String s3Key) {
+        return new ObjectLocation(bucket != null ? bucket : bucketName, s3Key);
     }
 
-    @PreDestroy
-    public void cleanup() {
-        if (s3Client != null) {
-            s3Client.close();
-        }
-        if (s3Presigner != null) {
-            s3Presigner.close();
-        }
+    /**
+     * Every bucket objects are written to: app.s3.bucket-name and the buckets new uploads are spread over
+     */
+    public Set<String> getBuckets() {
+        Set<String> buckets = new LinkedHashSet<>();
+        buckets.add(bucketName);
+        buckets.addAll(writeBuckets);
+        return buckets;
     }
 
     /**
-     * Upload a file to S3 and return the S3 key
+     * Whether a key and bucket echoed back by a client could have come from newLocation
      */
-    public String uploadFile(MultipartFile file, String description) throws IOException {
+    public boolean isNewLocation(ObjectLocation location) {
+        return writeBuckets.contains(location.getBucket()) && keyStrategy.isGeneratedKey(location.getKey());
+    }
+
+    /**
+     * Upload a file to S3 and return where it was stored.
+     * Files larger than one multipart part are streamed in parts instead of a single PUT.
+     */
+    public ObjectLocation uploadFile(MultipartFile file, String description) throws IOException {
         String originalFilename = file.getOriginalFilename();
-        String fileExtension = getFileExtension(originalFilename);
-        String s3Key = "photos/" + UUID.randomUUID().toString() + fileExtension;
+        ObjectLocation location = newLocation(originalFilename);
+
+        if (file.getSize() > multipartUploader.getPartSize()) {
+            try (InputStream inputStream = file.getInputStream()) {
+                multipartUploader.upload(location.getBucket(), location.getKey(), inputStream, file.getContentType(),
+                        objectMetadata(originalFilename, description));
+            }
+            logger.info("Successfully uploaded file to S3 in parts at: {}", location);
+            return location;
+        }
 
         try {
             PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(s3Key)
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
                     .contentType(file.getContentType())
                     .contentLength(file.getSize())
-                    .metadata(java.util.Map.of(
-                            "original-filename", originalFilename,
-                            "description", description != null ? description : "No description"
-                    ))
+                    .metadata(objectMetadata(originalFilename, description))
                     .build();
 
-            s3Client.putObject(putObjectRequest,
-                    RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
+            RequestBody requestBody = RequestBody.fromInputStream(file.getInputStream(), file.getSize());
+            s3Metrics.record(S3Metrics.Operation.PUT, () -> s3Client.putObject(putObjectRequest, requestBody));
 
-            logger.info("Successfully uploaded file to S3 with key: {}", s3Key);
-            return s3Key;
+            logger.info("Successfully uploaded file to S3 at: {}", location);
+            return location;
 
         } catch (Exception e) {
             logger.error("Failed to upload file to S3: {}", e.getMessage(), e);
@@ -92,76 +164,300 @@ public class S3Service {
     }
 
     /**
-     * Generate a presigned URL for viewing the image (valid for 2 days)
+     * Stream an upload of unknown length to S3 and return where it was stored.
+     * Heap use stays flat: the body is read into pooled off-heap part buffers.
+     */
+    public ObjectLocation uploadStream(InputStream inputStream, String originalFilename, String contentType,
+                                       String description) throws IOException {
+        ObjectLocation location = newLocation(originalFilename);
+        multipartUploader.upload(location.getBucket(), location.getKey(), inputStream, contentType,
+                objectMetadata(originalFilename, description));
+
+        logger.info("Successfully streamed file to S3 at: {}", location);
+        return location;
+    }
+
+    /**
+     * Store a small, fully buffered object such as a generated rendition
+     */
+    public void putBytes(ObjectLocation location, byte[] content, String contentType) throws IOException {
+        try {
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
+                    .contentType(contentType)
+                    .contentLength((long) content.length)
+                    .build();
+
+            s3Metrics.record(S3Metrics.Operation.PUT,
+                    () -> s3Client.putObject(putObjectRequest, RequestBody.fromBytes(content)));
+            logger.debug("Stored {} bytes in S3 at: {}", content.length, location);
+
+        } catch (Exception e) {
+            logger.error("Failed to store object in S3 at {}: {}", location, e.getMessage(), e);
+            throw new IOException("Failed to store object in S3", e);
+        }
+    }
+
+    /**
+     * Open a streaming read of an object; the caller must close the stream
+     */
+    public InputStream openFile(ObjectLocation location) throws IOException {
+        try {
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
+                    .build();
+
+            // Times the request and response headers; the body is streamed by the caller
+            return s3Metrics.record(S3Metrics.Operation.GET, () -> s3Client.getObject(getObjectRequest));
+
+        } catch (Exception e) {
+            logger.error("Failed to read file from S3 at {}: {}", location, e.getMessage(), e);
+            throw new IOException("Failed to read file from S3", e);
+        }
+    }
+
+    /**
+     * Open an object from the local disk cache, downloading it on a miss; concurrent misses for one
+     * object share a single GET. The caller must close the content.
+     */
+    public ObjectContent openCached(ObjectLocation location) throws IOException {
+        return objectFileCache.open(location, this::downloadFile);
+    }
+
+    private ObjectFile downloadFile(ObjectLocation location, Path file) throws IOException {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .build();
+
+        GetObjectResponse response = s3Metrics.record(S3Metrics.Operation.GET,
+                () -> s3Client.getObject(getObjectRequest, ResponseTransformer.toFile(file)));
+        return new ObjectFile(file, Files.size(file), response.contentType());
+    }
+
+    /**
+     * Read at most the first maxBytes of an object with a ranged GET
+     */
+    public byte[] readHead(ObjectLocation location, int maxBytes) throws IOException {
+        try {
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
+                    .range("bytes=0-" + (maxBytes - 1))
+                    .build();
+
+            return s3Metrics.record(S3Metrics.Operation.GET,
+                    () -> s3Client.getObjectAsBytes(getObjectRequest)).asByteArray();
+
+        } catch (Exception e) {
+            logger.error("Failed to read the head of {} from S3: {}", location, e.getMessage(), e);
+            throw new IOException("Failed to read file from S3", e);
+        }
+    }
+
+    /**
+     * Get a presigned URL for viewing the image (valid for 2 days by default).
+     * URLs are served from the presigned URL cache until shortly before they expire.
      */
-    public String generatePresignedUrl(String s3Key) {
+    public String generatePresignedUrl(ObjectLocation location) {
+        return presignedUrlCache.get(location, this::signGetObjectUrl);
+    }
+
+    private String signGetObjectUrl(ObjectLocation location) {
         try {
             GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(s3Key)
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
                     .build();
 
             GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
-                    .signatureDuration(Duration.ofDays(2)) // Valid for 2 days as per requirements
+                    .signatureDuration(presignedUrlCache.getSignatureDuration()) // 2 days by default, as per requirements
                     .getObjectRequest(getObjectRequest)
                     .build();
 
-            String presignedUrl = s3Presigner.presignGetObject(presignRequest).url().toString();
-            logger.debug("Generated presigned URL for S3 key: {}", s3Key);
+            String presignedUrl = s3Metrics.record(S3Metrics.Operation.PRESIGN,
+                    () -> s3Presigner.presignGetObject(presignRequest)).url().toString();
+            logger.debug("Generated presigned URL for: {}", location);
 
             return presignedUrl;
 
         } catch (Exception e) {
-            logger.error("Failed to generate presigned URL for S3 key {}: {}", s3Key, e.getMessage(), e);
+            logger.error("Failed to generate presigned URL for {}: {}", location, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Presign a single PUT that a browser can send straight to S3.
+     * Content-Type, Content-Length and, when given, the base64 SHA-256 checksum are signed,
+     * so S3 rejects any body that does not match them.
+     */
+    public PresignedPutObjectRequest presignUpload(ObjectLocation location, String contentType, long contentLength,
+                                                   String checksumSha256, Duration signatureDuration) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .contentType(contentType)
+                .contentLength(contentLength)
+                .checksumSHA256(checksumSha256)
+                .build();
+
+        PutObjectPresignRequest presignRequest = PutObjectPresignRequest.builder()
+                .signatureDuration(signatureDuration)
+                .putObjectRequest(putObjectRequest)
+                .build();
+
+        PresignedPutObjectRequest presigned = s3Metrics.record(S3Metrics.Operation.PRESIGN,
+                () -> s3Presigner.presignPutObject(presignRequest));
+        logger.debug("Generated presigned upload URL for: {}", location);
+        return presigned;
+    }
+
+    /**
+     * Read an object's size, content type and SHA-256 checksum (present only if it was uploaded with one).
+     * Returns null when the object does not exist.
+     */
+    public HeadObjectResponse describeFile(ObjectLocation location) throws IOException {
+        try {
+            HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
+                    .checksumMode(ChecksumMode.ENABLED)
+                    .build();
+
+            return s3Metrics.record(S3Metrics.Operation.HEAD, () -> s3Client.headObject(headObjectRequest));
+
+        } catch (NoSuchKeyException e) {
             return null;
+        } catch (Exception e) {
+            logger.error("Failed to describe file in S3 at {}: {}", location, e.getMessage(), e);
+            throw new IOException("Failed to read file metadata from S3", e);
         }
     }
 
+    /**
+     * One page of up to 1000 objects, in the UTF-8 byte order S3 lists keys in. The first page starts
+     * after startAfter, or at the beginning of the bucket when it is null; later pages pass the previous
+     * page's continuation token instead.
+     */
+    public ListObjectsV2Response listObjects(String bucket, String startAfter, String continuationToken) {
+        ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+                .bucket(bucket)
+                .startAfter(continuationToken == null ? startAfter : null)
+                .continuationToken(continuationToken)
+                .build();
+        return s3Metrics.record(S3Metrics.Operation.LIST, () -> s3Client.listObjectsV2(listRequest));
+    }
+
     /**
      * Delete a file from S3
      */
-    public boolean deleteFile(String s3Key) {
+    public boolean deleteFile(ObjectLocation location) {
+        // A URL or copy of a deleted object is useless, so drop it whether or not the delete succeeds
+        presignedUrlCache.invalidate(location);
+        objectFileCache.invalidate(location);
+
         try {
             DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(s3Key)
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
                     .build();
 
-            s3Client.deleteObject(deleteObjectRequest);
-            logger.info("Successfully deleted file from S3 with key: {}", s3Key);
+            s3Metrics.record(S3Metrics.Operation.DELETE, () -> s3Client.deleteObject(deleteObjectRequest));
+            logger.info("Successfully deleted file from S3 at: {}", location);
             return true;
 
         } catch (Exception e) {
-            logger.error("Failed to delete file from S3 with key {}: {}", s3Key, e.getMessage(), e);
+            logger.error("Failed to delete file from S3 at {}: {}", location, e.getMessage(), e);
             return false;
         }
     }
 
+    /**
+     * Delete many files from S3 using multi-object deletes of up to 1000 keys each, per bucket.
+     * Returns the objects that could not be deleted; an empty set means every object is gone.
+     */
+    public Set<ObjectLocation> deleteFiles(Collection<ObjectLocation> locations) {
+        Set<ObjectLocation> failed = new HashSet<>();
+
+        for (Map.Entry<String, List<String>> entry : groupByBucket(locations).entrySet()) {
+            String bucket = entry.getKey();
+            List<String> keys = entry.getValue();
+
+            for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_DELETE) {
+                List<String> batch = keys.subList(from, Math.min(from + MAX_KEYS_PER_DELETE, keys.size()));
+                batch.forEach(key -> {
+                    presignedUrlCache.invalidate(new ObjectLocation(bucket, key));
+                    objectFileCache.invalidate(new ObjectLocation(bucket, key));
+                });
+
+                try {
+                    DeleteObjectsRequest deleteObjectsRequest = DeleteObjectsRequest.builder()
+                            .bucket(bucket)
+                            .delete(Delete.builder()
+                                    .objects(batch.stream()
+                                            .map(key -> ObjectIdentifier.builder().key(key).build())
+                                            .collect(Collectors.toList()))
+                                    .quiet(true) // Only report failures
+                                    .build())
+                            .build();
+
+                    DeleteObjectsResponse response = s3Metrics.record(S3Metrics.Operation.DELETE_BATCH,
+                            () -> s3Client.deleteObjects(deleteObjectsRequest));
+                    for (S3Error error : response.errors()) {
+                        logger.warn("Failed to delete file from S3 at {}/{}: {} {}", bucket, error.key(), error.code(), error.message());
+                        failed.add(new ObjectLocation(bucket, error.key()));
+                    }
+
+                } catch (Exception e) {
+                    logger.error("Failed to delete batch of {} files from S3 bucket {}: {}", batch.size(), bucket, e.getMessage(), e);
+                    batch.forEach(key -> failed.add(new ObjectLocation(bucket, key)));
+                }
+            }
+        }
+
+        logger.info("Deleted {} of {} files from S3", locations.size() - failed.size(), locations.size());
+        return failed;
+    }
+
+    /**
+     * Keys per bucket, in first-seen order, for multi-object deletes which work on one bucket at a time
+     */
+    static Map<String, List<String>> groupByBucket(Collection<ObjectLocation> locations) {
+        Map<String, List<String>> keysByBucket = new LinkedHashMap<>();
+        for (ObjectLocation location : locations) {
+            keysByBucket.computeIfAbsent(location.getBucket(), bucket -> new ArrayList<>()).add(location.getKey());
+        }
+        return keysByBucket;
+    }
+
     /**
      * Check if a file exists in S3
      */
-    public boolean fileExists(String s3Key) {
+    public boolean fileExists(ObjectLocation location) {
         try {
             HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(s3Key)
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
                     .build();
 
-            s3Client.headObject(headObjectRequest);
+            s3Metrics.record(S3Metrics.Operation.HEAD, () -> s3Client.headObject(headObjectRequest));
             return true;
 
         } catch (NoSuchKeyException e) {
             return false;
         } catch (Exception e) {
-            logger.error("Error checking if file exists in S3 with key {}: {}", s3Key, e.getMessage(), e);
+            logger.error("Error checking if file exists in S3 at {}: {}", location, e.getMessage(), e);
             return false;
         }
     }
 
-    private String getFileExtension(String filename) {
-        if (filename == null || !filename.contains(".")) {
-            return "";
-        }
-        return filename.substring(filename.lastIndexOf("."));
+    Map<String, String> objectMetadata(String originalFilename, String description) {
+        return Map.of(
+                "original-filename", originalFilename,
+                "description", description != null ? description : "No description"
+        );
     }
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.repository.StoredObjectRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed storage on top of S3: identical uploads share one reference-counted object.
+ * Each step is a single atomic statement, so no method here holds a transaction across S3 I/O.
+ */
+@Service
+public class StoredObjectService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StoredObjectService.class);
+
+    // Concurrent deletes can remove a row between our insert and increment; retry a few times
+    private static final int MAX_REGISTER_ATTEMPTS = 3;
+
+    @Autowired
+    private StoredObjectRepository storedObjectRepository;
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private S3DeletionOutbox s3DeletionOutbox;
+
+    /**
+     * Upload action that only runs when the content is not stored yet
+     */
+    @FunctionalInterface
+    public interface Upload {
+        ObjectLocation upload() throws IOException;
+    }
+
+    /**
+     * Reference existing content with this hash, or run the upload and register its location.
+     * Returns the location the photo should point at.
+     */
+    public ObjectLocation storeIfAbsent(String contentHash, long fileSize, Upload upload) throws IOException {
+        ObjectLocation existing = referenceExisting(contentHash);
+        if (existing != null) {
+            return existing;
+        }
+
+        return registerUploaded(contentHash, upload.upload(), fileSize);
+    }
+
+    /**
+     * Asynchronous variant of storeIfAbsent for uploads issued on the async S3 client.
+     * Registration is JDBC work, so it runs on the given executor rather than the client's event loop.
+     */
+    public CompletableFuture<ObjectLocation> storeIfAbsentAsync(String contentHash, long fileSize,
+                                                                Supplier<CompletableFuture<ObjectLocation>> upload,
+                                                                Executor registrationExecutor) {
+        try {
+            ObjectLocation existing = referenceExisting(contentHash);
+            if (existing != null) {
+                return CompletableFuture.completedFuture(existing);
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return upload.get().thenApplyAsync(uploaded -> {
+            try {
+                return registerUploaded(contentHash, uploaded, fileSize);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, registrationExecutor);
+    }
+
+    /**
+     * Register content that has already been uploaded (hashed while in flight).
+     * If identical content was stored first, the new copy is deleted and the existing location returned.
+     *
+     * @throws IllegalArgumentException when this very object is registered already, i.e. a direct
+     *                                  upload is completed a second time
+     */
+    public ObjectLocation registerUploaded(String contentHash, ObjectLocation uploaded, long fileSize) throws IOException {
+        for (int attempt = 0; attempt < MAX_REGISTER_ATTEMPTS; attempt++) {
+            if (storedObjectRepository.insertIfAbsent(contentHash, uploaded.getBucket(), uploaded.getKey(), fileSize) == 1) {
+                return uploaded;
+            }
+            if (storedObjectRepository.incrementReferences(contentHash) == 1) {
+                ObjectLocation stored = currentLocation(contentHash);
+                if (stored.equals(uploaded)) {
+                    // Only one completion of a direct upload wins the insert; later ones give their reference back
+                    if (release(contentHash, 1)) {
+                        s3DeletionOutbox.enqueue(List.of(uploaded));
+                    }
+                    throw new IllegalArgumentException("This upload has already been completed");
+                }
+                s3DeletionOutbox.enqueue(List.of(uploaded));
+                logger.info("Duplicate content {}, discarded new copy {} in favour of {}", contentHash, uploaded, stored);
+                return stored;
+            }
+        }
+        throw new IOException("Could not register content " + contentHash + " after " + MAX_REGISTER_ATTEMPTS + " attempts");
+    }
+
+    /**
+     * Stand-in content hash for an object uploaded without a SHA-256 checksum: the SHA-256 of its
+     * location. It never matches other content, but registers the object like any other, so its
+     * references are counted and a repeated registration is detected.
+     */
+    public static String locationHash(ObjectLocation location) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(("s3://" + location.getBucket() + "/" + location.getKey()).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Drop references to the content. Returns true when no photo references it any more,
+     * in which case the caller owns deleting the S3 object.
+     */
+    public boolean release(String contentHash, int references) {
+        storedObjectRepository.decrementReferences(contentHash, references);
+        return storedObjectRepository.deleteIfUnreferenced(contentHash) == 1;
+    }
+
+    private ObjectLocation referenceExisting(String contentHash) throws IOException {
+        if (storedObjectRepository.incrementReferences(contentHash) != 1) {
+            return null;
+        }
+        ObjectLocation stored = currentLocation(contentHash);
+        logger.info("Duplicate content {}, reusing S3 object: {}", contentHash, stored);
+        return stored;
+    }
+
+    private ObjectLocation currentLocation(String contentHash) throws IOException {
+        return storedObjectRepository.findById(contentHash)
+                .map(stored -> s3Service.location(stored.getBucket(), stored.getS3Key()))
+                .orElseThrow(() -> new IOException("Stored object " + contentHash + " disappeared"));
+    }
+}
@@ -0,0 +1,298 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.PhotoUploadResult;
+import com.baaki.ecsapp.dto.UploadJob;
+import com.baaki.ecsapp.model.UploadJobRecord;
+import com.baaki.ecsapp.repository.UploadJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Runs uploads in the background so the request thread is released as soon as the bytes are staged.
+ * A bounded queue provides back-pressure: when it is full, submissions are rejected instead of piling up.
+ * Job state is kept in the database, so any task can answer a status poll. The staged file only exists
+ * on the task that accepted the job, so a job that task does not finish is marked failed, never lost:
+ * at shutdown by the task itself, or after its lease runs out if the task died.
+ */
+@Service
+public class UploadJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadJobService.class);
+
+    // Staged files are named by job id, a random UUID
+    private static final String STAGED_FILE_GLOB = "????????-????-????-????-????????????";
+
+    // Pause before retrying an upload that found every upload buffer in use
+    private static final Duration BUSY_RETRY_DELAY = Duration.ofSeconds(1);
+
+    static final String ABANDONED_MESSAGE = "The server stopped before the upload finished. Please upload the file again.";
+
+    @Value("${app.upload.async.workers:4}")
+    private int workers;
+
+    @Value("${app.upload.async.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${app.upload.async.staging-dir:${java.io.tmpdir}/photo-upload-staging}")
+    private String stagingDir;
+
+    @Value("${app.upload.async.job-retention:PT1H}")
+    private Duration jobRetention;
+
+    @Value("${app.upload.async.drain-timeout:PT30S}")
+    private Duration drainTimeout;
+
+    @Value("${app.upload.async.lease:PT5M}")
+    private Duration lease;
+
+    @Value("${app.upload.async.lease-renewal:PT1M}")
+    private Duration leaseRenewal;
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private UploadJobRepository uploadJobRepository;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    // Identifies this process as the owner of the jobs it accepts
+    private final String owner = UUID.randomUUID().toString();
+
+    // Latest byte count of each running job, written out by flushProgress instead of from the S3 callbacks
+    private final Map<String, AtomicLong> progress = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+    private Path stagingPath;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (lease.compareTo(leaseRenewal.multipliedBy(2)) < 0) {
+            throw new IllegalStateException("app.upload.async.lease must be at least twice app.upload.async.lease-renewal");
+        }
+
+        this.stagingPath = Files.createDirectories(Paths.get(stagingDir));
+        // Files left by a previous process belong to jobs no one will run; their leases expire and fail them
+        deleteStagedFiles();
+
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                WorkerThreads.factory("upload-worker", virtualThreads, false),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        logger.info("Upload job service initialized with {} workers, queue capacity: {}, staging dir: {}, virtual threads: {}",
+                workers, queueCapacity, stagingPath, virtualThreads);
+    }
+
+    /**
+     * Drain queued and running uploads before shutdown so staged files are not lost mid-flight.
+     * Whatever does not finish in time is marked failed, so its client stops polling and uploads again.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        logger.info("Draining {} running and {} queued uploads", executor.getActiveCount(), executor.getQueue().size());
+
+        try {
+            if (!executor.awaitTermination(drainTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                List<Runnable> abandoned = executor.shutdownNow();
+                logger.warn("Upload drain timed out after {}; abandoned {} queued uploads", drainTimeout, abandoned.size());
+                abandonUnfinished();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            abandonUnfinished();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Validate and stage the file, then queue it for upload
+     *
+     * @throws IllegalArgumentException   if the file fails validation
+     * @throws RejectedExecutionException if the upload queue is full or the service is shutting down
+     */
+    public UploadJob submit(MultipartFile file, String description) throws IOException {
+        photoService.validateFile(file);
+
+        // Cheap early check so a full queue does not cost a disk write
+        if (executor.isShutdown() || executor.getQueue().remainingCapacity() == 0) {
+            throw new RejectedExecutionException("Upload queue is full");
+        }
+
+        String jobId = UUID.randomUUID().toString();
+        Path stagedFile = stagingPath.resolve(jobId);
+        file.transferTo(stagedFile);
+
+        UploadJobRecord job = new UploadJobRecord(jobId, file.getOriginalFilename(), file.getSize(),
+                owner, LocalDateTime.now().plus(lease));
+        String contentType = file.getContentType();
+
+        try {
+            uploadJobRepository.save(job);
+        } catch (RuntimeException e) {
+            deleteStagedFile(stagedFile);
+            throw e;
+        }
+        try {
+            executor.execute(() -> process(jobId, job.getFilename(), stagedFile, contentType, description));
+        } catch (RejectedExecutionException e) {
+            uploadJobRepository.deleteById(jobId);
+            deleteStagedFile(stagedFile);
+            throw e;
+        }
+
+        logger.info("Queued upload job {} for file: {}", jobId, job.getFilename());
+        return new UploadJob(job);
+    }
+
+    /**
+     * Look up a job by id; returns null once it is unknown or has expired
+     */
+    public UploadJob getJob(String jobId) {
+        return uploadJobRepository.findById(jobId).map(UploadJob::new).orElse(null);
+    }
+
+    /**
+     * Keep this task's unfinished jobs leased, fail those of tasks that died, and forget finished jobs
+     * after the retention period. Runs on every task; each step is a single idempotent statement.
+     */
+    @Scheduled(fixedDelayString = "${app.upload.async.lease-renewal:PT1M}",
+            initialDelayString = "${app.upload.async.lease-renewal:PT1M}")
+    public void maintainJobs() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            uploadJobRepository.renewLeases(owner, now.plus(lease));
+
+            int expired = uploadJobRepository.failExpired(ABANDONED_MESSAGE, now);
+            if (expired > 0) {
+                logger.warn("Marked {} upload jobs failed whose task stopped without finishing them", expired);
+            }
+            uploadJobRepository.deleteFinishedBefore(now.minus(jobRetention));
+        } catch (RuntimeException e) {
+            logger.error("Failed to maintain upload jobs: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write the progress of running jobs. Listeners run on S3 client threads, which must not block on the
+     * database, and a write per transferred chunk would be far more than a poll can show.
+     */
+    @Scheduled(fixedDelayString = "${app.upload.async.progress-interval:PT1S}")
+    public void flushProgress() {
+        LocalDateTime now = LocalDateTime.now();
+        progress.forEach((jobId, bytesUploaded) -> {
+            try {
+                uploadJobRepository.updateProgress(jobId, bytesUploaded.get(), now);
+            } catch (RuntimeException e) {
+                // Progress is advisory; the upload itself carries on
+                logger.warn("Failed to record progress of upload job {}: {}", jobId, e.getMessage());
+            }
+        });
+    }
+
+    private void process(String jobId, String filename, Path stagedFile, String contentType, String description) {
+        try {
+            uploadJobRepository.markUploading(jobId, "Uploading to storage", LocalDateTime.now());
+            AtomicLong bytesUploaded = new AtomicLong();
+            progress.put(jobId, bytesUploaded);
+            LongConsumer progressListener = bytesUploaded::set;
+
+            PhotoUploadResult result = photoService.uploadStagedPhoto(
+                    stagedFile, filename, contentType, description, progressListener);
+            // The job was already accepted, so it waits for upload buffers instead of failing
+            while (result.isBusy()) {
+                Thread.sleep(BUSY_RETRY_DELAY.toMillis());
+                result = photoService.uploadStagedPhoto(
+                        stagedFile, filename, contentType, description, progressListener);
+            }
+
+            if (result.isSuccess()) {
+                uploadJobRepository.markCompleted(jobId, result.getPhotoId(), result.getMessage(), LocalDateTime.now());
+                logger.info("Upload job {} completed with photo ID: {}", jobId, result.getPhotoId());
+            } else {
+                uploadJobRepository.markFailed(jobId, result.getMessage(), LocalDateTime.now());
+                logger.warn("Upload job {} failed: {}", jobId, result.getMessage());
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Upload job {} interrupted while waiting for an upload buffer", jobId);
+            markFailed(jobId, "The upload was interrupted. Please try again.");
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Unexpected error in upload job {}: {}", jobId, e.getMessage(), e);
+            markFailed(jobId, "An unexpected error occurred. Please try again.");
+        } finally {
+            progress.remove(jobId);
+            deleteStagedFile(stagedFile);
+        }
+    }
+
+    private void markFailed(String jobId, String message) {
+        try {
+            uploadJobRepository.markFailed(jobId, message, LocalDateTime.now());
+        } catch (RuntimeException e) {
+            // The lease is no longer renewed once this task stops, so another task fails the job later
+            logger.error("Failed to record failure of upload job {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    private void abandonUnfinished() {
+        // Queued jobs never run their cleanup; running ones are interrupted and no longer need their files
+        deleteStagedFiles();
+        try {
+            int abandoned = uploadJobRepository.failUnfinished(owner, ABANDONED_MESSAGE, LocalDateTime.now());
+            logger.warn("Marked {} unfinished upload jobs failed", abandoned);
+        } catch (RuntimeException e) {
+            logger.error("Failed to mark abandoned upload jobs failed; their leases expire instead: {}", e.getMessage());
+        }
+    }
+
+    private void deleteStagedFiles() {
+        // Only files this service names are touched, in case the directory is shared
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingPath, STAGED_FILE_GLOB)) {
+            for (Path file : files) {
+                deleteStagedFile(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to clear staging dir {}: {}", stagingPath, e.getMessage());
+        }
+    }
+
+    private void deleteStagedFile(Path stagedFile) {
+        try {
+            Files.deleteIfExists(stagedFile);
+        } catch (IOException e) {
+            logger.warn("Failed to delete staged upload {}: {}", stagedFile, e.getMessage());
+        }
+    }
+}
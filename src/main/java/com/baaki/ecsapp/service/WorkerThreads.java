@@ -0,0 +1,23 @@
+package com.baaki.ecsapp.service;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread factories for the internal executors that block on S3 or JDBC.
+ * With spring.threads.virtual.enabled those executors run on virtual threads, like Tomcat does;
+ * their pool sizes still apply, since they bound S3 concurrency and buffer memory rather than threads.
+ * CPU-bound work (presigning, rendition decoding) keeps its platform threads.
+ */
+final class WorkerThreads {
+
+    private WorkerThreads() {
+    }
+
+    static ThreadFactory factory(String namePrefix, boolean virtual, boolean daemon) {
+        if (virtual) {
+            // Virtual threads are always daemon threads
+            return Thread.ofVirtual().name(namePrefix + "-", 1).factory();
+        }
+        return Thread.ofPlatform().name(namePrefix + "-", 1).daemon(daemon).factory();
+    }
+}
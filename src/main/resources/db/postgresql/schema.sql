@@ -0,0 +1,83 @@
+-- Runs after Hibernate's schema update (spring.jpa.defer-datasource-initialization=true).
+-- Every statement must be idempotent: this script executes on every startup of every task.
+
+-- photos.id moved from IDENTITY to the pooled photos_seq sequence. Hibernate creates the
+-- sequence starting at 1, so move it past the existing ids once. The guard keeps this a no-op
+-- afterwards and avoids rewinding a sequence that other tasks are already drawing from.
+SELECT setval('photos_seq', (SELECT MAX(id) FROM photos) + 50)
+WHERE (SELECT last_value FROM photos_seq) < (SELECT COALESCE(MAX(id), 0) FROM photos);
+
+-- A CREATE INDEX CONCURRENTLY that fails or is cancelled, e.g. when a task is stopped mid-deploy, leaves an
+-- INVALID index that IF NOT EXISTS would skip on every later startup, so the planner never uses it. Drop
+-- such leftovers of the indexes below so they are rebuilt. An index another starting task is still building
+-- is also invalid, but shows up in pg_stat_progress_create_index and is left alone. The plain DROP INDEX
+-- briefly locks the table; it only runs when a build has failed. Bodies are quoted with '' instead of $$,
+-- which the script splitter does not understand.
+DO '
+DECLARE
+    leftover regclass;
+BEGIN
+    FOR leftover IN
+        SELECT i.indexrelid::regclass
+        FROM pg_index i
+        JOIN pg_class c ON c.oid = i.indexrelid
+        WHERE NOT i.indisvalid
+          AND c.relname IN (''idx_photos_search'', ''idx_photos_content_type_uploaded_at_id'',
+                            ''idx_photos_s3key_c'', ''idx_photos_thumbnail_s3key_c'', ''idx_photos_preview_s3key_c'',
+                            ''idx_stored_objects_s3key_c'', ''idx_s3_deletion_outbox_s3key_c'',
+                            ''idx_photos_upload_s3key'')
+          AND NOT EXISTS (SELECT 1 FROM pg_stat_progress_create_index p WHERE p.index_relid = i.indexrelid)
+    LOOP
+        RAISE WARNING ''Dropping invalid index % left by a failed build; it is rebuilt next'', leftover;
+        EXECUTE ''DROP INDEX IF EXISTS '' || leftover;
+    END LOOP;
+END';
+
+-- Indexes for GET /api/photos/search. They are built CONCURRENTLY so a large existing table stays
+-- writable while a new version rolls out; IF NOT EXISTS makes every later startup a no-op.
+-- The expression must stay identical to PhotoSearchRepositoryImpl.SEARCH_DOCUMENT.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_photos_search
+    ON photos USING GIN (to_tsvector('english', filename || ' ' || coalesce(description, '')));
+
+-- Equality on content type, then newest first, serves the filter and its keyset order in one range scan.
+-- Date-only filters use idx_photos_uploaded_at_id, which Hibernate maintains from the entity.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_photos_content_type_uploaded_at_id
+    ON photos (content_type, uploaded_at DESC, id DESC);
+
+-- The default statistics keep only the most common words, so a rare word is estimated at thousands of
+-- matches and the planner walks the recency index filtering every row instead of using the GIN index.
+-- A larger sample of the expression keeps rare-word estimates close enough to pick the bitmap scan.
+-- The target only takes effect at the next ANALYZE, so analyze once when it is first set or the index
+-- has been rebuilt; later startups find it in place and do neither. An index still being built by
+-- another task is skipped, and that task sets it.
+DO '
+BEGIN
+    IF EXISTS (SELECT 1
+               FROM pg_index i
+               JOIN pg_attribute a ON a.attrelid = i.indexrelid AND a.attnum = 1
+               WHERE i.indexrelid = ''idx_photos_search''::regclass
+                 AND i.indisvalid
+                 AND a.attstattarget IS DISTINCT FROM 1000) THEN
+        ALTER INDEX idx_photos_search ALTER COLUMN 1 SET STATISTICS 1000;
+        ANALYZE photos;
+    END IF;
+END';
+
+-- Indexes for S3 reconciliation (ObjectReferenceRepository), which reads every key-holding column in the
+-- UTF-8 byte order S3 lists keys in. idx_photos_s3_key uses the default collation, which orders keys
+-- differently, so it cannot serve these scans; it stays for the equality lookups.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_photos_s3key_c
+    ON photos (s3key COLLATE "C", id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_photos_thumbnail_s3key_c
+    ON photos (thumbnails3key COLLATE "C", id) WHERE thumbnails3key IS NOT NULL;
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_photos_preview_s3key_c
+    ON photos (previews3key COLLATE "C", id) WHERE previews3key IS NOT NULL;
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_stored_objects_s3key_c
+    ON stored_objects (s3key COLLATE "C", content_hash);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_s3_deletion_outbox_s3key_c
+    ON s3_deletion_outbox (s3key COLLATE "C", id);
+
+-- One photo per direct upload. A deduplicated upload's photo points at the existing object, so the
+-- uploaded key is the only thing a second completion of the same upload collides on.
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS idx_photos_upload_s3key
+    ON photos (uploads3key) WHERE uploads3key IS NOT NULL;
@@ -0,0 +1,203 @@
+package com.baaki.ecsapp.controller;
+
+import com.baaki.ecsapp.service.ObjectFile;
+import com.baaki.ecsapp.service.ObjectFileCache;
+import com.baaki.ecsapp.service.ObjectLocation;
+import com.baaki.ecsapp.service.PhotoContent;
+import com.baaki.ecsapp.service.PhotoService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@ExtendWith(MockitoExtension.class)
+class PhotoControllerContentTest {
+
+    private static final int SIZE = 1000;
+    private static final String ETAG = "\"5f2b\"";
+    private static final Instant UPLOADED_AT = Instant.parse("2025-01-15T10:00:00Z");
+    private static final ObjectLocation LOCATION = new ObjectLocation("photos", "a/b.jpg");
+
+    @TempDir
+    private Path cacheDirectory;
+
+    @Mock
+    private PhotoService photoService;
+
+    @InjectMocks
+    private PhotoController photoController;
+
+    private ObjectFileCache objectFileCache;
+    private final AtomicInteger downloads = new AtomicInteger();
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(photoController, "contentMaxAge", Duration.ofDays(1));
+
+        objectFileCache = new ObjectFileCache();
+        ReflectionTestUtils.setField(objectFileCache, "directory", cacheDirectory);
+        ReflectionTestUtils.setField(objectFileCache, "maxSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(objectFileCache, "meterRegistry", new SimpleMeterRegistry());
+        objectFileCache.init();
+
+        lenient().when(photoService.findPhotoContent(1L)).thenReturn(new PhotoContent(LOCATION, ETAG, UPLOADED_AT));
+        lenient().when(photoService.openPhotoContent(any())).thenAnswer(invocation ->
+                objectFileCache.open(invocation.<PhotoContent>getArgument(0).getLocation(), (location, file) -> {
+                    downloads.incrementAndGet();
+                    Files.write(file, content(0, SIZE));
+                    return new ObjectFile(file, SIZE, "image/jpeg");
+                }));
+
+        mockMvc = MockMvcBuilders.standaloneSetup(photoController).build();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        objectFileCache.cleanup();
+    }
+
+    @Test
+    void wholeObject() throws Exception {
+        MvcResult result = perform(get("/photos/1/content"));
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+        assertThat(result.getResponse().getContentAsByteArray()).isEqualTo(content(0, SIZE));
+        assertThat(result.getResponse().getContentType()).isEqualTo("image/jpeg");
+        assertThat(result.getResponse().getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(result.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        assertThat(result.getResponse().getDateHeader(HttpHeaders.LAST_MODIFIED)).isEqualTo(UPLOADED_AT.toEpochMilli());
+    }
+
+    @Test
+    void singleRange() throws Exception {
+        assertPartial(perform(get("/photos/1/content").header(HttpHeaders.RANGE, "bytes=100-199")), 100, 199);
+    }
+
+    @Test
+    void suffixAndOpenEndedRanges() throws Exception {
+        assertPartial(perform(get("/photos/1/content").header(HttpHeaders.RANGE, "bytes=-10")), 990, 999);
+        assertPartial(perform(get("/photos/1/content").header(HttpHeaders.RANGE, "bytes=995-")), 995, 999);
+        // A last byte past the end is clamped to the size
+        assertPartial(perform(get("/photos/1/content").header(HttpHeaders.RANGE, "bytes=900-5000")), 900, 999);
+    }
+
+    @Test
+    void rangeStartingPastTheEndIsNotSatisfiable() throws Exception {
+        MvcResult result = perform(get("/photos/1/content").header(HttpHeaders.RANGE, "bytes=" + SIZE + "-"));
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(416);
+        assertThat(result.getResponse().getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */" + SIZE);
+        assertThat(result.getResponse().getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void severalOrMalformedRangesGetTheWholeObject() throws Exception {
+        for (String range : new String[] {"bytes=0-9,20-29", "bytes=abc", "lines=1-2"}) {
+            MvcResult result = perform(get("/photos/1/content").header(HttpHeaders.RANGE, range));
+
+            assertThat(result.getResponse().getStatus()).as(range).isEqualTo(200);
+            assertThat(result.getResponse().getContentAsByteArray()).as(range).isEqualTo(content(0, SIZE));
+        }
+    }
+
+    @Test
+    void ifRangeMatchingTheETagHonoursTheRange() throws Exception {
+        assertPartial(perform(get("/photos/1/content")
+                .header(HttpHeaders.RANGE, "bytes=0-9")
+                .header(HttpHeaders.IF_RANGE, ETAG)), 0, 9);
+    }
+
+    @Test
+    void staleIfRangeGetsTheWholeObject() throws Exception {
+        MvcResult result = perform(get("/photos/1/content")
+                .header(HttpHeaders.RANGE, "bytes=0-9")
+                .header(HttpHeaders.IF_RANGE, "\"other\""));
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+        assertThat(result.getResponse().getContentAsByteArray()).isEqualTo(content(0, SIZE));
+    }
+
+    @Test
+    void matchingIfNoneMatchIsAnsweredWithoutOpeningTheObject() throws Exception {
+        MvcResult result = perform(get("/photos/1/content").header(HttpHeaders.IF_NONE_MATCH, ETAG));
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(304);
+        assertThat(result.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        verify(photoService, never()).openPhotoContent(any());
+        assertThat(downloads).hasValue(0);
+    }
+
+    @Test
+    void ifModifiedSinceIsAnsweredWithoutOpeningTheObject() throws Exception {
+        MvcResult result = perform(get("/photos/1/content")
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 15 Jan 2025 10:00:00 GMT"));
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(304);
+        verify(photoService, never()).openPhotoContent(any());
+    }
+
+    @Test
+    void cachedObjectIsDownloadedOnce() throws Exception {
+        perform(get("/photos/1/content"));
+        perform(get("/photos/1/content").header(HttpHeaders.RANGE, "bytes=0-9"));
+
+        assertThat(downloads).hasValue(1);
+    }
+
+    @Test
+    void missingPhotoOrObjectIsNotFound() throws Exception {
+        assertThat(perform(get("/photos/2/content")).getResponse().getStatus()).isEqualTo(404);
+
+        doThrow(NoSuchKeyException.builder().build()).when(photoService).openPhotoContent(any());
+        assertThat(perform(get("/photos/1/content")).getResponse().getStatus()).isEqualTo(404);
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        return result.getRequest().isAsyncStarted() ? mockMvc.perform(asyncDispatch(result)).andReturn() : result;
+    }
+
+    private static void assertPartial(MvcResult result, int first, int last) throws Exception {
+        assertThat(result.getResponse().getStatus()).isEqualTo(206);
+        assertThat(result.getResponse().getHeader(HttpHeaders.CONTENT_RANGE))
+                .isEqualTo("bytes " + first + "-" + last + "/" + SIZE);
+        assertThat(result.getResponse().getContentAsByteArray()).isEqualTo(content(first, last - first + 1));
+    }
+
+    private static byte[] content(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (offset + i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,88 @@
+package com.baaki.ecsapp.controller;
+
+import com.baaki.ecsapp.dto.PhotoUploadResult;
+import com.baaki.ecsapp.service.PhotoService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class PhotoControllerUploadTest {
+
+    private static final MockMultipartFile FILE = new MockMultipartFile("file", "a.jpg", "image/jpeg", new byte[16]);
+
+    @Mock
+    private PhotoService photoService;
+
+    @InjectMocks
+    private PhotoController photoController;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(photoController).build();
+    }
+
+    @Test
+    void busyUploadIsServiceUnavailable() throws Exception {
+        when(photoService.uploadPhoto(any(), any())).thenReturn(PhotoUploadResult.busy());
+
+        mockMvc.perform(multipart("/api/upload").file(FILE))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"))
+                .andExpect(jsonPath("$.success").value(false));
+    }
+
+    @Test
+    void busyStreamedUploadIsServiceUnavailable() throws Exception {
+        when(photoService.uploadPhotoStream(any(), any(), any(), any())).thenReturn(PhotoUploadResult.busy());
+
+        mockMvc.perform(post("/api/upload/stream").param("filename", "a.jpg")
+                        .contentType("image/jpeg").content(new byte[16]))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"));
+    }
+
+    @Test
+    void failedUploadIsStillBadRequest() throws Exception {
+        when(photoService.uploadPhoto(any(), any())).thenReturn(PhotoUploadResult.error("Invalid file type"));
+
+        mockMvc.perform(multipart("/api/upload").file(FILE))
+                .andExpect(status().isBadRequest())
+                .andExpect(header().doesNotExist(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void batchIsServiceUnavailableOnlyWhenNothingWasUploaded() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("files", "a.jpg", "image/jpeg", new byte[16]);
+        when(photoService.uploadPhotos(anyList(), any()))
+                .thenReturn(List.of(PhotoUploadResult.busy(), PhotoUploadResult.error("Invalid file type")))
+                .thenReturn(List.of(PhotoUploadResult.busy(), PhotoUploadResult.success(1L, "Photo uploaded successfully")));
+
+        mockMvc.perform(multipart("/api/upload/batch").file(file))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"));
+        mockMvc.perform(multipart("/api/upload/batch").file(file))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].busy").value(true));
+    }
+}
@@ -0,0 +1,57 @@
+package com.baaki.ecsapp.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PhotoCursorTest {
+
+    @Test
+    void roundTrips() {
+        for (LocalDateTime uploadedAt : new LocalDateTime[] {
+                LocalDateTime.of(2025, 1, 15, 10, 0),
+                LocalDateTime.of(2025, 1, 15, 10, 0, 7),
+                LocalDateTime.of(2025, 1, 15, 10, 0, 7, 123_456_789)}) {
+            PhotoCursor decoded = PhotoCursor.decode(new PhotoCursor(uploadedAt, 42L).encode());
+
+            assertThat(decoded.getUploadedAt()).isEqualTo(uploadedAt);
+            assertThat(decoded.getId()).isEqualTo(42L);
+        }
+    }
+
+    @Test
+    void roundTripsExtremeIds() {
+        LocalDateTime uploadedAt = LocalDateTime.of(2025, 1, 15, 10, 0);
+        assertThat(PhotoCursor.decode(new PhotoCursor(uploadedAt, Long.MAX_VALUE).encode()).getId()).isEqualTo(Long.MAX_VALUE);
+        assertThat(PhotoCursor.decode(new PhotoCursor(uploadedAt, 1L).encode()).getId()).isEqualTo(1L);
+    }
+
+    @Test
+    void encodesUrlSafeWithoutPadding() {
+        // Enough tokens to hit every Base64 length remainder and both URL-unsafe characters
+        for (long id = 0; id < 200; id++) {
+            String token = new PhotoCursor(LocalDateTime.of(2025, 1, 15, 10, 0, 7, 999_000_000), id * 7919).encode();
+            assertThat(token).matches("[A-Za-z0-9_-]+");
+        }
+    }
+
+    // Callers answer an IllegalArgumentException with 400 Bad Request
+    @Test
+    void rejectsInvalidTokens() {
+        for (String token : new String[] {"", "!!!", encode("no separator"), encode("yesterday|1"),
+                encode("2025-01-15T10:00|"), encode("2025-01-15T10:00|x")}) {
+            assertThatThrownBy(() -> PhotoCursor.decode(token))
+                    .as(token)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
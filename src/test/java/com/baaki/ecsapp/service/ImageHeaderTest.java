@@ -0,0 +1,220 @@
+package com.baaki.ecsapp.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageHeaderTest {
+
+    @Test
+    void readsImagesWrittenByImageIO() throws IOException {
+        for (String format : new String[] {"png", "jpeg", "gif"}) {
+            ImageHeader header = ImageHeader.read(new ByteArrayInputStream(imageIO(format, 64, 48)));
+
+            assertThat(header).as(format).isNotNull();
+            assertThat(header.getContentType()).isEqualTo("image/" + format);
+            assertThat(header.getWidth()).as(format).isEqualTo(64);
+            assertThat(header.getHeight()).as(format).isEqualTo(48);
+            assertThat(header.getOrientation()).isEqualTo(ImageHeader.NORMAL_ORIENTATION);
+        }
+    }
+
+    @Test
+    void readsJpegOrientationFromExifInEitherByteOrder() {
+        for (boolean littleEndian : new boolean[] {true, false}) {
+            byte[] jpeg = new Bytes().u16(0xFFD8).segment(0xE1, exif(littleEndian, 6)).segment(0xC0, frame(3000, 2000))
+                    .u16(0xFFDA).toByteArray();
+
+            ImageHeader header = ImageHeader.parse(jpeg, jpeg.length);
+
+            assertThat(header.getContentType()).isEqualTo("image/jpeg");
+            assertThat(header.getWidth()).isEqualTo(3000);
+            assertThat(header.getHeight()).isEqualTo(2000);
+            assertThat(header.getOrientation()).as("little endian %s", littleEndian).isEqualTo(6);
+        }
+    }
+
+    @Test
+    void ignoresOutOfRangeOrientation() {
+        byte[] jpeg = new Bytes().u16(0xFFD8).segment(0xE1, exif(true, 9)).segment(0xC0, frame(10, 20)).toByteArray();
+
+        assertThat(ImageHeader.parse(jpeg, jpeg.length).getOrientation()).isEqualTo(ImageHeader.NORMAL_ORIENTATION);
+    }
+
+    @Test
+    void skipsFillBytesAndTablesBeforeAProgressiveFrame() {
+        byte[] jpeg = new Bytes().u16(0xFFD8).segment(0xE0, new byte[14]).u8(0xFF).segment(0xC4, new byte[20])
+                .segment(0xC2, frame(640, 480)).toByteArray();
+
+        ImageHeader header = ImageHeader.parse(jpeg, jpeg.length);
+
+        assertThat(header.getWidth()).isEqualTo(640);
+        assertThat(header.getHeight()).isEqualTo(480);
+    }
+
+    @Test
+    void readsFurtherForJpegsWithLargeMetadata() throws IOException {
+        byte[] jpeg = new Bytes().u16(0xFFD8).segment(0xE1, new byte[20_000]).segment(0xC0, frame(800, 600))
+                .append(new byte[100_000]).toByteArray();
+
+        ImageHeader header = ImageHeader.read(new ByteArrayInputStream(jpeg));
+
+        assertThat(header.getWidth()).isEqualTo(800);
+        assertThat(header.getHeight()).isEqualTo(600);
+    }
+
+    @Test
+    void recognisesJpegWithFrameBeyondTheHeaderLimit() throws IOException {
+        byte[] jpeg = new Bytes().u16(0xFFD8).segment(0xE1, new byte[40_000]).segment(0xE2, new byte[40_000])
+                .segment(0xC0, frame(800, 600)).toByteArray();
+
+        byte[] head = ImageHeader.readHead(new ByteArrayInputStream(jpeg));
+        ImageHeader header = ImageHeader.parse(head, head.length);
+
+        assertThat(head.length).isLessThanOrEqualTo(ImageHeader.MAX_HEADER_BYTES);
+        assertThat(header.getContentType()).isEqualTo("image/jpeg");
+        assertThat(header.getWidth()).isNull();
+        assertThat(header.getHeight()).isNull();
+    }
+
+    @Test
+    void readsEveryWebpVariant() {
+        byte[] lossy = webp("VP8 ", new Bytes().u8(0).u8(0).u8(0).u8(0x9D).u8(0x01).u8(0x2A).u16le(1920).u16le(1080));
+        byte[] lossless = webp("VP8L", new Bytes().u8(0x2F).u32le((1024 - 1) | (768 - 1) << 14));
+        byte[] extended = webp("VP8X", new Bytes().u32le(0).u24le(5000 - 1).u24le(4000 - 1));
+
+        assertDimensions(lossy, "image/webp", 1920, 1080);
+        assertDimensions(lossless, "image/webp", 1024, 768);
+        assertDimensions(extended, "image/webp", 5000, 4000);
+    }
+
+    @Test
+    void truncatedHeadersKeepTheFormatWithoutDimensions() throws IOException {
+        byte[] png = imageIO("png", 64, 48);
+        byte[] gif = imageIO("gif", 64, 48);
+
+        assertDimensions(Arrays.copyOf(png, 16), "image/png", null, null);
+        assertDimensions(Arrays.copyOf(gif, 8), "image/gif", null, null);
+        assertDimensions(webp("VP8 ", new Bytes().u8(0)), "image/webp", null, null);
+    }
+
+    @Test
+    void rejectsOtherContent() {
+        for (byte[] content : new byte[][] {
+                new byte[0],
+                "hello".getBytes(StandardCharsets.US_ASCII),
+                "%PDF-1.7".getBytes(StandardCharsets.US_ASCII),
+                "RIFF\0\0\0\0WAVEfmt ".getBytes(StandardCharsets.US_ASCII),
+                {(byte) 0xFF, (byte) 0xD8}}) {
+            assertThat(ImageHeader.parse(content, content.length)).isNull();
+        }
+    }
+
+    @Test
+    void onlyParsesTheGivenLength() {
+        byte[] jpeg = new Bytes().u16(0xFFD8).segment(0xC0, frame(10, 20)).toByteArray();
+
+        assertThat(ImageHeader.parse(jpeg, 2)).isNull();
+        assertThat(ImageHeader.parse(jpeg, 8).getWidth()).isNull();
+        assertThat(ImageHeader.parse(jpeg, jpeg.length).getWidth()).isEqualTo(10);
+    }
+
+    private static void assertDimensions(byte[] content, String contentType, Integer width, Integer height) {
+        ImageHeader header = ImageHeader.parse(content, content.length);
+
+        assertThat(header).isNotNull();
+        assertThat(header.getContentType()).isEqualTo(contentType);
+        assertThat(header.getWidth()).isEqualTo(width);
+        assertThat(header.getHeight()).isEqualTo(height);
+    }
+
+    private static byte[] imageIO(String format, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * EXIF APP1 payload with an IFD0 holding only the orientation tag
+     */
+    private static byte[] exif(boolean littleEndian, int orientation) {
+        Bytes tiff = new Bytes().append("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        if (littleEndian) {
+            tiff.append("II".getBytes(StandardCharsets.US_ASCII)).u16le(42).u32le(8)
+                    .u16le(1).u16le(0x0112).u16le(3).u32le(1).u16le(orientation).u16le(0)
+                    .u32le(0);
+        } else {
+            tiff.append("MM".getBytes(StandardCharsets.US_ASCII)).u16(42).u32(8)
+                    .u16(1).u16(0x0112).u16(3).u32(1).u16(orientation).u16(0)
+                    .u32(0);
+        }
+        return tiff.toByteArray();
+    }
+
+    /**
+     * Start-of-frame payload: precision, height, width and one component
+     */
+    private static byte[] frame(int width, int height) {
+        return new Bytes().u8(8).u16(height).u16(width).u8(1).u8(1).u8(0x11).u8(0).toByteArray();
+    }
+
+    private static byte[] webp(String chunk, Bytes payload) {
+        byte[] data = payload.toByteArray();
+        return new Bytes().append("RIFF".getBytes(StandardCharsets.US_ASCII)).u32le(4 + 8 + data.length)
+                .append("WEBP".getBytes(StandardCharsets.US_ASCII))
+                .append(chunk.getBytes(StandardCharsets.US_ASCII)).u32le(data.length).append(data)
+                .toByteArray();
+    }
+
+    private static final class Bytes {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Bytes u8(int value) {
+            out.write(value);
+            return this;
+        }
+
+        Bytes u16(int value) {
+            return u8(value >>> 8).u8(value);
+        }
+
+        Bytes u32(long value) {
+            return u16((int) (value >>> 16)).u16((int) value);
+        }
+
+        Bytes u16le(int value) {
+            return u8(value).u8(value >>> 8);
+        }
+
+        Bytes u24le(int value) {
+            return u16le(value).u8(value >>> 16);
+        }
+
+        Bytes u32le(long value) {
+            return u16le((int) value).u16le((int) (value >>> 16));
+        }
+
+        Bytes append(byte[] bytes) {
+            out.writeBytes(bytes);
+            return this;
+        }
+
+        // A marker segment; the length counts itself but not the marker
+        Bytes segment(int marker, byte[] payload) {
+            return u8(0xFF).u8(marker).u16(payload.length + 2).append(payload);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.PhotoField;
+import com.baaki.ecsapp.dto.PhotoSummary;
+import com.baaki.ecsapp.repository.PhotoRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PhotoListingWriterTest {
+
+    private static final LocalDateTime NOON = LocalDateTime.of(2025, 1, 15, 12, 0);
+
+    @Mock
+    private PhotoRepository photoRepository;
+
+    @Mock
+    private S3Service s3Service;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private PhotoListingWriter photoListingWriter;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(photoListingWriter, "chunkSize", 2);
+        lenient().when(s3Service.location(anyString(), anyString()))
+                .thenAnswer(invocation -> new ObjectLocation(invocation.getArgument(0), invocation.getArgument(1)));
+        lenient().when(s3Service.generatePresignedUrl(any()))
+                .thenAnswer(invocation -> "https://s3/" + invocation.<ObjectLocation>getArgument(0).getKey());
+    }
+
+    @Test
+    void readsTheListingInKeysetChunks() throws IOException {
+        // Two photos share a timestamp, so the cursor must carry the id as well
+        PhotoSummary p5 = photo(5L, NOON);
+        PhotoSummary p4 = photo(4L, NOON.minusMinutes(1));
+        PhotoSummary p3 = photo(3L, NOON.minusMinutes(1));
+        PhotoSummary p2 = photo(2L, NOON.minusMinutes(2));
+        PhotoSummary p1 = photo(1L, NOON.minusMinutes(3));
+        when(photoRepository.findFirstPage(Limit.of(2))).thenReturn(List.of(p5, p4));
+        when(photoRepository.findPageAfter(p4.getUploadedAt(), 4L, Limit.of(2))).thenReturn(List.of(p3, p2));
+        when(photoRepository.findPageAfter(p2.getUploadedAt(), 2L, Limit.of(2))).thenReturn(List.of(p1));
+
+        JsonNode listing = write(EnumSet.of(PhotoField.ID, PhotoField.URL));
+
+        assertThat(ids(listing)).containsExactly(5L, 4L, 3L, 2L, 1L);
+        assertThat(listing.get(0).get("url").asText()).isEqualTo("https://s3/photos/5.jpg");
+        InOrder order = inOrder(photoRepository);
+        order.verify(photoRepository).findFirstPage(Limit.of(2));
+        order.verify(photoRepository).findPageAfter(p4.getUploadedAt(), 4L, Limit.of(2));
+        order.verify(photoRepository).findPageAfter(p2.getUploadedAt(), 2L, Limit.of(2));
+        order.verifyNoMoreInteractions();
+    }
+
+    @Test
+    void fullLastChunkEndsOnAnEmptyPage() throws IOException {
+        PhotoSummary p2 = photo(2L, NOON);
+        PhotoSummary p1 = photo(1L, NOON.minusMinutes(1));
+        when(photoRepository.findFirstPage(Limit.of(2))).thenReturn(List.of(p2, p1));
+        when(photoRepository.findPageAfter(p1.getUploadedAt(), 1L, Limit.of(2))).thenReturn(List.of());
+
+        assertThat(ids(write(EnumSet.of(PhotoField.ID)))).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void emptyGalleryIsAnEmptyArray() throws IOException {
+        when(photoRepository.findFirstPage(Limit.of(2))).thenReturn(List.of());
+
+        assertThat(write(EnumSet.allOf(PhotoField.class)).size()).isZero();
+        verify(photoRepository, never()).findPageAfter(any(), any(), any());
+    }
+
+    @Test
+    void photosWithoutAUrlAreSkippedButTheCursorStillAdvances() throws IOException {
+        PhotoSummary p3 = photo(3L, NOON);
+        PhotoSummary p2 = photo(2L, NOON.minusMinutes(1));
+        PhotoSummary p1 = photo(1L, NOON.minusMinutes(2));
+        when(photoRepository.findFirstPage(Limit.of(2))).thenReturn(List.of(p3, p2));
+        when(photoRepository.findPageAfter(p2.getUploadedAt(), 2L, Limit.of(2))).thenReturn(List.of(p1));
+        when(s3Service.generatePresignedUrl(new ObjectLocation("photos", "photos/2.jpg"))).thenReturn(null);
+
+        assertThat(ids(write(EnumSet.of(PhotoField.ID, PhotoField.URL)))).containsExactly(3L, 1L);
+    }
+
+    @Test
+    void nothingIsPresignedWithoutUrlFields() throws IOException {
+        when(photoRepository.findFirstPage(Limit.of(2))).thenReturn(List.of(photo(1L, NOON)));
+
+        JsonNode listing = write(EnumSet.of(PhotoField.ID, PhotoField.UPLOADED_AT, PhotoField.WIDTH));
+
+        assertThat(listing.get(0).has("width")).isFalse();
+        assertThat(listing.get(0).has("uploadedAt")).isTrue();
+        verify(s3Service, never()).generatePresignedUrl(any());
+    }
+
+    private JsonNode write(EnumSet<PhotoField> fields) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        photoListingWriter.writeAll(out, fields);
+        return new ObjectMapper().readTree(out.toByteArray());
+    }
+
+    private static List<Long> ids(JsonNode listing) {
+        List<Long> ids = new ArrayList<>();
+        listing.forEach(photo -> ids.add(photo.get("id").asLong()));
+        return ids;
+    }
+
+    private static PhotoSummary photo(Long id, LocalDateTime uploadedAt) {
+        return new PhotoSummary(id, id + ".jpg", "photos", "photos/" + id + ".jpg", null, "image/jpeg", 100L,
+                uploadedAt, null, null, null, null, null);
+    }
+}
@@ -0,0 +1,199 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.DirectUploadCompletion;
+import com.baaki.ecsapp.dto.PhotoUploadResult;
+import com.baaki.ecsapp.model.Photo;
+import com.baaki.ecsapp.repository.ListingCounterRepository;
+import com.baaki.ecsapp.repository.PhotoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.model.ChecksumType;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PhotoServiceDirectUploadTest {
+
+    private static final String HASH = "ab".repeat(32);
+    private static final ObjectLocation UPLOADED = new ObjectLocation("photos", "uploads/new.png");
+    private static final ObjectLocation EXISTING = new ObjectLocation("photos", "uploads/first.png");
+
+    @Mock
+    private PhotoRepository photoRepository;
+
+    @Mock
+    private S3Service s3Service;
+
+    @Mock
+    private StoredObjectService storedObjectService;
+
+    @Mock
+    private S3DeletionOutbox s3DeletionOutbox;
+
+    @Mock
+    private RenditionService renditionService;
+
+    @Mock
+    private PhotoListingCache photoListingCache;
+
+    @Mock
+    private ListingCounterRepository listingCounterRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private PhotoService photoService;
+
+    // Rows photoRepository has saved, so its exists queries answer like the table would
+    private final List<Photo> saved = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ReflectionTestUtils.setField(photoService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(photoService, "maxStreamFileSize", DataSize.ofMegabytes(500));
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().doAnswer(invocation -> {
+            invocation.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        lenient().when(s3Service.location(anyString(), anyString()))
+                .thenAnswer(invocation -> new ObjectLocation(invocation.getArgument(0), invocation.getArgument(1)));
+        lenient().when(s3Service.isNewLocation(any())).thenReturn(true);
+        byte[] png = png();
+        lenient().when(s3Service.describeFile(UPLOADED)).thenReturn(HeadObjectResponse.builder()
+                .contentType("image/png")
+                .contentLength((long) png.length)
+                .checksumSHA256(Base64.getEncoder().encodeToString(HexFormat.of().parseHex(HASH)))
+                .checksumType(ChecksumType.FULL_OBJECT)
+                .build());
+        lenient().when(s3Service.readHead(eq(UPLOADED), anyInt())).thenReturn(png);
+
+        lenient().when(photoRepository.save(any())).thenAnswer(invocation -> {
+            Photo photo = invocation.getArgument(0);
+            photo.setId((long) saved.size() + 1);
+            saved.add(photo);
+            return photo;
+        });
+        lenient().when(photoRepository.existsByS3KeyOrUploadS3Key(anyString(), anyString())).thenAnswer(invocation ->
+                saved.stream().anyMatch(photo -> photo.getS3Key().equals(invocation.getArgument(0))
+                        || invocation.getArgument(1).equals(photo.getUploadS3Key())));
+        lenient().when(photoRepository.existsByUploadS3Key(anyString())).thenAnswer(invocation ->
+                saved.stream().anyMatch(photo -> invocation.getArgument(0).equals(photo.getUploadS3Key())));
+    }
+
+    @Test
+    void uploadKeyIsRecordedOnThePhoto() throws IOException {
+        when(storedObjectService.registerUploaded(HASH, UPLOADED, png().length)).thenReturn(UPLOADED);
+
+        PhotoUploadResult result = photoService.completeDirectUpload(completion());
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(saved).singleElement().satisfies(photo -> {
+            assertThat(photo.getS3Key()).isEqualTo(UPLOADED.getKey());
+            assertThat(photo.getUploadS3Key()).isEqualTo(UPLOADED.getKey());
+            assertThat(photo.getContentHash()).isEqualTo(HASH);
+        });
+    }
+
+    @Test
+    void repeatedCompletionOfADeduplicatedUploadIsRejected() throws IOException {
+        // The content was stored before, so the photo points at the existing object
+        when(storedObjectService.registerUploaded(HASH, UPLOADED, png().length)).thenReturn(EXISTING);
+
+        PhotoUploadResult first = photoService.completeDirectUpload(completion());
+        PhotoUploadResult second = photoService.completeDirectUpload(completion());
+
+        assertThat(first.isSuccess()).isTrue();
+        assertThat(saved).singleElement().satisfies(photo -> {
+            assertThat(photo.getS3Key()).isEqualTo(EXISTING.getKey());
+            assertThat(photo.getUploadS3Key()).isEqualTo(UPLOADED.getKey());
+        });
+        assertThat(second.isSuccess()).isFalse();
+        assertThat(second.getMessage()).isEqualTo("This upload has already been completed");
+        // No second reference is taken on the existing object and the upload is not queued for deletion again
+        verify(storedObjectService, times(1)).registerUploaded(anyString(), any(), anyLong());
+        verify(s3Service, times(1)).describeFile(UPLOADED);
+    }
+
+    @Test
+    void concurrentCompletionLosingTheUniqueUploadKeyGivesItsReferenceBack() throws IOException {
+        when(storedObjectService.registerUploaded(HASH, UPLOADED, png().length)).thenReturn(EXISTING);
+        Photo winner = new Photo("first.png", EXISTING.getKey(), null, "image/png", 10L);
+        winner.setUploadS3Key(UPLOADED.getKey());
+        // The other completion passed the same check and committed first
+        doAnswer(invocation -> {
+            saved.add(winner);
+            throw new DataIntegrityViolationException("duplicate key value violates unique constraint");
+        }).when(photoRepository).save(any());
+
+        PhotoUploadResult result = photoService.completeDirectUpload(completion());
+
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.getMessage()).isEqualTo("This upload has already been completed");
+        verify(storedObjectService).release(HASH, 1);
+        verify(s3DeletionOutbox, never()).enqueue(List.of(EXISTING));
+    }
+
+    @Test
+    void otherIntegrityViolationsAreNotReportedAsRepeats() throws IOException {
+        when(storedObjectService.registerUploaded(HASH, UPLOADED, png().length)).thenReturn(UPLOADED);
+        doThrow(new DataIntegrityViolationException("value too long")).when(photoRepository).save(any());
+
+        PhotoUploadResult result = photoService.completeDirectUpload(completion());
+
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.getMessage()).isEqualTo("An unexpected error occurred. Please try again.");
+        verify(storedObjectService).release(HASH, 1);
+    }
+
+    private static DirectUploadCompletion completion() {
+        DirectUploadCompletion completion = new DirectUploadCompletion();
+        completion.setBucket(UPLOADED.getBucket());
+        completion.setS3Key(UPLOADED.getKey());
+        completion.setFilename("new.png");
+        return completion;
+    }
+
+    private static byte[] png() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+}
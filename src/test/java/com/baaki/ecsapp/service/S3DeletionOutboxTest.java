@@ -0,0 +1,319 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.model.PendingS3Deletion;
+import com.baaki.ecsapp.repository.PendingS3DeletionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class S3DeletionOutboxTest {
+
+    private static final String BUCKET = "photos";
+    private static final Duration LEASE = Duration.ofMinutes(5);
+    private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(30);
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+
+    @Mock
+    private PendingS3DeletionRepository pendingS3DeletionRepository;
+
+    @Mock
+    private S3Service s3Service;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private S3DeletionOutbox outbox;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // The outbox table, as the mocked repository sees it
+    private final List<PendingS3Deletion> rows = new ArrayList<>();
+    // Keys the next deleteFiles calls report as failed
+    private final Set<String> failing = new HashSet<>();
+    private final List<List<ObjectLocation>> deleteCalls = new ArrayList<>();
+    private boolean inTransaction;
+    private long nextId = 1;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(outbox, "enabled", true);
+        ReflectionTestUtils.setField(outbox, "batchSize", 2);
+        ReflectionTestUtils.setField(outbox, "lease", LEASE);
+        ReflectionTestUtils.setField(outbox, "initialBackoff", INITIAL_BACKOFF);
+        ReflectionTestUtils.setField(outbox, "maxBackoff", MAX_BACKOFF);
+        ReflectionTestUtils.setField(outbox, "meterRegistry", meterRegistry);
+        outbox.init();
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                inTransaction(() -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null)));
+        lenient().doAnswer(invocation -> inTransaction(() -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        })).when(transactionTemplate).executeWithoutResult(any());
+
+        lenient().when(pendingS3DeletionRepository.lockDue(any(), anyInt())).thenAnswer(invocation -> {
+            assertThat(inTransaction).as("rows are locked inside a transaction").isTrue();
+            LocalDateTime now = invocation.getArgument(0);
+            return rows.stream()
+                    .filter(row -> !row.getNextAttemptAt().isAfter(now))
+                    .sorted(Comparator.comparing(PendingS3Deletion::getNextAttemptAt))
+                    .limit(invocation.<Integer>getArgument(1))
+                    .map(S3DeletionOutboxTest::copy)
+                    .toList();
+        });
+        lenient().when(pendingS3DeletionRepository.postpone(anyCollection(), any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            rows(ids).forEach(row -> row.setNextAttemptAt(invocation.getArgument(1)));
+            return ids.size();
+        });
+        lenient().when(pendingS3DeletionRepository.recordFailure(anyCollection(), any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            rows(ids).forEach(row -> {
+                row.setAttempts(row.getAttempts() + 1);
+                row.setNextAttemptAt(invocation.getArgument(1));
+            });
+            return ids.size();
+        });
+        lenient().doAnswer(invocation -> rows.removeIf(row -> invocation.<Collection<Long>>getArgument(0).contains(row.getId())))
+                .when(pendingS3DeletionRepository).deleteAllByIdInBatch(any());
+        lenient().when(pendingS3DeletionRepository.count()).thenAnswer(invocation -> (long) rows.size());
+
+        lenient().when(s3Service.deleteFiles(any())).thenAnswer(invocation -> {
+            assertThat(inTransaction).as("S3 is called outside any transaction").isFalse();
+            List<ObjectLocation> locations = List.copyOf(invocation.<Collection<ObjectLocation>>getArgument(0));
+            // Claimed rows must already be leased, so another worker skips them while S3 runs
+            LocalDateTime now = LocalDateTime.now();
+            for (ObjectLocation location : locations) {
+                assertThat(row(location.getKey()).getNextAttemptAt())
+                        .isCloseTo(now.plus(LEASE), within(5, ChronoUnit.SECONDS));
+            }
+            deleteCalls.add(locations);
+            Set<ObjectLocation> failed = new HashSet<>();
+            locations.stream().filter(location -> failing.contains(location.getKey())).forEach(failed::add);
+            return failed;
+        });
+    }
+
+    @Test
+    void claimedRowsAreLeasedDeletedAndSettled() {
+        add("a", 0, 0);
+        add("b", 0, 0);
+
+        assertThat(outbox.drainBatch()).isEqualTo(2);
+
+        assertThat(deleteCalls).containsExactly(List.of(location("a"), location("b")));
+        assertThat(rows).isEmpty();
+        assertThat(counter("deleted")).isEqualTo(2);
+        assertThat(counter("failed")).isZero();
+        verify(pendingS3DeletionRepository, never()).recordFailure(anyCollection(), any());
+    }
+
+    @Test
+    void rowsNotYetDueOrLeasedElsewhereAreNotClaimed() {
+        add("due", 0, 0);
+        add("leased", 0, 3);
+        add("backing-off", 2, 10);
+
+        assertThat(outbox.drainBatch()).isEqualTo(1);
+
+        assertThat(deleteCalls).containsExactly(List.of(location("due")));
+        assertThat(rows).extracting(PendingS3Deletion::getS3Key).containsExactly("leased", "backing-off");
+    }
+
+    @Test
+    void failuresAreRescheduledByTheirOwnAttemptCount() {
+        ReflectionTestUtils.setField(outbox, "batchSize", 10);
+        add("ok", 0, 0);
+        add("first-failure", 0, 0);
+        add("third-failure", 2, 0);
+        add("also-third-failure", 2, 0);
+        failing.addAll(List.of("first-failure", "third-failure", "also-third-failure"));
+
+        LocalDateTime before = LocalDateTime.now();
+        assertThat(outbox.drainBatch()).isEqualTo(4);
+
+        assertThat(rows).extracting(PendingS3Deletion::getS3Key)
+                .containsExactly("first-failure", "third-failure", "also-third-failure");
+        assertThat(row("first-failure").getAttempts()).isEqualTo(1);
+        assertThat(row("first-failure").getNextAttemptAt())
+                .isCloseTo(before.plus(INITIAL_BACKOFF), within(5, ChronoUnit.SECONDS));
+        assertThat(row("third-failure").getAttempts()).isEqualTo(3);
+        assertThat(row("third-failure").getNextAttemptAt())
+                .isCloseTo(before.plus(INITIAL_BACKOFF.multipliedBy(4)), within(5, ChronoUnit.SECONDS));
+        assertThat(row("also-third-failure").getNextAttemptAt()).isEqualTo(row("third-failure").getNextAttemptAt());
+        // One UPDATE per distinct attempt count
+        verify(pendingS3DeletionRepository, times(2)).recordFailure(anyCollection(), any());
+        assertThat(counter("deleted")).isEqualTo(1);
+        assertThat(counter("failed")).isEqualTo(3);
+    }
+
+    @Test
+    void backoffIsCappedAtTheMaximum() {
+        ReflectionTestUtils.setField(outbox, "batchSize", 10);
+        // 30s doubled 7 times passes an hour; 63 attempts would overflow an unclamped shift
+        add("seventh", 7, 0);
+        add("sixty-third", 63, 0);
+        add("sixth", 6, 0);
+        failing.addAll(List.of("seventh", "sixty-third", "sixth"));
+
+        LocalDateTime before = LocalDateTime.now();
+        outbox.drainBatch();
+
+        assertThat(row("seventh").getNextAttemptAt()).isCloseTo(before.plus(MAX_BACKOFF), within(5, ChronoUnit.SECONDS));
+        assertThat(row("sixty-third").getNextAttemptAt()).isCloseTo(before.plus(MAX_BACKOFF), within(5, ChronoUnit.SECONDS));
+        assertThat(row("sixth").getNextAttemptAt())
+                .isCloseTo(before.plus(INITIAL_BACKOFF.multipliedBy(64)), within(5, ChronoUnit.SECONDS));
+    }
+
+    @Test
+    void drainKeepsClaimingWhileBatchesAreFull() {
+        for (int i = 0; i < 5; i++) {
+            add("key-" + i, 0, 0);
+        }
+
+        outbox.drain();
+
+        assertThat(deleteCalls).extracting(List::size).containsExactly(2, 2, 1);
+        assertThat(rows).isEmpty();
+        assertThat(backlog()).isZero();
+    }
+
+    @Test
+    void drainStopsOnAnEmptyBatchAfterAFullOne() {
+        for (int i = 0; i < 4; i++) {
+            add("key-" + i, 0, 0);
+        }
+
+        outbox.drain();
+
+        assertThat(deleteCalls).extracting(List::size).containsExactly(2, 2);
+        verify(pendingS3DeletionRepository, times(3)).lockDue(any(), eq(2));
+    }
+
+    @Test
+    void failedRowsAreNotRetriedInTheSameDrain() {
+        add("a", 0, 0);
+        add("b", 0, 0);
+        failing.addAll(List.of("a", "b"));
+
+        outbox.drain();
+
+        // The full batch triggers one more claim, which finds both rows backing off
+        assertThat(deleteCalls).hasSize(1);
+        verify(pendingS3DeletionRepository, times(2)).lockDue(any(), eq(2));
+        assertThat(rows).extracting(PendingS3Deletion::getAttempts).containsExactly(1, 1);
+        assertThat(backlog()).isEqualTo(2);
+    }
+
+    @Test
+    void disabledOutboxClaimsNothing() {
+        ReflectionTestUtils.setField(outbox, "enabled", false);
+        add("a", 0, 0);
+
+        outbox.drain();
+
+        verify(pendingS3DeletionRepository, never()).lockDue(any(), anyInt());
+        assertThat(rows).hasSize(1);
+    }
+
+    @Test
+    void enqueueWritesOneRowPerObject() {
+        outbox.enqueue(List.of());
+        verify(pendingS3DeletionRepository, never()).saveAll(any());
+
+        outbox.enqueue(List.of(location("a"), new ObjectLocation("archive", "b")));
+
+        verify(pendingS3DeletionRepository).saveAll(ArgumentMatchers.<List<PendingS3Deletion>>argThat(deletions ->
+                deletions.size() == 2
+                        && deletions.get(1).getBucket().equals("archive")
+                        && deletions.get(1).getAttempts() == 0
+                        && !deletions.get(1).getNextAttemptAt().isAfter(LocalDateTime.now())));
+    }
+
+    private <T> T inTransaction(Callable<T> work) throws Exception {
+        assertThat(inTransaction).as("transactions are not nested").isFalse();
+        inTransaction = true;
+        try {
+            return work.call();
+        } finally {
+            inTransaction = false;
+        }
+    }
+
+    /**
+     * Add a row with the given failed attempts, due the given number of minutes from now
+     */
+    private void add(String key, int attempts, int dueInMinutes) {
+        PendingS3Deletion row = new PendingS3Deletion(BUCKET, key);
+        row.setId(nextId++);
+        row.setAttempts(attempts);
+        // Rows added earlier fall due earlier
+        row.setNextAttemptAt(LocalDateTime.now().minusSeconds(100 - rows.size()).plusMinutes(dueInMinutes));
+        rows.add(row);
+    }
+
+    private PendingS3Deletion row(String key) {
+        return rows.stream().filter(row -> row.getS3Key().equals(key)).findFirst().orElseThrow();
+    }
+
+    private List<PendingS3Deletion> rows(Collection<Long> ids) {
+        return rows.stream().filter(row -> ids.contains(row.getId())).toList();
+    }
+
+    private double counter(String outcome) {
+        return meterRegistry.get("s3.deletion.outbox.processed").tag("outcome", outcome).counter().count();
+    }
+
+    private double backlog() {
+        return meterRegistry.get("s3.deletion.outbox.backlog").gauge().value();
+    }
+
+    private static ObjectLocation location(String key) {
+        return new ObjectLocation(BUCKET, key);
+    }
+
+    // lockDue hands out detached entities, not the rows themselves
+    private static PendingS3Deletion copy(PendingS3Deletion row) {
+        PendingS3Deletion copy = new PendingS3Deletion(row.getBucket(), row.getS3Key());
+        copy.setId(row.getId());
+        copy.setAttempts(row.getAttempts());
+        copy.setNextAttemptAt(row.getNextAttemptAt());
+        copy.setCreatedAt(row.getCreatedAt());
+        return copy;
+    }
+}
@@ -0,0 +1,275 @@
+package com.baaki.ecsapp.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class S3MultipartUploaderTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    @Mock
+    private S3Client s3Client;
+
+    private S3MultipartUploader uploader;
+    private ByteBufferPool pool;
+    private int bufferCount;
+    private final AtomicInteger mostBuffersInUse = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        uploader.cleanup();
+    }
+
+    @Test
+    void smallBodyIsOnePut() throws IOException {
+        start(4, 3, Duration.ZERO);
+
+        uploader.upload("photos", "small", new ByteArrayInputStream(new byte[1024]), "image/jpeg", Map.of());
+
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+        assertPoolRestored();
+    }
+
+    @Test
+    void largeBodyHoldsAtMostItsShareOfThePool() throws IOException {
+        start(8, 3, Duration.ZERO);
+        stubMultipart();
+
+        uploader.upload("photos", "large", new ByteArrayInputStream(new byte[6 * PART_SIZE + 100]), "image/jpeg", Map.of());
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(complete.capture());
+        assertThat(complete.getValue().multipartUpload().parts()).extracting(CompletedPart::partNumber)
+                .containsExactly(1, 2, 3, 4, 5, 6, 7);
+        assertThat(mostBuffersInUse.get()).isBetween(1, 3);
+        assertPoolRestored();
+    }
+
+    @Test
+    void exhaustedPoolTurnsNewUploadsAwayWithoutReadingThem() throws Exception {
+        start(2, 2, Duration.ofMillis(100));
+        CountDownLatch clientsSend = new CountDownLatch(1);
+        List<CompletableFuture<Void>> slowClients = List.of(
+                uploadAsync("slow-1", new StalledStream(clientsSend)),
+                uploadAsync("slow-2", new StalledStream(clientsSend)));
+        awaitUnreserved(0);
+
+        StalledStream turnedAway = new StalledStream(new CountDownLatch(0));
+        long started = System.nanoTime();
+        assertThatThrownBy(() -> uploader.upload("photos", "third", turnedAway, "image/jpeg", Map.of()))
+                .isInstanceOf(ByteBufferPool.ExhaustedException.class);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(5));
+        assertThat(turnedAway.reads).hasValue(0);
+
+        clientsSend.countDown();
+        CompletableFuture.allOf(slowClients.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        assertPoolRestored();
+    }
+
+    @Test
+    void admittedUploadProgressesOnItsOwnBufferWhenThePoolIsFull() throws Exception {
+        start(2, 2, Duration.ZERO);
+        stubMultipart();
+        CountDownLatch clientSends = new CountDownLatch(1);
+        CompletableFuture<Void> slowClient = uploadAsync("slow", new StalledStream(clientSends));
+        awaitUnreserved(1);
+
+        uploader.upload("photos", "large", new ByteArrayInputStream(new byte[3 * PART_SIZE]), "image/jpeg", Map.of());
+
+        verify(s3Client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        assertThat(mostBuffersInUse.get()).isLessThanOrEqualTo(2);
+
+        clientSends.countDown();
+        slowClient.get(10, TimeUnit.SECONDS);
+        assertPoolRestored();
+    }
+
+    @Test
+    void failedPartAbortsTheUpload() {
+        start(8, 3, Duration.ZERO);
+        stubMultipart();
+        lenient().when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            if (invocation.<UploadPartRequest>getArgument(0).partNumber() == 2) {
+                throw S3Exception.builder().message("part rejected").statusCode(500).build();
+            }
+            return uploadPart(invocation.getArgument(1));
+        });
+
+        assertThatThrownBy(() -> uploader.upload("photos", "large", new ByteArrayInputStream(new byte[5 * PART_SIZE]),
+                "image/jpeg", Map.of()))
+                .isInstanceOf(IOException.class)
+                .isNotInstanceOf(ByteBufferPool.ExhaustedException.class)
+                .hasRootCauseMessage("part rejected");
+
+        ArgumentCaptor<AbortMultipartUploadRequest> abort = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(s3Client).abortMultipartUpload(abort.capture());
+        assertThat(abort.getValue().uploadId()).isEqualTo("upload-1");
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        assertPoolRestored();
+    }
+
+    @Test
+    void failedSourceAbortsTheUpload() {
+        start(8, 3, Duration.ZERO);
+        stubMultipart();
+        InputStream failing = new InputStream() {
+            private int remaining = 2 * PART_SIZE + 10;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining-- == 0) {
+                    throw new IOException("client went away");
+                }
+                return 0;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (remaining == 0) {
+                    throw new IOException("client went away");
+                }
+                int count = Math.min(length, remaining);
+                remaining -= count;
+                return count;
+            }
+        };
+
+        assertThatThrownBy(() -> uploader.upload("photos", "large", failing, "image/jpeg", Map.of()))
+                .isInstanceOf(IOException.class)
+                .hasMessage("client went away");
+
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        assertPoolRestored();
+    }
+
+    private void start(int bufferCount, int maxBuffersPerUpload, Duration admissionWait) {
+        this.bufferCount = bufferCount;
+        S3Metrics s3Metrics = new S3Metrics();
+        ReflectionTestUtils.setField(s3Metrics, "meterRegistry", new SimpleMeterRegistry());
+        s3Metrics.init();
+
+        uploader = new S3MultipartUploader();
+        ReflectionTestUtils.setField(uploader, "partSize", DataSize.ofBytes(PART_SIZE));
+        ReflectionTestUtils.setField(uploader, "bufferCount", bufferCount);
+        ReflectionTestUtils.setField(uploader, "concurrency", 4);
+        ReflectionTestUtils.setField(uploader, "maxBuffersPerUpload", maxBuffersPerUpload);
+        ReflectionTestUtils.setField(uploader, "admissionWait", admissionWait);
+        ReflectionTestUtils.setField(uploader, "s3Client", s3Client);
+        ReflectionTestUtils.setField(uploader, "s3Metrics", s3Metrics);
+        uploader.init();
+        pool = uploader.getBufferPool();
+
+        lenient().when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().eTag("\"single\"").build());
+    }
+
+    private void stubMultipart() {
+        lenient().when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        lenient().when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenAnswer(invocation -> uploadPart(invocation.getArgument(1)));
+    }
+
+    /**
+     * Read the part like the SDK would, a little slowly, and note how many buffers are out of the pool
+     */
+    private UploadPartResponse uploadPart(RequestBody body) throws Exception {
+        mostBuffersInUse.accumulateAndGet(bufferCount - pool.getAvailable(), Math::max);
+        try (InputStream in = body.contentStreamProvider().newStream()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        Thread.sleep(20);
+        return UploadPartResponse.builder().eTag("\"part\"").build();
+    }
+
+    private CompletableFuture<Void> uploadAsync(String key, InputStream body) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                uploader.upload("photos", key, body, "image/jpeg", Map.of());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void awaitUnreserved(int unreserved) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.getUnreserved() != unreserved && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(pool.getUnreserved()).isEqualTo(unreserved);
+    }
+
+    private void assertPoolRestored() {
+        assertThat(pool.getAvailable()).isEqualTo(bufferCount);
+        assertThat(pool.getUnreserved()).isEqualTo(bufferCount);
+    }
+
+    /**
+     * A client that sends nothing until released, then ends the body
+     */
+    private static final class StalledStream extends InputStream {
+
+        private final CountDownLatch released;
+        private final AtomicInteger reads = new AtomicInteger();
+
+        StalledStream(CountDownLatch released) {
+            this.released = released;
+        }
+
+        @Override
+        public int read() throws IOException {
+            reads.incrementAndGet();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            return -1;
+        }
+    }
+}
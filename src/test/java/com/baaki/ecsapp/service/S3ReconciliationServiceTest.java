@@ -0,0 +1,296 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.ObjectReference;
+import com.baaki.ecsapp.model.ReconciliationCheckpoint;
+import com.baaki.ecsapp.repository.ObjectReferenceRepository;
+import com.baaki.ecsapp.repository.ReconciliationCheckpointRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class S3ReconciliationServiceTest {
+
+    private static final String BUCKET = "photos";
+    private static final int PAGE_SIZE = 2;
+
+    // S3's order: the UTF-8 bytes, compared unsigned
+    private static final Comparator<String> S3_ORDER = (a, b) -> Arrays.compareUnsigned(
+            a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+
+    private static final Instant OLD = Instant.now().minus(Duration.ofDays(2));
+    private static final LocalDateTime OLD_ROW = LocalDateTime.now().minusDays(2);
+
+    @Mock
+    private S3Service s3Service;
+
+    @Mock
+    private S3DeletionOutbox s3DeletionOutbox;
+
+    @Mock
+    private ObjectReferenceRepository objectReferenceRepository;
+
+    @Mock
+    private ReconciliationCheckpointRepository checkpointRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private S3ReconciliationService reconciliationService;
+
+    private final List<S3Object> objects = new ArrayList<>();
+    private final Map<ObjectReference.Source, List<ObjectReference>> references = new EnumMap<>(ObjectReference.Source.class);
+    private final List<ObjectLocation> queued = new ArrayList<>();
+    private final AtomicBoolean failSecondPage = new AtomicBoolean();
+    private ReconciliationCheckpoint stored;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(reconciliationService, "defaultBucket", BUCKET);
+        ReflectionTestUtils.setField(reconciliationService, "gracePeriod", Duration.ofHours(24));
+        ReflectionTestUtils.setField(reconciliationService, "deleteOrphans", true);
+        ReflectionTestUtils.setField(reconciliationService, "pageSize", PAGE_SIZE);
+        ReflectionTestUtils.setField(reconciliationService, "lease", Duration.ofMinutes(10));
+        for (ObjectReference.Source source : ObjectReference.Source.values()) {
+            references.put(source, new ArrayList<>());
+        }
+
+        lenient().when(checkpointRepository.acquireLease(eq(BUCKET), any(), any())).thenReturn(1);
+        lenient().when(checkpointRepository.findById(BUCKET)).thenAnswer(invocation -> Optional.of(copy(stored)));
+        lenient().when(checkpointRepository.save(any())).thenAnswer(invocation -> {
+            stored = copy(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        lenient().doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        lenient().doAnswer(invocation -> queued.addAll(invocation.<Collection<ObjectLocation>>getArgument(0)))
+                .when(s3DeletionOutbox).enqueue(any());
+        lenient().when(s3Service.listObjects(eq(BUCKET), any(), any())).thenAnswer(invocation ->
+                listPage(invocation.getArgument(1), invocation.getArgument(2)));
+        lenient().when(objectReferenceRepository.findAfter(any(), anyString(), any(), anyInt())).thenAnswer(invocation ->
+                findAfter(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2),
+                        invocation.getArgument(3)));
+
+        stored = new ReconciliationCheckpoint();
+        stored.setBucket(BUCKET);
+    }
+
+    @Test
+    void compareKeysOrdersByUtf8Bytes() {
+        List<String> keys = List.of("", "a", "ab", "abc", "b", "photos/1.jpg", "photos/10.jpg", "photos/2.jpg",
+                "\u007F", "\u00E9", "\u0800", "\uE000", "\uFFFF", "\uD83D\uDE00", "\uD83D\uDE00a", "\uDBFF\uDFFF");
+        for (String a : keys) {
+            for (String b : keys) {
+                assertThat(Integer.signum(S3ReconciliationService.compareKeys(a, b)))
+                        .as("%s vs %s", a, b)
+                        .isEqualTo(Integer.signum(S3_ORDER.compare(a, b)));
+            }
+        }
+    }
+
+    @Test
+    void compareKeysSortsSupplementaryCharactersAfterTheBasicPlane() {
+        // U+1F600 is a surrogate pair, whose UTF-16 units sort below U+E000 and U+FFFF
+        assertThat("\uD83D\uDE00".compareTo("\uFFFF")).isNegative();
+        assertThat(S3ReconciliationService.compareKeys("\uD83D\uDE00", "\uFFFF")).isPositive();
+        assertThat(S3ReconciliationService.compareKeys("x\uD83D\uDE00", "x\uE000")).isPositive();
+        assertThat(S3ReconciliationService.compareKeys("\uD83D\uDE00", "\uD83D\uDE00")).isZero();
+    }
+
+    @Test
+    void mergeReportsOrphansAndDanglingReferencesAcrossPages() {
+        object("a", OLD);
+        object("b", OLD);
+        object("c", OLD);
+        object("e", OLD);
+        object("young", Instant.now());
+        // String.compareTo would put the second before the first, pairing the reference with the wrong object
+        object("\uFFFF", OLD);
+        object("\uD83D\uDE00", OLD);
+        reference(ObjectReference.Source.PHOTO, BUCKET, "a", OLD_ROW);
+        reference(ObjectReference.Source.PHOTO, BUCKET, "c", OLD_ROW);
+        reference(ObjectReference.Source.PHOTO, BUCKET, "d", OLD_ROW);
+        reference(ObjectReference.Source.PHOTO, BUCKET, "\uD83D\uDE00", OLD_ROW);
+        reference(ObjectReference.Source.THUMBNAIL, null, "e", OLD_ROW);
+        reference(ObjectReference.Source.STORED_OBJECT, BUCKET, "c", OLD_ROW);
+        reference(ObjectReference.Source.STORED_OBJECT, BUCKET, "zz", OLD_ROW);
+        // Neither of these is dangling: one is too recent, the other is already queued for deletion
+        reference(ObjectReference.Source.PREVIEW, BUCKET, "c2", LocalDateTime.now());
+        reference(ObjectReference.Source.PENDING_DELETION, BUCKET, "gone", OLD_ROW);
+        // A row of another bucket does not reference b
+        reference(ObjectReference.Source.PHOTO, "other", "b", OLD_ROW);
+
+        ReconciliationCheckpoint checkpoint = reconciliationService.reconcile(BUCKET);
+
+        assertThat(checkpoint.getCompletedAt()).isNotNull();
+        assertThat(checkpoint.getObjectsScanned()).isEqualTo(7);
+        assertThat(checkpoint.getOrphanedObjects()).isEqualTo(2);
+        // d between the listed keys and zz after the last one
+        assertThat(checkpoint.getDanglingReferences()).isEqualTo(2);
+        assertThat(queued).extracting(ObjectLocation::getKey).containsExactly("b", "\uFFFF");
+        assertThat(checkpoint.getPosition()).isEqualTo("\uD83D\uDE00");
+    }
+
+    @Test
+    void mergeQueuesNothingWithoutDeleteOrphans() {
+        ReflectionTestUtils.setField(reconciliationService, "deleteOrphans", false);
+        object("a", OLD);
+
+        ReconciliationCheckpoint checkpoint = reconciliationService.reconcile(BUCKET);
+
+        assertThat(checkpoint.getOrphanedObjects()).isEqualTo(1);
+        verify(s3DeletionOutbox, never()).enqueue(any());
+    }
+
+    @Test
+    void interruptedRunResumesFromItsCheckpoint() {
+        for (String key : List.of("a", "b", "c", "d", "e")) {
+            object(key, OLD);
+        }
+        reference(ObjectReference.Source.PHOTO, BUCKET, "a", OLD_ROW);
+        reference(ObjectReference.Source.PHOTO, BUCKET, "bb", OLD_ROW);
+        reference(ObjectReference.Source.PHOTO, BUCKET, "e", OLD_ROW);
+        failSecondPage.set(true);
+
+        assertThatThrownBy(() -> reconciliationService.reconcile(BUCKET)).isInstanceOf(IllegalStateException.class);
+
+        verify(checkpointRepository).releaseLease(BUCKET);
+        assertThat(stored.getCompletedAt()).isNull();
+        assertThat(stored.getPosition()).isEqualTo("b");
+        assertThat(stored.getObjectsScanned()).isEqualTo(2);
+        assertThat(queued).extracting(ObjectLocation::getKey).containsExactly("b");
+
+        failSecondPage.set(false);
+        ReconciliationCheckpoint checkpoint = reconciliationService.reconcile(BUCKET);
+
+        verify(s3Service, atLeastOnce()).listObjects(eq(BUCKET), eq("b"), isNull());
+        assertThat(checkpoint.getCompletedAt()).isNotNull();
+        assertThat(checkpoint.getStartedAt()).isEqualTo(stored.getStartedAt());
+        assertThat(checkpoint.getObjectsScanned()).isEqualTo(5);
+        assertThat(checkpoint.getOrphanedObjects()).isEqualTo(3);
+        assertThat(checkpoint.getDanglingReferences()).isEqualTo(1);
+        // Each orphan is queued once, however often the run was interrupted
+        assertThat(queued).extracting(ObjectLocation::getKey).containsExactly("b", "c", "d");
+    }
+
+    @Test
+    void completedRunStartsOver() {
+        object("a", OLD);
+        reconciliationService.reconcile(BUCKET);
+        queued.clear();
+
+        ReconciliationCheckpoint checkpoint = reconciliationService.reconcile(BUCKET);
+
+        assertThat(checkpoint.getObjectsScanned()).isEqualTo(1);
+        assertThat(checkpoint.getOrphanedObjects()).isEqualTo(1);
+        assertThat(queued).extracting(ObjectLocation::getKey).containsExactly("a");
+    }
+
+    @Test
+    void bucketLeasedElsewhereIsSkipped() {
+        lenient().when(checkpointRepository.acquireLease(eq(BUCKET), any(), any())).thenReturn(0);
+
+        assertThat(reconciliationService.reconcile(BUCKET)).isNull();
+        verify(s3Service, never()).listObjects(any(), any(), any());
+    }
+
+    private void object(String key, Instant lastModified) {
+        objects.add(S3Object.builder().key(key).lastModified(lastModified).size(1L).build());
+        objects.sort(Comparator.comparing(S3Object::key, S3_ORDER));
+    }
+
+    private void reference(ObjectReference.Source source, String bucket, String key, LocalDateTime createdAt) {
+        List<ObjectReference> rows = references.get(source);
+        rows.add(new ObjectReference(source, bucket, key, String.valueOf(rows.size() + 1), createdAt));
+        rows.sort(Comparator.comparing(ObjectReference::getKey, S3_ORDER)
+                .thenComparing(row -> Long.parseLong(row.getRowId())));
+    }
+
+    /**
+     * ListObjectsV2 over the objects, PAGE_SIZE keys at a time; the continuation token is the index
+     * of the next key
+     */
+    private ListObjectsV2Response listPage(String startAfter, String continuationToken) {
+        int from;
+        if (continuationToken != null) {
+            from = Integer.parseInt(continuationToken);
+            if (failSecondPage.get()) {
+                throw new IllegalStateException("S3 is unavailable");
+            }
+        } else {
+            from = 0;
+            while (startAfter != null && from < objects.size() && S3_ORDER.compare(objects.get(from).key(), startAfter) <= 0) {
+                from++;
+            }
+        }
+        int to = Math.min(from + PAGE_SIZE, objects.size());
+        return ListObjectsV2Response.builder()
+                .contents(objects.subList(from, to))
+                .isTruncated(to < objects.size())
+                .nextContinuationToken(to < objects.size() ? String.valueOf(to) : null)
+                .build();
+    }
+
+    private List<ObjectReference> findAfter(ObjectReference.Source source, String afterKey, String afterRowId, int limit) {
+        return references.get(source).stream()
+                .filter(row -> {
+                    int byKey = S3_ORDER.compare(row.getKey(), afterKey);
+                    return byKey > 0 || byKey == 0 && afterRowId != null
+                            && Long.parseLong(row.getRowId()) > Long.parseLong(afterRowId);
+                })
+                .limit(limit)
+                .toList();
+    }
+
+    private static ReconciliationCheckpoint copy(ReconciliationCheckpoint source) {
+        ReconciliationCheckpoint copy = new ReconciliationCheckpoint();
+        copy.setBucket(source.getBucket());
+        copy.setStartedAt(source.getStartedAt());
+        copy.setCompletedAt(source.getCompletedAt());
+        copy.setPosition(source.getPosition());
+        copy.setObjectsScanned(source.getObjectsScanned());
+        copy.setOrphanedObjects(source.getOrphanedObjects());
+        copy.setDanglingReferences(source.getDanglingReferences());
+        copy.setLeaseUntil(source.getLeaseUntil());
+        return copy;
+    }
+}
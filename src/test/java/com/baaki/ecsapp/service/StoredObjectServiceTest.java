@@ -0,0 +1,239 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.model.StoredObject;
+import com.baaki.ecsapp.repository.StoredObjectRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StoredObjectServiceTest {
+
+    private static final String HASH = "ab".repeat(32);
+    private static final ObjectLocation STORED = new ObjectLocation("photos", "uploads/first.jpg");
+    private static final ObjectLocation UPLOADED = new ObjectLocation("photos", "uploads/second.jpg");
+
+    @Mock
+    private StoredObjectRepository storedObjectRepository;
+
+    @Mock
+    private S3Service s3Service;
+
+    @Mock
+    private S3DeletionOutbox s3DeletionOutbox;
+
+    @InjectMocks
+    private StoredObjectService storedObjectService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(s3Service.location(anyString(), anyString()))
+                .thenAnswer(invocation -> new ObjectLocation(invocation.getArgument(0), invocation.getArgument(1)));
+    }
+
+    @Test
+    void existingContentIsReferencedWithoutUploading() throws IOException {
+        when(storedObjectRepository.incrementReferences(HASH)).thenReturn(1);
+        stored(STORED);
+
+        ObjectLocation location = storedObjectService.storeIfAbsent(HASH, 100, () -> {
+            throw new AssertionError("uploaded content that is already stored");
+        });
+
+        assertThat(location).isEqualTo(STORED);
+        verify(storedObjectRepository, never()).insertIfAbsent(anyString(), anyString(), anyString(), anyLong());
+    }
+
+    @Test
+    void newContentIsUploadedAndRegistered() throws IOException {
+        when(storedObjectRepository.incrementReferences(HASH)).thenReturn(0);
+        when(storedObjectRepository.insertIfAbsent(HASH, "photos", UPLOADED.getKey(), 100)).thenReturn(1);
+
+        assertThat(storedObjectService.storeIfAbsent(HASH, 100, () -> UPLOADED)).isEqualTo(UPLOADED);
+        verify(s3DeletionOutbox, never()).enqueue(any());
+    }
+
+    @Test
+    void copyLosingTheInsertRaceIsDiscardedForTheWinner() throws IOException {
+        // Another upload of the same content registered while this copy was in flight
+        when(storedObjectRepository.insertIfAbsent(HASH, "photos", UPLOADED.getKey(), 100)).thenReturn(0);
+        when(storedObjectRepository.incrementReferences(HASH)).thenReturn(1);
+        stored(STORED);
+
+        ObjectLocation location = storedObjectService.registerUploaded(HASH, UPLOADED, 100);
+
+        assertThat(location).isEqualTo(STORED);
+        verify(s3DeletionOutbox).enqueue(List.of(UPLOADED));
+        verify(storedObjectRepository, never()).decrementReferences(anyString(), any(Integer.class));
+    }
+
+    @Test
+    void rowDeletedBetweenInsertAndIncrementIsInsertedAgain() throws IOException {
+        // The winner's last reference was released between the failed insert and the increment
+        when(storedObjectRepository.insertIfAbsent(HASH, "photos", UPLOADED.getKey(), 100)).thenReturn(0, 1);
+        when(storedObjectRepository.incrementReferences(HASH)).thenReturn(0);
+
+        ObjectLocation location = storedObjectService.registerUploaded(HASH, UPLOADED, 100);
+
+        assertThat(location).isEqualTo(UPLOADED);
+        InOrder order = inOrder(storedObjectRepository);
+        order.verify(storedObjectRepository).insertIfAbsent(HASH, "photos", UPLOADED.getKey(), 100);
+        order.verify(storedObjectRepository).incrementReferences(HASH);
+        order.verify(storedObjectRepository).insertIfAbsent(HASH, "photos", UPLOADED.getKey(), 100);
+        verify(s3DeletionOutbox, never()).enqueue(any());
+    }
+
+    @Test
+    void registrationGivesUpWhenTheRowKeepsDisappearing() {
+        when(storedObjectRepository.insertIfAbsent(HASH, "photos", UPLOADED.getKey(), 100)).thenReturn(0);
+        when(storedObjectRepository.incrementReferences(HASH)).thenReturn(0);
+
+        assertThatThrownBy(() -> storedObjectService.registerUploaded(HASH, UPLOADED, 100))
+                .isInstanceOf(IOException.class);
+        verify(storedObjectRepository, times(3)).insertIfAbsent(HASH, "photos", UPLOADED.getKey(), 100);
+        verify(s3DeletionOutbox, never()).enqueue(any());
+    }
+
+    @Test
+    void alreadyRegisteredUploadGivesItsReferenceBack() {
+        when(storedObjectRepository.insertIfAbsent(HASH, "photos", UPLOADED.getKey(), 100)).thenReturn(0);
+        when(storedObjectRepository.incrementReferences(HASH)).thenReturn(1);
+        stored(UPLOADED);
+        when(storedObjectRepository.deleteIfUnreferenced(HASH)).thenReturn(0);
+
+        assertThatThrownBy(() -> storedObjectService.registerUploaded(HASH, UPLOADED, 100))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("This upload has already been completed");
+        verify(storedObjectRepository).decrementReferences(HASH, 1);
+        // The first completion's photo still owns the object
+        verify(s3DeletionOutbox, never()).enqueue(any());
+    }
+
+    @Test
+    void alreadyRegisteredUploadWhosePhotoWasDeletedMeanwhileIsQueuedForDeletion() {
+        when(storedObjectRepository.insertIfAbsent(HASH, "photos", UPLOADED.getKey(), 100)).thenReturn(0);
+        when(storedObjectRepository.incrementReferences(HASH)).thenReturn(1);
+        stored(UPLOADED);
+        when(storedObjectRepository.deleteIfUnreferenced(HASH)).thenReturn(1);
+
+        assertThatThrownBy(() -> storedObjectService.registerUploaded(HASH, UPLOADED, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(s3DeletionOutbox).enqueue(List.of(UPLOADED));
+    }
+
+    @Test
+    void onlyTheLastReleaseOwnsTheObject() {
+        when(storedObjectRepository.deleteIfUnreferenced(HASH)).thenReturn(0, 1);
+
+        assertThat(storedObjectService.release(HASH, 2)).isFalse();
+        assertThat(storedObjectService.release(HASH, 1)).isTrue();
+
+        InOrder order = inOrder(storedObjectRepository);
+        order.verify(storedObjectRepository).decrementReferences(HASH, 2);
+        order.verify(storedObjectRepository).deleteIfUnreferenced(HASH);
+        order.verify(storedObjectRepository).decrementReferences(HASH, 1);
+        order.verify(storedObjectRepository).deleteIfUnreferenced(HASH);
+    }
+
+    @Test
+    void rowDisappearingAfterTheIncrementIsAnError() {
+        when(storedObjectRepository.incrementReferences(HASH)).thenReturn(1);
+        when(storedObjectRepository.findById(HASH)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> storedObjectService.storeIfAbsent(HASH, 100, () -> UPLOADED))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining(HASH);
+    }
+
+    @Test
+    void asyncReferenceOfExistingContentStartsNoUpload() {
+        when(storedObjectRepository.incrementReferences(HASH)).thenReturn(1);
+        stored(STORED);
+
+        CompletableFuture<ObjectLocation> location = storedObjectService.storeIfAbsentAsync(HASH, 100, () -> {
+            throw new AssertionError("uploaded content that is already stored");
+        }, Runnable::run);
+
+        assertThat(location).isCompletedWithValue(STORED);
+    }
+
+    @Test
+    void asyncRegistrationRunsOnTheGivenExecutor() {
+        when(storedObjectRepository.incrementReferences(HASH)).thenReturn(0, 1);
+        when(storedObjectRepository.insertIfAbsent(HASH, "photos", UPLOADED.getKey(), 100)).thenReturn(0);
+        stored(STORED);
+        List<Runnable> registrations = new ArrayList<>();
+        Executor executor = registrations::add;
+        CompletableFuture<ObjectLocation> upload = new CompletableFuture<>();
+
+        CompletableFuture<ObjectLocation> location = storedObjectService.storeIfAbsentAsync(HASH, 100, () -> upload, executor);
+        upload.complete(UPLOADED);
+
+        // Nothing is registered on the thread that completed the upload
+        assertThat(location).isNotDone();
+        verify(storedObjectRepository, never()).insertIfAbsent(anyString(), anyString(), anyString(), anyLong());
+        assertThat(registrations).hasSize(1);
+        registrations.get(0).run();
+        assertThat(location).isCompletedWithValue(STORED);
+        verify(s3DeletionOutbox).enqueue(List.of(UPLOADED));
+    }
+
+    @Test
+    void asyncRegistrationFailureCompletesExceptionally() {
+        when(storedObjectRepository.incrementReferences(HASH)).thenReturn(0);
+        when(storedObjectRepository.insertIfAbsent(HASH, "photos", UPLOADED.getKey(), 100)).thenReturn(0);
+        AtomicInteger uploads = new AtomicInteger();
+
+        CompletableFuture<ObjectLocation> location = storedObjectService.storeIfAbsentAsync(HASH, 100, () -> {
+            uploads.incrementAndGet();
+            return CompletableFuture.completedFuture(UPLOADED);
+        }, Runnable::run);
+
+        assertThat(uploads).hasValue(1);
+        assertThatThrownBy(location::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void locationHashIsStablePerLocation() {
+        assertThat(StoredObjectService.locationHash(UPLOADED))
+                .isEqualTo(StoredObjectService.locationHash(new ObjectLocation("photos", "uploads/second.jpg")))
+                .isNotEqualTo(StoredObjectService.locationHash(STORED))
+                .isNotEqualTo(StoredObjectService.locationHash(new ObjectLocation("archive", "uploads/second.jpg")))
+                .hasSize(64);
+    }
+
+    private void stored(ObjectLocation location) {
+        StoredObject stored = new StoredObject();
+        stored.setContentHash(HASH);
+        stored.setBucket(location.getBucket());
+        stored.setS3Key(location.getKey());
+        when(storedObjectRepository.findById(HASH)).thenReturn(Optional.of(stored));
+    }
+}
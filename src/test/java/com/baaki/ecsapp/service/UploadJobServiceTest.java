@@ -0,0 +1,232 @@
+package com.baaki.ecsapp.service;
+
+import com.baaki.ecsapp.dto.PhotoUploadResult;
+import com.baaki.ecsapp.dto.UploadJob;
+import com.baaki.ecsapp.model.UploadJobRecord;
+import com.baaki.ecsapp.repository.UploadJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UploadJobServiceTest {
+
+    @Mock
+    private PhotoService photoService;
+
+    @Mock
+    private UploadJobRepository uploadJobRepository;
+
+    @InjectMocks
+    private UploadJobService uploadJobService;
+
+    @TempDir
+    Path stagingDir;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ReflectionTestUtils.setField(uploadJobService, "workers", 1);
+        ReflectionTestUtils.setField(uploadJobService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(uploadJobService, "stagingDir", stagingDir.toString());
+        ReflectionTestUtils.setField(uploadJobService, "jobRetention", Duration.ofHours(1));
+        ReflectionTestUtils.setField(uploadJobService, "drainTimeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(uploadJobService, "lease", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(uploadJobService, "leaseRenewal", Duration.ofMinutes(1));
+        uploadJobService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        uploadJobService.shutdown();
+    }
+
+    @Test
+    void acceptedJobIsStoredAndCompletedInTheDatabase() throws IOException {
+        when(photoService.uploadStagedPhoto(any(), eq("a.jpg"), eq("image/jpeg"), eq("desc"), any()))
+                .thenReturn(PhotoUploadResult.success(42L, "Photo uploaded successfully"));
+
+        UploadJob job = uploadJobService.submit(image("a.jpg"), "desc");
+
+        ArgumentCaptor<UploadJobRecord> saved = ArgumentCaptor.forClass(UploadJobRecord.class);
+        verify(uploadJobRepository).save(saved.capture());
+        assertThat(saved.getValue().getJobId()).isEqualTo(job.getJobId());
+        assertThat(saved.getValue().getState()).isEqualTo(UploadJobRecord.State.QUEUED);
+        assertThat(saved.getValue().getOwner()).isEqualTo(owner());
+        assertThat(saved.getValue().getLeaseUntil()).isAfter(LocalDateTime.now().plusMinutes(4));
+
+        verify(uploadJobRepository, timeout(5000))
+                .markCompleted(eq(job.getJobId()), eq(42L), eq("Photo uploaded successfully"), any());
+        verify(uploadJobRepository).markUploading(eq(job.getJobId()), anyString(), any());
+        assertThat(stagingDir.resolve(job.getJobId())).doesNotExist();
+    }
+
+    @Test
+    void pollReadsTheJobRow() {
+        UploadJobRecord record = new UploadJobRecord("job-1", "a.jpg", 200L, "other-task", LocalDateTime.now());
+        record.setState(UploadJobRecord.State.UPLOADING);
+        record.setBytesUploaded(50L);
+        when(uploadJobRepository.findById("job-1")).thenReturn(Optional.of(record));
+        when(uploadJobRepository.findById("gone")).thenReturn(Optional.empty());
+
+        UploadJob job = uploadJobService.getJob("job-1");
+
+        assertThat(job.getState()).isEqualTo(UploadJobRecord.State.UPLOADING);
+        assertThat(job.getProgressPercent()).isEqualTo(25);
+        assertThat(job.isDone()).isFalse();
+        assertThat(uploadJobService.getJob("gone")).isNull();
+    }
+
+    @Test
+    void failedUploadIsRecorded() throws IOException {
+        when(photoService.uploadStagedPhoto(any(), any(), any(), any(), any()))
+                .thenReturn(PhotoUploadResult.error("Invalid image"));
+
+        UploadJob job = uploadJobService.submit(image("a.jpg"), null);
+
+        verify(uploadJobRepository, timeout(5000)).markFailed(eq(job.getJobId()), eq("Invalid image"), any());
+    }
+
+    @Test
+    void progressIsWrittenByTheFlushNotTheListener() throws Exception {
+        CountDownLatch reported = new CountDownLatch(1);
+        when(photoService.uploadStagedPhoto(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            LongConsumer listener = invocation.getArgument(4);
+            for (long bytes = 1; bytes <= 100; bytes++) {
+                listener.accept(bytes);
+            }
+            reported.countDown();
+            release.await();
+            return PhotoUploadResult.success(1L, "ok");
+        });
+
+        UploadJob job = uploadJobService.submit(image("a.jpg"), null);
+        assertThat(reported.await(5, TimeUnit.SECONDS)).isTrue();
+        verify(uploadJobRepository, never()).updateProgress(anyString(), anyLong(), any());
+
+        uploadJobService.flushProgress();
+
+        verify(uploadJobRepository).updateProgress(eq(job.getJobId()), eq(100L), any());
+    }
+
+    @Test
+    void drainTimeoutFailsAbandonedJobsAndDeletesTheirFiles() throws Exception {
+        ReflectionTestUtils.setField(uploadJobService, "drainTimeout", Duration.ofMillis(100));
+        CountDownLatch running = new CountDownLatch(1);
+        when(photoService.uploadStagedPhoto(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            running.countDown();
+            new CountDownLatch(1).await();
+            return PhotoUploadResult.success(1L, "ok");
+        });
+
+        UploadJob first = uploadJobService.submit(image("a.jpg"), null);
+        UploadJob queued = uploadJobService.submit(image("b.jpg"), null);
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+        uploadJobService.shutdown();
+
+        verify(uploadJobRepository).failUnfinished(eq(owner()), eq(UploadJobService.ABANDONED_MESSAGE), any());
+        verify(uploadJobRepository, timeout(5000)).markFailed(eq(first.getJobId()), anyString(), any());
+        assertThat(stagingDir.resolve(queued.getJobId())).doesNotExist();
+        assertThat(stagingDir.resolve(first.getJobId())).doesNotExist();
+    }
+
+    @Test
+    void cleanDrainLeavesNothingToAbandon() throws IOException {
+        when(photoService.uploadStagedPhoto(any(), any(), any(), any(), any()))
+                .thenReturn(PhotoUploadResult.success(1L, "ok"));
+        uploadJobService.submit(image("a.jpg"), null);
+
+        uploadJobService.shutdown();
+
+        verify(uploadJobRepository).markCompleted(anyString(), eq(1L), eq("ok"), any());
+        verify(uploadJobRepository, never()).failUnfinished(anyString(), anyString(), any());
+    }
+
+    @Test
+    void rejectedSubmissionLeavesNoRowOrFile() throws IOException {
+        uploadJobService.shutdown();
+
+        assertThatThrownBy(() -> uploadJobService.submit(image("a.jpg"), null))
+                .isInstanceOf(RejectedExecutionException.class);
+
+        verify(uploadJobRepository, never()).save(any());
+        try (var files = Files.list(stagingDir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void failedSaveDeletesTheStagedFile() throws IOException {
+        doThrow(new IllegalStateException("database down")).when(uploadJobRepository).save(any());
+
+        assertThatThrownBy(() -> uploadJobService.submit(image("a.jpg"), null))
+                .isInstanceOf(IllegalStateException.class);
+
+        try (var files = Files.list(stagingDir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void maintenanceRenewsOwnLeasesFailsExpiredOnesAndDropsOldJobs() {
+        uploadJobService.maintainJobs();
+
+        ArgumentCaptor<LocalDateTime> until = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(uploadJobRepository).renewLeases(eq(owner()), until.capture());
+        assertThat(until.getValue()).isAfter(LocalDateTime.now().plusMinutes(4));
+        verify(uploadJobRepository).failExpired(eq(UploadJobService.ABANDONED_MESSAGE), any());
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(uploadJobRepository).deleteFinishedBefore(cutoff.capture());
+        assertThat(cutoff.getValue()).isBefore(LocalDateTime.now().minusMinutes(59));
+    }
+
+    @Test
+    void leaseMustOutliveSeveralRenewals() {
+        uploadJobService.shutdown();
+        ReflectionTestUtils.setField(uploadJobService, "lease", Duration.ofMinutes(1));
+
+        assertThatThrownBy(uploadJobService::init).isInstanceOf(IllegalStateException.class);
+    }
+
+    private String owner() {
+        return (String) ReflectionTestUtils.getField(uploadJobService, "owner");
+    }
+
+    private static MockMultipartFile image(String filename) {
+        return new MockMultipartFile("file", filename, "image/jpeg", new byte[200]);
+    }
+}